@@ -1,15 +1,35 @@
 package com.barry.auto.transmitter.config;
 
+import com.barry.auto.transmitter.core.HolderContext;
+import com.barry.auto.transmitter.core.HolderTaskDecorator;
+import com.barry.auto.transmitter.interceptor.TransmitterExchangeFilterFunction;
 import com.barry.auto.transmitter.interceptor.TransmitterFeignClientInterceptor;
 import com.barry.auto.transmitter.interceptor.TransmitterHttpRequestInterceptor;
+import com.barry.auto.transmitter.interceptor.TransmitterListenerAdvice;
+import com.barry.auto.transmitter.interceptor.TransmitterMessagePostProcessor;
+import com.barry.auto.transmitter.interceptor.TransmitterWebFilter;
+import com.barry.common.core.util.ContextPropagation;
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.rabbit.config.AbstractRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.concurrent.ExecutorService;
+
 @ConditionalOnProperty(name = "spring.transmitter.enable", havingValue = "true")
 @Configuration
 @EnableConfigurationProperties(TransmitterProperties.class)
@@ -21,6 +41,81 @@ public class TransmitterAutoConfiguration {
     public TransmitterAutoConfiguration(
             TransmitterProperties transmitterProperties) {
         this.transmitterProperties = transmitterProperties;
+        //将提交线程的 HolderContext 传递到 BatchInvokeUtil, 包装后的线程池等的执行线程
+        ContextPropagation.register("holder-context", HolderContext::wrap);
+    }
+
+    /**
+     * 为 spring 的线程池(包括 @Async 使用的 applicationTaskExecutor)设置 {@link HolderTaskDecorator}, 保留已有的装饰器.
+     * 直接声明为 ExecutorService 的 bean 不会被替换, 需要使用 {@link ContextPropagation#wrap(ExecutorService)} 包装.
+     */
+    @Bean
+    public static BeanPostProcessor holderTaskDecoratorPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof ThreadPoolTaskExecutor) {
+                    //ThreadPoolTaskExecutor 没有 taskDecorator 的 getter
+                    TaskDecorator existing = (TaskDecorator) new DirectFieldAccessor(bean).getPropertyValue("taskDecorator");
+                    if (!(existing instanceof HolderTaskDecorator)) {
+                        ((ThreadPoolTaskExecutor) bean).setTaskDecorator(new HolderTaskDecorator(existing));
+                    }
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * 发送消息时写入 holder, 监听时恢复 holder
+     */
+    @Configuration
+    @ConditionalOnClass(RabbitTemplate.class)
+    static class RabbitTransmitterConfiguration {
+
+        @Bean
+        public static BeanPostProcessor transmitterRabbitPostProcessor() {
+            return new BeanPostProcessor() {
+                private final TransmitterMessagePostProcessor messagePostProcessor = new TransmitterMessagePostProcessor();
+                private final TransmitterListenerAdvice listenerAdvice = new TransmitterListenerAdvice();
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof RabbitTemplate) {
+                        ((RabbitTemplate) bean).addBeforePublishPostProcessors(messagePostProcessor);
+                    } else if (bean instanceof AbstractRabbitListenerContainerFactory) {
+                        AbstractRabbitListenerContainerFactory<?> factory = (AbstractRabbitListenerContainerFactory<?>) bean;
+                        Advice[] chain = factory.getAdviceChain();
+                        Advice[] advices = new Advice[chain == null ? 1 : chain.length + 1];
+                        advices[0] = listenerAdvice;
+                        if (chain != null) {
+                            System.arraycopy(chain, 0, advices, 1, chain.length);
+                        }
+                        factory.setAdviceChain(advices);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * WebFlux 读取请求头中的 holder, WebClient 写入 holder
+     */
+    @Configuration
+    @ConditionalOnClass(WebClient.class)
+    static class ReactiveTransmitterConfiguration {
+
+        @Bean
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+        public TransmitterWebFilter transmitterWebFilter() {
+            return new TransmitterWebFilter();
+        }
+
+        @Bean
+        public WebClientCustomizer transmitterWebClientCustomizer() {
+            return builder -> builder.filter(new TransmitterExchangeFilterFunction());
+        }
     }
 
     @Bean
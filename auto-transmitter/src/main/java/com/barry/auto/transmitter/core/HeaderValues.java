@@ -0,0 +1,66 @@
+package com.barry.auto.transmitter.core;
+
+import lombok.SneakyThrows;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * header 值的URL编解码
+ * <p>
+ * 只包含可见 ASCII 字符, 并且没有 '%' 和 '+' 的值, URL解码后不变, 不需要编码. 常见的 id 和数字都可以省去编解码.
+ * '{' 和 '}' 会被 feign 当作模板表达式解析, 整个 header 被丢弃, 所以 json 对象仍然需要编码.
+ *
+ * @author barry chen
+ */
+public final class HeaderValues {
+
+    private HeaderValues() {
+    }
+
+    @SneakyThrows
+    public static String encode(String value) {
+        if (value == null || !needsEncoding(value)) {
+            return value;
+        }
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+
+    @SneakyThrows
+    public static String decode(String value) {
+        if (value == null || (value.indexOf('%') < 0 && value.indexOf('+') < 0)) {
+            return value;
+        }
+        return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * 收到的 header 值能否原样向下游传递: 只包含可见 ASCII 字符, 并且没有 '{' 和 '}'
+     *
+     * @param value 收到的 header 值(URL解码之前)
+     */
+    public static boolean canForward(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c > '~' || isTemplateChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean needsEncoding(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c <= ' ' || c > '~' || c == '%' || c == '+' || isTemplateChar(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTemplateChar(char c) {
+        return c == '{' || c == '}';
+    }
+}
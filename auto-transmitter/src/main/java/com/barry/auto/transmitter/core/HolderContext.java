@@ -2,6 +2,7 @@ package com.barry.auto.transmitter.core;
 
 import com.barry.auto.transmitter.core.model.Holder;
 import com.barry.auto.transmitter.core.model.Holders;
+import com.barry.common.core.util.ContextPropagation;
 import lombok.Data;
 import org.springframework.beans.BeanUtils;
 
@@ -9,6 +10,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Data
 public class HolderContext {
@@ -19,6 +21,69 @@ public class HolderContext {
     private HolderContext() {
     }
 
+    /**
+     * 在当前线程捕获 Holders, 返回的 Runnable 在执行线程中恢复, 执行完毕后还原执行线程原有的 Holders.
+     * 捕获和每次执行都通过 {@link Holders#fork()} 共享 holder, 不复制. 执行线程中添加或替换 holder 时才创建新的 holder,
+     * 不影响提交线程和其它任务.
+     *
+     * @see ContextPropagation#wrap(Runnable)
+     */
+    public static Runnable wrap(Runnable runnable) {
+        Holders holders = getLocalHolders();
+        Holders snapshot = holders == null ? null : holders.fork();
+        return () -> {
+            Holders previous = replaceLocalHolders(snapshot == null ? null : snapshot.fork());
+            try {
+                runnable.run();
+            } finally {
+                restoreLocalHolders(previous);
+            }
+        };
+    }
+
+    /**
+     * 按 headerKey 读取 holder 的值, 创建 Holders. 每次都创建新的 holder, holderConfig 中的实例被共享, 不能修改.
+     *
+     * @param header 按 headerKey 返回 header 值(URL解码之前), 不存在时返回null
+     * @return 没有任何 holder 时返回null
+     */
+    public static Holders readHolders(Function<String, String> header) {
+        Holders holders = null;
+        for (Holder config : holderConfig.values()) {
+            String value = header.apply(config.getHeaderKey());
+            if (value == null) {
+                continue;
+            }
+            Holder holder = BeanUtils.instantiateClass(config.getClass());
+            holder.setObject(config.fromString(HeaderValues.decode(value)));
+            if (holders == null) {
+                holders = new Holders();
+            }
+            holders.addHolder(holder, value);
+        }
+        return holders;
+    }
+
+    /**
+     * 设置当前线程的 Holders
+     *
+     * @param holders 为null时清除
+     * @return 原有的 Holders, 用于 {@link #restoreLocalHolders(Holders)}
+     */
+    public static Holders replaceLocalHolders(Holders holders) {
+        Holders previous = getLocalHolders();
+        if (holders == null) {
+            removeLocalHolders();
+        } else {
+            setLocalHolders(holders);
+        }
+        return previous;
+    }
+
+    public static void restoreLocalHolders(Holders previous) {
+        replaceLocalHolders(previous);
+    }
+
     /**
      * 获取当前线程中,指定类型的传输对象
      *
@@ -32,6 +97,23 @@ public class HolderContext {
                 .map(h -> h.getObject()).orElse(null);
     }
 
+    /**
+     * 替换当前线程中指定类型的传输对象, 创建新的 holder, 不修改与其它任务共享的 holder
+     *
+     * @param clazz  Holder类型
+     * @param object 传输对象
+     */
+    public static void set(Class<? extends Holder> clazz, Object object) {
+        Holder holder = BeanUtils.instantiateClass(clazz);
+        holder.setObject(object);
+        Holders holders = getLocalHolders();
+        if (holders == null) {
+            holders = new Holders();
+            setLocalHolders(holders);
+        }
+        holders.addHolder(holder);
+    }
+
     public static void removeLocalHolders() {
         holdersThreadLocal.remove();
     }
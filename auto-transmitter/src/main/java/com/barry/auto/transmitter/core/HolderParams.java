@@ -0,0 +1,79 @@
+package com.barry.auto.transmitter.core;
+
+import com.barry.auto.transmitter.core.model.Holder;
+import com.barry.auto.transmitter.core.model.Holders;
+import com.barry.common.spring.util.JsonUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 通过字符串参数(例如 xxl-job 的任务参数)传递 holder
+ * <p>
+ * holder 以 json 追加在参数末尾: {@code 原参数 + "\n#transmitter:" + {"headerKey": "header值"}}.
+ * 当前线程没有 Holders 时参数保持不变, 接收方 {@link #strip(String)} 之后得到原参数.
+ *
+ * @author barry chen
+ */
+public final class HolderParams {
+
+    public static final String TRAILER_PREFIX = "\n#transmitter:";
+
+    private static final TypeReference<Map<String, String>> TRAILER_TYPE = new TypeReference<Map<String, String>>() {
+    };
+
+    private HolderParams() {
+    }
+
+    /**
+     * 把当前线程的 holder 追加到参数末尾
+     *
+     * @param param 原参数, 可以为null
+     * @return 没有 holder 时返回原参数
+     */
+    public static String attach(String param) {
+        Holders holders = HolderContext.getLocalHolders();
+        if (holders == null) {
+            return param;
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Holder holder : holders.getAllHolder()) {
+            if (holder.getObject() != null) {
+                values.put(holder.getHeaderKey(), holders.getHeaderValue(holder));
+            }
+        }
+        if (values.isEmpty()) {
+            return param;
+        }
+        return (param == null ? "" : param) + TRAILER_PREFIX + JsonUtils.toJson(values);
+    }
+
+    /**
+     * 解析参数末尾的 holder
+     *
+     * @return 没有 holder 时返回null
+     */
+    public static Holders read(String param) {
+        int index = indexOfTrailer(param);
+        if (index < 0) {
+            return null;
+        }
+        Map<String, String> values = JsonUtils.fromJson(param.substring(index + TRAILER_PREFIX.length()), TRAILER_TYPE);
+        return values == null ? null : HolderContext.readHolders(values::get);
+    }
+
+    /**
+     * 去掉参数末尾的 holder
+     *
+     * @return 原参数
+     */
+    public static String strip(String param) {
+        int index = indexOfTrailer(param);
+        return index < 0 ? param : param.substring(0, index);
+    }
+
+    private static int indexOfTrailer(String param) {
+        return param == null ? -1 : param.lastIndexOf(TRAILER_PREFIX);
+    }
+}
@@ -0,0 +1,30 @@
+package com.barry.auto.transmitter.core;
+
+import com.barry.common.core.util.ContextPropagation;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * spring 线程池的任务装饰, 把提交线程的 HolderContext(以及 MDC 等 {@link ContextPropagation} 注册的上下文)传递到执行线程.
+ * 开启 spring.transmitter.enable 后自动设置到 ThreadPoolTaskExecutor, 也可以手动设置到自定义的线程池.
+ * <p>
+ * 可以组合已有的装饰器, 已有的装饰器在恢复上下文之后执行.
+ *
+ * @author barry chen
+ */
+public class HolderTaskDecorator implements TaskDecorator {
+
+    private final TaskDecorator delegate;
+
+    public HolderTaskDecorator() {
+        this(null);
+    }
+
+    public HolderTaskDecorator(TaskDecorator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return ContextPropagation.wrap(delegate == null ? runnable : delegate.decorate(runnable));
+    }
+}
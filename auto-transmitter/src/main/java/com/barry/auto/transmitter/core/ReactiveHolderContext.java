@@ -0,0 +1,75 @@
+package com.barry.auto.transmitter.core;
+
+import com.barry.auto.transmitter.core.model.Holder;
+import com.barry.auto.transmitter.core.model.Holders;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 响应式场景下的 {@link HolderContext}
+ * <p>
+ * Holders 保存在 Reactor 的 subscriber context 中, 随订阅传递, 不依赖执行线程. 操作符之间切换线程时不需要复制 ThreadLocal,
+ * 只有 {@link #call(Callable)} 在执行期间把 Holders 放入当前线程, 内部可以照常使用 {@link HolderContext#get(Class)}.
+ *
+ * @author barry chen
+ */
+public final class ReactiveHolderContext {
+
+    /**
+     * subscriber context 中 Holders 的 key
+     */
+    public static final Class<Holders> CONTEXT_KEY = Holders.class;
+
+    private ReactiveHolderContext() {
+    }
+
+    /**
+     * @return 当前订阅的 Holders, 没有时为空
+     */
+    public static Mono<Holders> holders() {
+        return Mono.subscriberContext().flatMap(context -> Mono.justOrEmpty(context.getOrEmpty(CONTEXT_KEY)));
+    }
+
+    /**
+     * 获取当前订阅中, 指定类型的传输对象
+     *
+     * @param clazz Holder类型
+     * @return 传输对象, 没有时为空
+     */
+    public static Mono<Object> get(Class<? extends Holder> clazz) {
+        String headerKey = HolderContext.getHolderConfig().get(clazz).getHeaderKey();
+        return holders().flatMap(holders -> Mono.justOrEmpty(holders.getHolder(headerKey)))
+                .flatMap(holder -> Mono.justOrEmpty(holder.getObject()));
+    }
+
+    /**
+     * 把 Holders 写入 subscriber context, 用于 {@code Mono#subscriberContext(Function)}
+     *
+     * @param context  subscriber context
+     * @param holders  Holders, 为null时不修改
+     * @return 新的 subscriber context
+     */
+    public static Context put(Context context, Holders holders) {
+        return holders == null ? context : context.put(CONTEXT_KEY, holders);
+    }
+
+    /**
+     * 执行阻塞的或者依赖 {@link HolderContext} 的代码, 执行期间当前线程持有订阅中的 Holders, 执行后还原
+     *
+     * @param callable 返回null时结果为空
+     */
+    public static <T> Mono<T> call(Callable<T> callable) {
+        return Mono.subscriberContext().flatMap(context -> {
+            Holders previous = HolderContext.replaceLocalHolders(context.getOrDefault(CONTEXT_KEY, null));
+            try {
+                return Mono.justOrEmpty(callable.call());
+            } catch (Exception e) {
+                return Mono.error(e);
+            } finally {
+                HolderContext.restoreLocalHolders(previous);
+            }
+        });
+    }
+}
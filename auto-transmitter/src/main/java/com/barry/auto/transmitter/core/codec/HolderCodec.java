@@ -0,0 +1,27 @@
+package com.barry.auto.transmitter.core.codec;
+
+/**
+ * 传输对象与 header 字符串之间的编解码
+ *
+ * @param <T> 传输对象的类型
+ * @author barry chen
+ * @see HolderCodecs
+ */
+public interface HolderCodec<T> {
+
+    /**
+     * 编码传输对象
+     *
+     * @param value 传输对象
+     * @return 放入 header 的字符串(URL编码之前)
+     */
+    String encode(T value);
+
+    /**
+     * 解码传输对象
+     *
+     * @param value header 中的字符串(URL解码之后)
+     * @return 传输对象
+     */
+    T decode(String value);
+}
@@ -0,0 +1,64 @@
+package com.barry.auto.transmitter.core.codec;
+
+/**
+ * 常用的 {@link HolderCodec}
+ * <p>
+ * 字符串, 数字等简单的传输对象可以使用 {@link #string()}, {@link #longValue()}, 不需要 json 的引号和解析.
+ *
+ * @author barry chen
+ */
+public final class HolderCodecs {
+
+    private static final ClassValue<JsonHolderCodec<?>> JSON_CODECS = new ClassValue<JsonHolderCodec<?>>() {
+        @Override
+        protected JsonHolderCodec<?> computeValue(Class<?> type) {
+            return new JsonHolderCodec<>(type);
+        }
+    };
+
+    private static final HolderCodec<String> STRING = new HolderCodec<String>() {
+        @Override
+        public String encode(String value) {
+            return value;
+        }
+
+        @Override
+        public String decode(String value) {
+            return value;
+        }
+    };
+
+    private static final HolderCodec<Long> LONG = new HolderCodec<Long>() {
+        @Override
+        public String encode(Long value) {
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public Long decode(String value) {
+            return value == null || value.isEmpty() ? null : Long.valueOf(value);
+        }
+    };
+
+    private HolderCodecs() {
+    }
+
+    /**
+     * json 编解码, 每个类型只创建一次 ObjectReader/ObjectWriter
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> HolderCodec<T> json(Class<T> type) {
+        return (HolderCodec<T>) JSON_CODECS.get(type);
+    }
+
+    /**
+     * 字符串原样传输
+     */
+    public static HolderCodec<String> string() {
+        return STRING;
+    }
+
+    public static HolderCodec<Long> longValue() {
+        return LONG;
+    }
+}
@@ -0,0 +1,72 @@
+package com.barry.auto.transmitter.core.codec;
+
+import com.barry.common.spring.util.JsonUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+
+/**
+ * 使用 {@link JsonUtils} 的 ObjectMapper 编解码, 与 JsonUtils.toJson/fromJson 的结果相同.
+ * ObjectReader/ObjectWriter 在第一次使用时创建, ObjectMapper 被替换后重新创建.
+ *
+ * @author barry chen
+ */
+@Slf4j
+class JsonHolderCodec<T> implements HolderCodec<T> {
+
+    private final Class<T> type;
+    private volatile Bound bound;
+
+    JsonHolderCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public String encode(T value) {
+        try {
+            return bind().writer.writeValueAsString(value);
+        } catch (IOException e) {
+            log.warn("write to json string error:" + value, e);
+            return null;
+        }
+    }
+
+    @Override
+    public T decode(String value) {
+        if (StringUtils.isEmpty(value) || "null".equals(value)) {
+            return null;
+        }
+        try {
+            return bind().reader.readValue(value);
+        } catch (IOException e) {
+            log.warn("parse json string error:" + value, e);
+            return null;
+        }
+    }
+
+    private Bound bind() {
+        ObjectMapper mapper = JsonUtils.getJsonMapper();
+        Bound current = bound;
+        if (current == null || current.mapper != mapper) {
+            current = new Bound(mapper, mapper.readerFor(type), mapper.writer());
+            bound = current;
+        }
+        return current;
+    }
+
+    private static class Bound {
+        private final ObjectMapper mapper;
+        private final ObjectReader reader;
+        private final ObjectWriter writer;
+
+        private Bound(ObjectMapper mapper, ObjectReader reader, ObjectWriter writer) {
+            this.mapper = mapper;
+            this.reader = reader;
+            this.writer = writer;
+        }
+    }
+}
@@ -1,13 +1,23 @@
 package com.barry.auto.transmitter.core.model;
 
-import com.barry.common.spring.util.JsonUtils;
-
-import java.lang.reflect.ParameterizedType;
+import com.barry.auto.transmitter.core.codec.HolderCodec;
+import com.barry.auto.transmitter.core.codec.HolderCodecs;
+import org.springframework.core.ResolvableType;
 
 public abstract class AbsHolder<T> implements Holder {
 
     private final static String HEAD_KEY_PREFIX = "TRANSMITTER-";
 
+    /**
+     * holder类型 -> 传输对象的类型, 每个holder类型只解析一次泛型
+     */
+    private static final ClassValue<Class<?>> VALUE_TYPES = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> holderClass) {
+            return ResolvableType.forClass(holderClass).as(AbsHolder.class).getGeneric(0).resolve(Object.class);
+        }
+    };
+
     protected T t;
 
     @Override
@@ -36,13 +46,22 @@ public abstract class AbsHolder<T> implements Holder {
 
     @Override
     public Object fromString(String value) {
-        Class<T> clazz = (Class<T>) ((ParameterizedType) getClass()
-                .getGenericSuperclass()).getActualTypeArguments()[0];
-        return JsonUtils.fromJson(value, clazz);
+        return codec().decode(value);
     }
 
     @Override
     public String toString(Object o) {
-        return JsonUtils.toJson(o);
+        return codec().encode((T) o);
+    }
+
+    /**
+     * 传输对象的编解码, 默认为json. 字符串, 数字等简单对象可以返回 {@link HolderCodecs#string()} 等紧凑的编码
+     */
+    protected HolderCodec<T> codec() {
+        return HolderCodecs.json(getValueType());
+    }
+
+    protected Class<T> getValueType() {
+        return (Class<T>) VALUE_TYPES.get(getClass());
     }
 }
@@ -1,18 +1,84 @@
 package com.barry.auto.transmitter.core.model;
 
+import com.barry.auto.transmitter.core.HeaderValues;
+import org.springframework.beans.BeanUtils;
+
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 当前请求的全部holder
+ * <p>
+ * 写时复制: 添加holder时复制一份新的map, 读取不加锁. 异步任务使用 {@link #fork()} 得到的实例, 与提交线程共享 holder,
+ * 只在 {@link #addHolder(Holder)}, {@link #setObject(String, Object)} 时创建新的 holder, 修改互不影响.
+ * holder 实例可能被多个任务共享, 替换传输对象使用 {@link #setObject(String, Object)}, 不要直接调用 {@link Holder#setObject(Object)}.
+ */
 public class Holders {
 
-    private final Map<String, Holder> holderMap = new HashMap<>();
+    private volatile Map<String, Holder> holderMap = Collections.emptyMap();
+
+    /**
+     * headerKey -> 编码后的 header 值. 同一个请求内向下游的多次调用复用编码结果
+     */
+    private final Map<String, EncodedValue> headerValues = new ConcurrentHashMap<>();
 
     public Holders() {
     }
 
     public void addHolder(Holder holder) {
-        this.holderMap.put(holder.getHeaderKey(), holder);
+        put(holder);
+        this.headerValues.remove(holder.getHeaderKey());
+    }
+
+    /**
+     * 添加从请求中解析的holder, 记录收到的 header 值, 向下游传递时不需要重新编码.
+     * 上游没有编码的值(如包含 '{' 的 json)不能原样传递, 向下游传递时重新编码
+     *
+     * @param holder      holder
+     * @param headerValue 收到的 header 值(URL解码之前)
+     */
+    public void addHolder(Holder holder, String headerValue) {
+        put(holder);
+        if (headerValue != null && HeaderValues.canForward(headerValue)) {
+            this.headerValues.put(holder.getHeaderKey(), new EncodedValue(holder.getObject(), headerValue));
+        } else {
+            this.headerValues.remove(holder.getHeaderKey());
+        }
+    }
+
+    private synchronized void put(Holder holder) {
+        Map<String, Holder> copy = new HashMap<>(holderMap);
+        copy.put(holder.getHeaderKey(), holder);
+        this.holderMap = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * 替换传输对象. 创建新的 holder 替换原实例, 不修改与其它任务共享的 holder
+     *
+     * @param headerKey holder 的 headerKey
+     * @param object    传输对象
+     */
+    public void setObject(String headerKey, Object object) {
+        Holder holder = holderMap.get(headerKey);
+        if (holder == null) {
+            throw new IllegalArgumentException("holder " + headerKey + " not found");
+        }
+        Holder replaced = BeanUtils.instantiateClass(holder.getClass());
+        replaced.setObject(object);
+        addHolder(replaced);
+    }
+
+    /**
+     * 与当前实例共享 holder 的新实例, 不复制 holder. 双方的添加和替换只作用于各自的实例
+     */
+    public Holders fork() {
+        Holders fork = new Holders();
+        fork.holderMap = holderMap;
+        fork.headerValues.putAll(headerValues);
+        return fork;
     }
 
     public Holder getHolder(String headerKey) {
@@ -23,4 +89,30 @@ public class Holders {
         return this.holderMap.values();
     }
 
+    /**
+     * holder 编码后的 header 值.
+     * 只在传输对象被替换(setObject)后重新编码, 直接修改传输对象的属性不会重新编码.
+     *
+     * @param holder holder
+     * @return header 值
+     */
+    public String getHeaderValue(Holder holder) {
+        Object object = holder.getObject();
+        EncodedValue encoded = headerValues.get(holder.getHeaderKey());
+        if (encoded == null || encoded.object != object) {
+            encoded = new EncodedValue(object, HeaderValues.encode(holder.toString(object)));
+            headerValues.put(holder.getHeaderKey(), encoded);
+        }
+        return encoded.value;
+    }
+
+    private static class EncodedValue {
+        private final Object object;
+        private final String value;
+
+        private EncodedValue(Object object, String value) {
+            this.object = object;
+            this.value = value;
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package com.barry.auto.transmitter.interceptor;
+
+import com.barry.auto.transmitter.core.HolderContext;
+import com.barry.auto.transmitter.core.ReactiveHolderContext;
+import com.barry.auto.transmitter.core.model.Holder;
+import com.barry.auto.transmitter.core.model.Holders;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebClient 发送请求前把 holder 写入请求头.
+ * <p>
+ * 优先使用 subscriber context 中的 Holders; 没有时使用调用线程的 Holders, 在 servlet 应用中使用 WebClient 时同样生效.
+ *
+ * @author barry chen
+ */
+public class TransmitterExchangeFilterFunction implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        Holders local = HolderContext.getLocalHolders();
+        return Mono.subscriberContext().flatMap(context -> {
+            Holders holders = context.getOrDefault(ReactiveHolderContext.CONTEXT_KEY, local);
+            if (holders == null) {
+                return next.exchange(request);
+            }
+            ClientRequest.Builder builder = ClientRequest.from(request);
+            for (Holder holder : holders.getAllHolder()) {
+                if (holder.getObject() != null) {
+                    builder.header(holder.getHeaderKey(), holders.getHeaderValue(holder));
+                }
+            }
+            return next.exchange(builder.build());
+        });
+    }
+}
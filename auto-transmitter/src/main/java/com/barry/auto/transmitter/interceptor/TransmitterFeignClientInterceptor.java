@@ -5,23 +5,19 @@ import com.barry.auto.transmitter.core.model.Holder;
 import com.barry.auto.transmitter.core.model.Holders;
 import feign.RequestInterceptor;
 import feign.RequestTemplate;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 @Slf4j
 public class TransmitterFeignClientInterceptor implements RequestInterceptor {
 
-    @SneakyThrows
     @Override
     public void apply(RequestTemplate requestTemplate) {
         Holders holders = getOrInitHolders();
         for (Holder holder : holders.getAllHolder()) {
-                requestTemplate.header(holder.getHeaderKey(), URLEncoder.encode(holder.toString(holder.getObject()), StandardCharsets.UTF_8.name()));
+            requestTemplate.header(holder.getHeaderKey(), holders.getHeaderValue(holder));
         }
     }
 
@@ -0,0 +1,47 @@
+package com.barry.auto.transmitter.interceptor;
+
+import com.barry.auto.transmitter.core.HolderContext;
+import com.barry.auto.transmitter.core.model.Holders;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.List;
+
+/**
+ * 作为监听容器的 advice, 在调用监听方法之前从消息头恢复 holder, 调用之后还原监听线程原有的 Holders.
+ * <p>
+ * 批量监听时使用第一条消息的 holder. 消息头中没有 holder 时不创建 Holders.
+ *
+ * @author barry chen
+ * @see TransmitterMessagePostProcessor
+ */
+public class TransmitterListenerAdvice implements MethodInterceptor {
+
+    /**
+     * 拦截 {@code ContainerDelegate.invokeListener(Channel, Object)}, 第二个参数为 Message 或者批量监听时的 {@code List<Message>}
+     */
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        Object data = arguments.length > 1 ? arguments[1] : null;
+        if (data instanceof List && !((List<?>) data).isEmpty()) {
+            data = ((List<?>) data).get(0);
+        }
+        if (!(data instanceof Message)) {
+            return invocation.proceed();
+        }
+        MessageProperties properties = ((Message) data).getMessageProperties();
+        Holders holders = HolderContext.readHolders(key -> {
+            Object value = properties.getHeader(key);
+            return value == null ? null : value.toString();
+        });
+        Holders previous = HolderContext.replaceLocalHolders(holders);
+        try {
+            return invocation.proceed();
+        } finally {
+            HolderContext.restoreLocalHolders(previous);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.barry.auto.transmitter.interceptor;
+
+import com.barry.auto.transmitter.core.HolderContext;
+import com.barry.auto.transmitter.core.model.Holder;
+import com.barry.auto.transmitter.core.model.Holders;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * 发送消息前把当前线程的 holder 写入消息头, 与 http header 使用相同的 key 和值.
+ * <p>
+ * 当前线程没有 Holders 时不修改消息; 同一个请求内发送多条消息时复用 {@link Holders#getHeaderValue(Holder)} 的编码结果.
+ *
+ * @author barry chen
+ * @see TransmitterListenerAdvice
+ */
+public class TransmitterMessagePostProcessor implements MessagePostProcessor {
+
+    @Override
+    public Message postProcessMessage(Message message) {
+        Holders holders = HolderContext.getLocalHolders();
+        if (holders == null) {
+            return message;
+        }
+        MessageProperties properties = message.getMessageProperties();
+        for (Holder holder : holders.getAllHolder()) {
+            if (holder.getObject() != null) {
+                properties.setHeader(holder.getHeaderKey(), holders.getHeaderValue(holder));
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,27 @@
+package com.barry.auto.transmitter.interceptor;
+
+import com.barry.auto.transmitter.core.HolderContext;
+import com.barry.auto.transmitter.core.ReactiveHolderContext;
+import com.barry.auto.transmitter.core.model.Holders;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux 中从请求头读取 holder, 放入 subscriber context
+ *
+ * @author barry chen
+ * @see ReactiveHolderContext
+ */
+public class TransmitterWebFilter implements WebFilter {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Holders holders = HolderContext.readHolders(exchange.getRequest().getHeaders()::getFirst);
+        if (holders == null) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange).subscriberContext(context -> ReactiveHolderContext.put(context, holders));
+    }
+}
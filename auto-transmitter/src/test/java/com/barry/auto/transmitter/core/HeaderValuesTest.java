@@ -0,0 +1,110 @@
+package com.barry.auto.transmitter.core;
+
+import com.barry.auto.transmitter.core.codec.HolderCodec;
+import com.barry.auto.transmitter.core.codec.HolderCodecs;
+import com.barry.auto.transmitter.core.model.AbsHolder;
+import com.barry.auto.transmitter.core.model.Holders;
+import com.barry.auto.transmitter.interceptor.TransmitterFeignClientInterceptor;
+import com.google.common.collect.Lists;
+import feign.RequestTemplate;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * @author barry chen
+ */
+public class HeaderValuesTest {
+
+    private static final String JSON = "{\"version\":\"v1\"}";
+
+    public static class VersionHolder extends AbsHolder<String> {
+
+        @Override
+        public String getSubKey() {
+            return "V";
+        }
+
+        @Override
+        public void initObject() {
+        }
+
+        @Override
+        protected HolderCodec<String> codec() {
+            return HolderCodecs.string();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        HolderContext.removeLocalHolders();
+    }
+
+    private static VersionHolder holder(String value) {
+        VersionHolder holder = new VersionHolder();
+        holder.setObject(value);
+        return holder;
+    }
+
+    /**
+     * 经过 feign 解析模板后发出的 header 值
+     */
+    private static String sendThroughFeign(Holders holders) {
+        HolderContext.setLocalHolders(holders);
+        RequestTemplate template = new RequestTemplate();
+        new TransmitterFeignClientInterceptor().apply(template);
+        Collection<String> values = template.resolve(Collections.emptyMap()).headers().get("TRANSMITTER-V");
+        Assert.assertNotNull("header dropped by feign", values);
+        Assert.assertEquals(1, values.size());
+        return values.iterator().next();
+    }
+
+    @Test
+    public void encodeTest() {
+        Assert.assertEquals("12345", HeaderValues.encode("12345"));
+        Assert.assertEquals("[1,2]", HeaderValues.encode("[1,2]"));
+        String encoded = HeaderValues.encode(JSON);
+        Assert.assertFalse(encoded.contains("{"));
+        Assert.assertEquals(JSON, HeaderValues.decode(encoded));
+        Assert.assertEquals("中文", HeaderValues.decode(HeaderValues.encode("中文")));
+        Assert.assertEquals("a+b%", HeaderValues.decode(HeaderValues.encode("a+b%")));
+    }
+
+    @Test
+    public void canForwardTest() {
+        Assert.assertTrue(HeaderValues.canForward("12345"));
+        Assert.assertTrue(HeaderValues.canForward(HeaderValues.encode(JSON)));
+        Assert.assertFalse(HeaderValues.canForward(JSON));
+        Assert.assertFalse(HeaderValues.canForward("a b"));
+        Assert.assertFalse(HeaderValues.canForward("中文"));
+    }
+
+    @Test
+    public void feignJsonHolderTest() {
+        Holders holders = new Holders();
+        holders.addHolder(holder(JSON));
+        Assert.assertEquals(JSON, HeaderValues.decode(sendThroughFeign(holders)));
+    }
+
+    @Test
+    public void forwardRawJsonTest() {
+        // 上游(如 WebClient, AMQP)没有编码的 json, 向下游传递时重新编码
+        HolderContext.config(Lists.newArrayList(VersionHolder.class));
+        Holders holders = HolderContext.readHolders(key -> "TRANSMITTER-V".equals(key) ? JSON : null);
+        Assert.assertEquals(JSON, holders.getHolder("TRANSMITTER-V").getObject());
+        Assert.assertEquals(JSON, HeaderValues.decode(sendThroughFeign(holders)));
+    }
+
+    @Test
+    public void forwardEncodedTest() {
+        // 已经编码的值原样传递
+        String encoded = HeaderValues.encode(JSON);
+        Holders holders = new Holders();
+        holders.addHolder(holder(JSON), encoded);
+        Assert.assertSame(encoded, holders.getHeaderValue(holders.getHolder("TRANSMITTER-V")));
+        Assert.assertEquals(encoded, sendThroughFeign(holders));
+    }
+}
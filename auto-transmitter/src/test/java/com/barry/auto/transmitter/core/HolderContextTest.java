@@ -0,0 +1,141 @@
+package com.barry.auto.transmitter.core;
+
+import com.barry.auto.transmitter.core.codec.HolderCodec;
+import com.barry.auto.transmitter.core.codec.HolderCodecs;
+import com.barry.auto.transmitter.core.model.AbsHolder;
+import com.barry.auto.transmitter.core.model.Holders;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * @author barry chen
+ */
+public class HolderContextTest {
+
+    public static class TenantHolder extends AbsHolder<String> {
+
+        @Override
+        public String getSubKey() {
+            return "TENANT";
+        }
+
+        @Override
+        public void initObject() {
+        }
+
+        @Override
+        protected HolderCodec<String> codec() {
+            return HolderCodecs.string();
+        }
+    }
+
+    public static class UserHolder extends AbsHolder<String> {
+
+        @Override
+        public String getSubKey() {
+            return "USER";
+        }
+
+        @Override
+        public void initObject() {
+        }
+
+        @Override
+        protected HolderCodec<String> codec() {
+            return HolderCodecs.string();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        HolderContext.config(Lists.newArrayList(TenantHolder.class, UserHolder.class));
+        HolderContext.set(TenantHolder.class, "t1");
+    }
+
+    @After
+    public void tearDown() {
+        HolderContext.removeLocalHolders();
+    }
+
+    @Test
+    public void shareSnapshotTest() {
+        Holders holders = HolderContext.getLocalHolders();
+        Runnable task = HolderContext.wrap(() -> {
+            Holders local = HolderContext.getLocalHolders();
+            Assert.assertNotSame(holders, local);
+            // 没有修改时共享 holder, 不复制
+            Assert.assertSame(holders.getHolder("TRANSMITTER-TENANT"), local.getHolder("TRANSMITTER-TENANT"));
+        });
+        task.run();
+        Assert.assertSame(holders, HolderContext.getLocalHolders());
+    }
+
+    @Test
+    public void workerChangeNotLeakTest() {
+        List<String> seen = Lists.newArrayList();
+        Runnable task = HolderContext.wrap(() -> {
+            seen.add(HolderContext.get(TenantHolder.class) + "," + HolderContext.get(UserHolder.class));
+            HolderContext.set(TenantHolder.class, "t2");
+            HolderContext.getLocalHolders().setObject("TRANSMITTER-TENANT", "t3");
+            HolderContext.set(UserHolder.class, "u1");
+            seen.add(HolderContext.get(TenantHolder.class) + "," + HolderContext.get(UserHolder.class));
+        });
+        // 同一个任务多次执行, 相当于兄弟任务
+        task.run();
+        task.run();
+        Assert.assertEquals(Lists.newArrayList("t1,null", "t3,u1", "t1,null", "t3,u1"), seen);
+        // 不影响提交线程
+        Assert.assertEquals("t1", HolderContext.get(TenantHolder.class));
+        Assert.assertNull(HolderContext.get(UserHolder.class));
+    }
+
+    @Test
+    public void callerChangeNotLeakTest() {
+        List<String> seen = Lists.newArrayList();
+        Runnable task = HolderContext.wrap(() -> seen.add(String.valueOf(HolderContext.get(TenantHolder.class))));
+        // 提交之后提交线程的修改不影响任务
+        HolderContext.getLocalHolders().setObject("TRANSMITTER-TENANT", "t2");
+        HolderContext.set(UserHolder.class, "u1");
+        task.run();
+        Assert.assertEquals(Lists.newArrayList("t1"), seen);
+        Assert.assertEquals("t2", HolderContext.get(TenantHolder.class));
+    }
+
+    @Test
+    public void headerValueTest() {
+        Holders holders = HolderContext.getLocalHolders();
+        Assert.assertEquals("t1", holders.getHeaderValue(holders.getHolder("TRANSMITTER-TENANT")));
+        Runnable task = HolderContext.wrap(() -> {
+            Holders local = HolderContext.getLocalHolders();
+            local.setObject("TRANSMITTER-TENANT", "t2");
+            Assert.assertEquals("t2", local.getHeaderValue(local.getHolder("TRANSMITTER-TENANT")));
+        });
+        task.run();
+        Assert.assertEquals("t1", holders.getHeaderValue(holders.getHolder("TRANSMITTER-TENANT")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setObjectMissingTest() {
+        HolderContext.getLocalHolders().setObject("TRANSMITTER-USER", "u1");
+    }
+
+    @Test
+    public void noHoldersTest() {
+        HolderContext.removeLocalHolders();
+        Runnable task = HolderContext.wrap(() -> {
+            Assert.assertNull(HolderContext.getLocalHolders());
+            HolderContext.set(UserHolder.class, "u1");
+        });
+        HolderContext.set(TenantHolder.class, "t9");
+        Holders executing = HolderContext.getLocalHolders();
+        task.run();
+        // 执行线程原有的 Holders 被还原
+        Assert.assertSame(executing, HolderContext.getLocalHolders());
+        Assert.assertNull(HolderContext.get(UserHolder.class));
+    }
+}
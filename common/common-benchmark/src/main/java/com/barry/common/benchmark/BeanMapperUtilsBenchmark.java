@@ -0,0 +1,36 @@
+package com.barry.common.benchmark;
+
+import com.barry.common.core.util.BeanMapperUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link BeanMapperUtils#map(Object, Class)}</p>
+ * orika 在 JDK 17 上生成映射类需要开放 java.lang
+ *
+ * @author barry chen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class BeanMapperUtilsBenchmark {
+
+    private final SampleOrder order = SampleOrder.create();
+
+    @Benchmark
+    public SampleOrder.SampleOrderDto map() {
+        return BeanMapperUtils.map(order, SampleOrder.SampleOrderDto.class);
+    }
+}
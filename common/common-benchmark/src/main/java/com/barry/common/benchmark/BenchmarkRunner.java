@@ -0,0 +1,76 @@
+package com.barry.common.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>基准测试入口</p>
+ * <ul>
+ *     <li>不带参数: 依次以单线程和多线程运行全部基准测试, 开启 GC profiler 统计分配速率,
+ *     结果写入 {@code target/benchmark-results/threads-<n>.json}</li>
+ *     <li>带参数: 交给 JMH 命令行处理, 例如 {@code -prof gc -t 4 IdWorkerBenchmark}</li>
+ * </ul>
+ * 多线程数量通过 {@code -Dbenchmark.threads} 指定, 默认为 CPU 核数.
+ * 结果目录通过 {@code -Dbenchmark.resultDir} 指定, 只有显式指定 {@code -Dbenchmark.resultDir=baseline} 时才覆盖仓库中的基线.
+ * 写入的结果去掉与机器相关的 {@code jvm} 路径, 便于提交到仓库.
+ *
+ * @author barry chen
+ */
+public final class BenchmarkRunner {
+
+    private static final String RESULT_DIR = System.getProperty("benchmark.resultDir", "target/benchmark-results");
+    /**
+     * 与机器相关, 不写入结果的字段
+     */
+    private static final String[] ENVIRONMENT_FIELDS = {"jvm"};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        if (args.length > 0) {
+            Main.main(args);
+            return;
+        }
+        int threads = Integer.getInteger("benchmark.threads", Runtime.getRuntime().availableProcessors());
+        new File(RESULT_DIR).mkdirs();
+        run(1);
+        if (threads > 1) {
+            run(threads);
+        }
+    }
+
+    private static void run(int threads) throws RunnerException, IOException {
+        File result = new File(RESULT_DIR, "threads-" + threads + ".json");
+        Options options = new OptionsBuilder()
+                .include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark")
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build();
+        new Runner(options).run();
+        stripEnvironment(result);
+    }
+
+    private static void stripEnvironment(File result) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode root = mapper.readTree(result);
+        for (JsonNode benchmark : root) {
+            ((ObjectNode) benchmark).remove(Arrays.asList(ENVIRONMENT_FIELDS));
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(result, root);
+    }
+}
@@ -0,0 +1,58 @@
+package com.barry.common.benchmark;
+
+import com.barry.common.core.util.Convert;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link Convert} 常用类型转换</p>
+ *
+ * @author barry chen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertBenchmark {
+
+    private final Object longText = "1234567890123";
+    private final Object intText = "65535";
+    private final Object number = 42L;
+    private final String longArrayText = "1,2,3,4,5,6,7,8,9,10";
+
+    @Benchmark
+    public Long toLongFromString() {
+        return Convert.toLong(longText);
+    }
+
+    @Benchmark
+    public Integer toIntFromString() {
+        return Convert.toInt(intText);
+    }
+
+    @Benchmark
+    public Integer toIntFromNumber() {
+        return Convert.toInt(number);
+    }
+
+    @Benchmark
+    public String toStr() {
+        return Convert.toStr(number);
+    }
+
+    @Benchmark
+    public Long[] toLongArray() {
+        return Convert.toLongArray(longArrayText);
+    }
+}
@@ -0,0 +1,48 @@
+package com.barry.common.benchmark;
+
+import com.barry.common.core.util.DateUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link DateUtils#parseDate(String)} 按 PARSE_PATTERNS 顺序尝试解析, 格式越靠后越慢</p>
+ *
+ * @author barry chen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateUtilsBenchmark {
+
+    private final String firstPattern = "2021-01-01 12:30:45.123 +0800";
+    private final String dateTime = "2021-01-01 12:30:45";
+    private final String date = "2021-01-01";
+
+    @Benchmark
+    public Date parseFirstPattern() {
+        return DateUtils.parseDate(firstPattern);
+    }
+
+    @Benchmark
+    public Date parseDateTime() {
+        return DateUtils.parseDate(dateTime);
+    }
+
+    @Benchmark
+    public Date parseDate() {
+        return DateUtils.parseDate(date);
+    }
+}
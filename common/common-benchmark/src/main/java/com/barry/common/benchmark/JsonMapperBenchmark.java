@@ -0,0 +1,50 @@
+package com.barry.common.benchmark;
+
+import com.barry.common.core.util.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link JsonMapper} 序列化/反序列化</p>
+ *
+ * @author barry chen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMapperBenchmark {
+
+    private JsonMapper jsonMapper;
+    private SampleOrder order;
+    private String json;
+
+    @Setup
+    public void setup() {
+        jsonMapper = new JsonMapper();
+        order = SampleOrder.create();
+        json = jsonMapper.toJson(order);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return jsonMapper.toJson(order);
+    }
+
+    @Benchmark
+    public SampleOrder fromJson() {
+        return jsonMapper.fromJson(json, SampleOrder.class);
+    }
+}
@@ -0,0 +1,41 @@
+package com.barry.common.benchmark;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <p>基准测试使用的样例对象</p>
+ * 字段类型覆盖常见的业务DTO: 数字, 字符串, 金额, 时间, 集合
+ *
+ * @author barry chen
+ */
+@Data
+public class SampleOrder {
+
+    private Long id;
+    private String orderNo;
+    private Integer status;
+    private BigDecimal amount;
+    private Date createTime;
+    private List<String> tags;
+
+    public static SampleOrder create() {
+        SampleOrder order = new SampleOrder();
+        order.setId(1234567890123L);
+        order.setOrderNo("SO202101010001");
+        order.setStatus(2);
+        order.setAmount(new BigDecimal("1024.50"));
+        order.setCreateTime(new Date(1609459200000L));
+        order.setTags(List.of("vip", "express", "gift"));
+        return order;
+    }
+
+    /**
+     * 字段相同的目标对象, 用于对象复制
+     */
+    public static class SampleOrderDto extends SampleOrder {
+    }
+}
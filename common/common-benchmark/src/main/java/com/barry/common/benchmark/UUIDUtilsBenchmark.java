@@ -0,0 +1,36 @@
+package com.barry.common.benchmark;
+
+import com.barry.common.core.util.UUIDUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link UUIDUtils#uuid()}</p>
+ * 多线程时 SecureRandom 的竞争会体现在吞吐量上
+ *
+ * @author barry chen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UUIDUtilsBenchmark {
+
+    @Benchmark
+    public String uuid() {
+        return UUIDUtils.uuid();
+    }
+
+    @Benchmark
+    public String uuidWithSeparator() {
+        return UUIDUtils.uuid(false);
+    }
+}
@@ -0,0 +1,37 @@
+package com.barry.common.core.exception;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>并行分批调用失败</p>
+ * 包含每个失败分片的异常, 以及成功分片按顺序汇总的结果(收集异常模式下).
+ *
+ * @author barry chen
+ * @see com.barry.common.core.util.BatchInvokeUtil
+ */
+@Getter
+public class BatchInvokeException extends ApplicationException {
+
+    private static final long serialVersionUID = 2846573613250375117L;
+
+    /**
+     * key 为分片序号(从0开始), value 为异常
+     */
+    private final transient Map<Integer, Throwable> errors;
+    /**
+     * 成功分片的结果, 快速失败模式下为空
+     */
+    private final transient List<?> partialResults;
+
+    public BatchInvokeException(Map<Integer, Throwable> errors, List<?> partialResults) {
+        super(SystemErrorCode.SYS_BATCH_INVOKE_ERROR, errors.values().iterator().next(),
+                errors.size() + " chunk(s) failed, first failed chunk: " + errors.keySet().iterator().next());
+        this.errors = Collections.unmodifiableMap(errors);
+        this.partialResults = partialResults == null ? Collections.emptyList() : Collections.unmodifiableList(partialResults);
+        errors.values().stream().skip(1).forEach(this::addSuppressed);
+    }
+}
@@ -49,6 +49,21 @@ public enum SystemErrorCode implements ErrorCode {
      */
     SYS_ID_WORKER_INIT_ERROR(ErrorMessageConsts.SYS_ERROR_CODE_PREFIX + "007", "init id worker fail"),
 
+    /**
+     * 号段分配失败
+     */
+    SYS_ID_SEGMENT_ALLOCATE_ERROR(ErrorMessageConsts.SYS_ERROR_CODE_PREFIX + "0008", "allocate id segment fail"),
+
+    /**
+     * 并行分批调用失败
+     */
+    SYS_BATCH_INVOKE_ERROR(ErrorMessageConsts.SYS_ERROR_CODE_PREFIX + "0009", "batch invoke fail"),
+
+    /**
+     * 并行分片执行失败
+     */
+    SYS_SHARDING_EXECUTE_ERROR(ErrorMessageConsts.SYS_ERROR_CODE_PREFIX + "0010", "sharding task execute fail"),
+
     /**
      * http工具异常 0100 - 0149
      */
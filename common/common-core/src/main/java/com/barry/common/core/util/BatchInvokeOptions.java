@@ -0,0 +1,86 @@
+package com.barry.common.core.util;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>并行分批调用的配置</p>
+ * <pre>
+ * {@code
+ * BatchInvokeOptions options = BatchInvokeOptions.defaults()
+ *         .maxConcurrency(4)
+ *         .chunkTimeout(Duration.ofSeconds(3))
+ *         .errorPolicy(BatchInvokeOptions.ErrorPolicy.COLLECT_ERRORS);
+ * }
+ * </pre>
+ *
+ * @author barry chen
+ * @see BatchInvokeUtil
+ */
+@Getter
+public final class BatchInvokeOptions {
+
+    /**
+     * 默认最多同时执行的分片数
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 8;
+
+    private Executor executor;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private Duration chunkTimeout;
+    private ErrorPolicy errorPolicy = ErrorPolicy.FAIL_FAST;
+
+    private BatchInvokeOptions() {
+    }
+
+    public static BatchInvokeOptions defaults() {
+        return new BatchInvokeOptions();
+    }
+
+    /**
+     * 执行分片的线程池, 不指定时使用共享的有界线程池
+     */
+    public BatchInvokeOptions executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 最多同时执行的分片数
+     */
+    public BatchInvokeOptions maxConcurrency(int maxConcurrency) {
+        Assert.check(maxConcurrency > 0, "maxConcurrency must be greater than 0.");
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * 单个分片从开始执行算起的超时时间, 不指定时不超时.
+     * 超时会让该分片失败, 不会中断正在执行的调用; 之后还未开始的分片直接以超时失败, 调用方不再等待超时的分片.
+     */
+    public BatchInvokeOptions chunkTimeout(Duration chunkTimeout) {
+        this.chunkTimeout = chunkTimeout;
+        return this;
+    }
+
+    public BatchInvokeOptions errorPolicy(ErrorPolicy errorPolicy) {
+        this.errorPolicy = errorPolicy;
+        return this;
+    }
+
+    /**
+     * 分片失败时的处理策略
+     */
+    public enum ErrorPolicy {
+        /**
+         * 第一个分片失败后不再提交新的分片, 已提交未开始的分片跳过, 立即抛出异常
+         */
+        FAIL_FAST,
+        /**
+         * 执行所有分片, 最后抛出包含所有异常和成功结果的异常
+         */
+        COLLECT_ERRORS
+    }
+}
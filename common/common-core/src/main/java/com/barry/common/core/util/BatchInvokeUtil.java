@@ -1,16 +1,35 @@
 package com.barry.common.core.util;
 
+import com.barry.common.core.exception.ApplicationException;
+import com.barry.common.core.exception.BatchInvokeException;
 import com.barry.common.core.exception.BusinessException;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.collections.CollectionUtils;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.barry.common.core.exception.SystemErrorCode.SYS_BATCH_INVOKE_ERROR;
+
 /**
  * <p>BatchInvokeUtil</p>
  * description:
@@ -18,6 +37,27 @@ import java.util.stream.Collectors;
  * Create time 2021-11-17 16:14:37
  */
 public class BatchInvokeUtil {
+
+    /**
+     * 并行调用默认使用的共享线程池, 队列满时由调用线程执行
+     */
+    private static final Executor SHARED_EXECUTOR;
+    /**
+     * 分片超时计时
+     */
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("batch-invoke-timeout").setDaemon(true).build());
+
+    static {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1024),
+                new ThreadFactoryBuilder().setNameFormat("batch-invoke-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        SHARED_EXECUTOR = executor;
+    }
+
     /**
      * 提供批量参数, 分批调用
      *
@@ -116,4 +156,213 @@ public class BatchInvokeUtil {
                 .filter(Objects::nonNull)
                 .collect(Collectors.groupingBy(getKey));
     }
+
+    /**
+     * 提供批量参数, 分批并行调用
+     *
+     * @param paramList 批量参数
+     * @param size      批次大小
+     * @param invoke    调用函数
+     * @param options   并行配置
+     * @param <T>       入参类型
+     * @throws BatchInvokeException 有分片失败时抛出
+     */
+    public static <T> void parallelBatchParamInvoke(List<T> paramList, int size, Consumer<List<T>> invoke,
+            BatchInvokeOptions options) {
+        if (CollectionUtils.isEmpty(paramList)) {
+            return;
+        }
+        parallelInvoke(paramList, size, it -> {
+            invoke.accept(it);
+            return null;
+        }, options);
+    }
+
+    /**
+     * 提供批量参数, 分批并行调用并按分片顺序收集为List, 使用默认并行配置
+     * 使用规则参考batchParamInvokeCollectList
+     *
+     * @see #parallelBatchParamInvokeCollectList(List, int, Function, BatchInvokeOptions)
+     */
+    public static <T, R> List<R> parallelBatchParamInvokeCollectList(List<T> paramList, int size,
+            Function<List<T>, List<R>> invoke) {
+        return parallelBatchParamInvokeCollectList(paramList, size, invoke, BatchInvokeOptions.defaults());
+    }
+
+    /**
+     * 提供批量参数, 分批并行调用并按分片顺序收集为List
+     * 使用规则参考batchParamInvokeCollectList. 调用线程的 MDC 及通过 {@link ContextPropagation} 注册的上下文会传递到执行线程.
+     *
+     * @param paramList 批量参数
+     * @param size      批次大小
+     * @param invoke    调用函数
+     * @param options   并行配置
+     * @param <T>       入参类型
+     * @param <R>       返参类型
+     * @return 返回多批调用汇总后的结果, 顺序与串行调用一致
+     * @throws BatchInvokeException 有分片失败时抛出
+     */
+    public static <T, R> List<R> parallelBatchParamInvokeCollectList(List<T> paramList, int size,
+            Function<List<T>, List<R>> invoke, BatchInvokeOptions options) {
+        if (CollectionUtils.isEmpty(paramList)) {
+            throw new BusinessException("paramList is empty");
+        }
+        return parallelInvoke(paramList, size, invoke, options).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 提供批量参数, 分批并行调用并收集, 转换为Map
+     * 使用规则参考batchParamInvokeCollectMap
+     *
+     * @throws BatchInvokeException 有分片失败时抛出
+     */
+    public static <T, K, R> Map<K, R> parallelBatchParamInvokeCollectMap(List<T> paramList, int size,
+            Function<List<T>, List<R>> invoke, Function<R, K> getKey, BatchInvokeOptions options) {
+        return parallelBatchParamInvokeCollectList(paramList, size, invoke, options).stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toMap(getKey, Function.identity()));
+    }
+
+    /**
+     * 提供批量参数, 分批并行调用并收集, 再group by为Map
+     * 使用规则参考batchParamInvokeCollectGroupingByMap
+     *
+     * @throws BatchInvokeException 有分片失败时抛出
+     */
+    public static <T, K, R> Map<K, List<R>> parallelBatchParamInvokeCollectGroupingByMap(List<T> paramList, int size,
+            Function<List<T>, List<R>> invoke, Function<R, K> getKey, BatchInvokeOptions options) {
+        return parallelBatchParamInvokeCollectList(paramList, size, invoke, options).stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(getKey));
+    }
+
+    /**
+     * 分片并行执行, 通过信号量限制同时执行的分片数
+     * <p>
+     * 分片超时后不再等待该分片结束, 立即释放许可, 之后还未开始的分片直接以超时失败, 不再提交.
+     * 调用方最多在超时时间内等待许可, 卡住的下游不会阻塞后续分片的提交, 也不会有更多的分片被提交到卡住的下游.
+     *
+     * @return 每个分片的结果, 与分片顺序一致
+     */
+    @SuppressWarnings("unchecked")
+    private static <T, R> List<List<R>> parallelInvoke(List<T> paramList, int size, Function<List<T>, List<R>> invoke,
+            BatchInvokeOptions options) {
+        List<List<T>> partition = Lists.partition(paramList, size);
+        Executor executor = options.getExecutor() != null ? options.getExecutor() : SHARED_EXECUTOR;
+        boolean failFast = options.getErrorPolicy() == BatchInvokeOptions.ErrorPolicy.FAIL_FAST;
+        long timeoutMillis = options.getChunkTimeout() == null ? 0 : options.getChunkTimeout().toMillis();
+        Semaphore permits = new Semaphore(options.getMaxConcurrency());
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        List<CompletableFuture<List<R>>> futures = Lists.newArrayListWithCapacity(partition.size());
+
+        try {
+            for (List<T> chunk : partition) {
+                permits.acquire();
+                if (failFast && firstFailure.isDone()) {
+                    permits.release();
+                    break;
+                }
+                CompletableFuture<List<R>> future = new CompletableFuture<>();
+                future.whenComplete((r, e) -> {
+                    if (e != null) {
+                        firstFailure.complete(null);
+                    }
+                });
+                futures.add(future);
+                if (timedOut.get()) {
+                    permits.release();
+                    future.completeExceptionally(new TimeoutException("chunk not started, a previous chunk timed out"));
+                    continue;
+                }
+                // 许可在分片结束或超时时释放, 只释放一次. 超时的分片仍在执行, 之后的分片不再提交
+                AtomicBoolean released = new AtomicBoolean();
+                Runnable release = () -> {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                };
+                Runnable onTimeout = () -> {
+                    timedOut.set(true);
+                    release.run();
+                };
+                Runnable task = () -> {
+                    try {
+                        invokeChunk(chunk, invoke, future, timeoutMillis, onTimeout);
+                    } finally {
+                        release.run();
+                    }
+                };
+                try {
+                    executor.execute(ContextPropagation.wrap(task));
+                } catch (RejectedExecutionException e) {
+                    release.run();
+                    future.completeExceptionally(e);
+                }
+            }
+            CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .exceptionally(e -> null);
+            if (failFast) {
+                CompletableFuture.anyOf(all, firstFailure).get();
+            } else {
+                all.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(false));
+            throw new ApplicationException(SYS_BATCH_INVOKE_ERROR, e);
+        } catch (ExecutionException e) {
+            throw new ApplicationException(SYS_BATCH_INVOKE_ERROR, e.getCause());
+        }
+
+        Map<Integer, Throwable> errors = Maps.newTreeMap();
+        List<List<R>> results = Lists.newArrayListWithCapacity(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<List<R>> future = futures.get(i);
+            // 快速失败时还未完成的分片直接取消, 开始执行时会跳过
+            if (!future.isDone()) {
+                future.cancel(false);
+            }
+            if (future.isCancelled()) {
+                continue;
+            }
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                errors.put(i, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApplicationException(SYS_BATCH_INVOKE_ERROR, e);
+            }
+        }
+        if (!errors.isEmpty()) {
+            List<R> partialResults = failFast ? null : results.stream()
+                    .filter(Objects::nonNull).flatMap(List::stream).collect(Collectors.toList());
+            throw new BatchInvokeException(errors, partialResults);
+        }
+        return results;
+    }
+
+    private static <T, R> void invokeChunk(List<T> chunk, Function<List<T>, List<R>> invoke,
+            CompletableFuture<List<R>> future, long timeoutMillis, Runnable onTimeout) {
+        if (future.isDone()) {
+            return;
+        }
+        ScheduledFuture<?> timeout = timeoutMillis <= 0 ? null : TIMEOUT_SCHEDULER.schedule(() -> {
+            if (future.completeExceptionally(new TimeoutException("chunk timeout after " + timeoutMillis + " ms"))) {
+                onTimeout.run();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            future.complete(invoke.apply(chunk));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
 }
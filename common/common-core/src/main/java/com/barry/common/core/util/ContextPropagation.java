@@ -0,0 +1,162 @@
+package com.barry.common.core.util;
+
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>线程上下文传递</p>
+ * <p>
+ * 提交任务到线程池时, 在提交线程中捕获上下文, 在执行线程中恢复, 执行完毕后还原执行线程原有的上下文.
+ * 默认传递 slf4j 的 MDC, 其它模块(如 auto-transmitter 的 HolderContext)通过 {@link #register(String, UnaryOperator)} 注册.
+ * </p>
+ * 装饰器在提交线程中被调用, 需要在返回的 Runnable 中完成恢复和还原.
+ *
+ * @author barry chen
+ */
+public final class ContextPropagation {
+
+    private static final ConcurrentMap<String, UnaryOperator<Runnable>> DECORATORS = new ConcurrentHashMap<>(4);
+
+    /**
+     * 包装 Callable 时, 捕获的上下文只能作用于 Runnable, 通过该变量把本次调用交给捕获时生成的 Runnable 执行
+     */
+    private static final ThreadLocal<Runnable> SCOPED_TASK = new ThreadLocal<>();
+
+    static {
+        register("mdc", ContextPropagation::mdc);
+    }
+
+    private ContextPropagation() {
+    }
+
+    /**
+     * 注册上下文装饰器, 同名的装饰器会被覆盖
+     *
+     * @param name      名称
+     * @param decorator 在提交线程中调用, 返回在执行线程中运行的 Runnable
+     */
+    public static void register(String name, UnaryOperator<Runnable> decorator) {
+        DECORATORS.put(name, decorator);
+    }
+
+    public static void unregister(String name) {
+        DECORATORS.remove(name);
+    }
+
+    /**
+     * 在当前线程捕获上下文, 返回的 Runnable 在执行线程中恢复
+     */
+    public static Runnable wrap(Runnable runnable) {
+        Runnable wrapped = runnable;
+        for (UnaryOperator<Runnable> decorator : DECORATORS.values()) {
+            wrapped = decorator.apply(wrapped);
+        }
+        return wrapped;
+    }
+
+    /**
+     * 在当前线程捕获上下文, 返回的 Callable 在执行线程中恢复, 可以多次调用.
+     * 与 {@link #wrap(Runnable)} 使用不同的方法名, 无参 lambda 不会有重载歧义
+     */
+    public static <T> Callable<T> wrapCallable(Callable<T> callable) {
+        Runnable scope = wrap(() -> SCOPED_TASK.get().run());
+        return () -> {
+            Object[] result = new Object[1];
+            Exception[] error = new Exception[1];
+            Runnable previous = SCOPED_TASK.get();
+            SCOPED_TASK.set(() -> {
+                try {
+                    result[0] = callable.call();
+                } catch (Exception e) {
+                    error[0] = e;
+                }
+            });
+            try {
+                scope.run();
+            } finally {
+                SCOPED_TASK.set(previous);
+            }
+            if (error[0] != null) {
+                throw error[0];
+            }
+            @SuppressWarnings("unchecked")
+            T value = (T) result[0];
+            return value;
+        };
+    }
+
+    /**
+     * 与 {@link #wrapCallable(Callable)} 相同, 受检异常包装为 {@link CompletionException}
+     */
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        Callable<T> callable = wrapCallable(supplier::get);
+        return () -> {
+            try {
+                return callable.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * 包装线程池, 提交的任务在提交线程中捕获上下文
+     */
+    public static Executor wrap(Executor executor) {
+        if (executor instanceof ExecutorService) {
+            return wrap((ExecutorService) executor);
+        }
+        return command -> executor.execute(wrap(command));
+    }
+
+    public static ExecutorService wrap(ExecutorService executor) {
+        if (executor instanceof ContextPropagatingExecutorService) {
+            return executor;
+        }
+        return new ContextPropagatingExecutorService(executor);
+    }
+
+    /**
+     * 与 {@link CompletableFuture#supplyAsync(Supplier, Executor)} 相同, 在执行线程中恢复当前线程的上下文
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(wrapSupplier(supplier), executor);
+    }
+
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return CompletableFuture.runAsync(wrap(runnable), executor);
+    }
+
+    private static Runnable mdc(Runnable runnable) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            setMdc(context);
+            try {
+                runnable.run();
+            } finally {
+                setMdc(previous);
+            }
+        };
+    }
+
+    private static void setMdc(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+}
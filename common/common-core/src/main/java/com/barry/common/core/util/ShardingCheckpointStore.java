@@ -0,0 +1,62 @@
+package com.barry.common.core.util;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>分片执行进度存储</p>
+ * 每个任务(jobKey)一组进度, field 由执行器决定, value 为已完成的位置. 任务正常结束后清除, 异常中断时保留, 重启后从保留的位置继续.
+ *
+ * @author barry chen
+ * @see ShardingTaskExecutorUtils.ParallelShardingExecutor
+ */
+public interface ShardingCheckpointStore {
+
+    /**
+     * 读取任务的全部进度
+     *
+     * @param jobKey 任务标识
+     * @return field -> 已完成的位置, 没有进度时返回空Map
+     */
+    Map<String, Long> load(String jobKey);
+
+    /**
+     * 保存进度
+     */
+    void save(String jobKey, String field, long value);
+
+    /**
+     * 清除任务的全部进度
+     */
+    void clear(String jobKey);
+
+    /**
+     * 进程内存储, 只能在进程内重试时恢复进度
+     */
+    static ShardingCheckpointStore memory() {
+        return new MemoryShardingCheckpointStore();
+    }
+
+    class MemoryShardingCheckpointStore implements ShardingCheckpointStore {
+
+        private final ConcurrentMap<String, Map<String, Long>> checkpoints = new ConcurrentHashMap<>();
+
+        @Override
+        public Map<String, Long> load(String jobKey) {
+            return Maps.newHashMap(checkpoints.getOrDefault(jobKey, Maps.newHashMap()));
+        }
+
+        @Override
+        public void save(String jobKey, String field, long value) {
+            checkpoints.computeIfAbsent(jobKey, k -> new ConcurrentHashMap<>()).put(field, value);
+        }
+
+        @Override
+        public void clear(String jobKey) {
+            checkpoints.remove(jobKey);
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package com.barry.common.core.util;
 
+import com.barry.common.core.exception.ApplicationException;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
+import static com.barry.common.core.exception.SystemErrorCode.SYS_SHARDING_EXECUTE_ERROR;
+
 /**
  * <p>分片执行器工具类</p>
  *
@@ -33,6 +47,17 @@ public final class ShardingTaskExecutorUtils {
         return new TaskShardingExecutor(limit);
     }
 
+    /**
+     * <p>并行分片执行器</p>
+     *
+     * @param limit       每个分片执行的数据量
+     * @param parallelism 同时执行的分片数
+     * @author barry chen
+     */
+    public static ParallelShardingExecutor parallel(Integer limit, int parallelism) {
+        return new ParallelShardingExecutor(limit, parallelism);
+    }
+
     /**
      * <p>分片执行器</p>
      *
@@ -112,6 +137,26 @@ public final class ShardingTaskExecutorUtils {
         int run(int index, int limit, Map<String, Object> context);
     }
 
+    /**
+     * <p>按主键游标分页的分片任务</p>
+     * 查询条件类似 {@code id > afterId AND id < endId ORDER BY id LIMIT limit}, 不受 offset 增大影响.
+     *
+     * @author barry chen
+     */
+    @FunctionalInterface
+    public interface KeysetShardingTask {
+
+        /**
+         * 执行任务
+         * @param afterId 上次处理的最大id(不包含)
+         * @param endId 当前区间的上界(不包含)
+         * @param limit 每次可执行的最大数据量
+         * @param context 上下文数据, 并行执行时多个线程共享
+         * @return 本次处理的最大id, 没有数据时返回null
+         */
+        Long run(long afterId, long endId, int limit, Map<String, Object> context);
+    }
+
     /**
      * <p>分片执行器默认实现</p>
      *
@@ -158,4 +203,241 @@ public final class ShardingTaskExecutorUtils {
             }
         }
     }
+
+    /**
+     * <p>并行分片执行器</p>
+     * <ul>
+     *     <li>{@link #execute(ShardingTask, boolean)}: 按页码分片, 空闲的线程领取下一页, 遇到不满一页的分片后不再领取更大的页码</li>
+     *     <li>{@link #execute(KeysetShardingTask, long, long, long, boolean)}: 把 [minId, maxId] 切成固定大小的区间,
+     *     空闲的线程领取下一个区间, 在区间内按主键游标分页</li>
+     * </ul>
+     * 设置 {@link #checkpoint(ShardingCheckpointStore, String)} 后记录已完成的位置, 任务异常中断后再次执行时跳过已完成的部分.
+     * 页码模式记录连续完成的最大页码, 游标模式记录每个区间处理到的id. 任务正常结束后清除进度.
+     * 恢复时记录位置之后已完成的分片会重复执行, 任务需要幂等.
+     * <p>
+     * 上下文在线程间共享, 是线程安全的Map. breakOnError 为 false 时, 失败的分片记录日志后视为完成.
+     *
+     * @author barry chen
+     */
+    public static class ParallelShardingExecutor implements ShardingExecutor {
+
+        private static final String OFFSET_FIELD = "offset";
+        private static final String RANGE_FIELD_PREFIX = "range:";
+
+        private final Map<String, Object> ctx = Collections.synchronizedMap(Maps.newHashMap());
+
+        private final int limit;
+        private final int parallelism;
+        private Executor executor;
+        private ShardingCheckpointStore checkpointStore;
+        private String jobKey;
+
+        ParallelShardingExecutor(Integer limit, int parallelism) {
+            Assert.check(parallelism > 0, "parallelism must be greater than 0.");
+            this.limit = Optional.ofNullable(limit).filter(i -> i > 0).orElse(DEFAULT_LIMIT);
+            this.parallelism = parallelism;
+        }
+
+        /**
+         * 执行分片的线程池, 不指定时每次执行创建 parallelism 个线程, 执行完毕后关闭
+         */
+        public ParallelShardingExecutor executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 记录执行进度
+         *
+         * @param checkpointStore 进度存储
+         * @param jobKey          任务标识, 同一个任务多次执行时需要相同
+         */
+        public ParallelShardingExecutor checkpoint(ShardingCheckpointStore checkpointStore, String jobKey) {
+            this.checkpointStore = checkpointStore;
+            this.jobKey = jobKey;
+            return this;
+        }
+
+        @Override
+        public void initialize(Map<String, Object> ctx) {
+            if (ctx != null && ctx.size() > 0) {
+                this.ctx.putAll(ctx);
+            }
+        }
+
+        @Override
+        public ParallelShardingExecutor bind(Supplier<Map<String, Object>> supplier) {
+            initialize(supplier == null ? null : supplier.get());
+            return this;
+        }
+
+        @Override
+        public ParallelShardingExecutor bind(String key, Object value) {
+            ctx.put(key, value);
+            return this;
+        }
+
+        @Override
+        public void execute(ShardingTask task, boolean breakOnError) {
+            if (task == null) {
+                return;
+            }
+            int start = (int) loadCheckpoints().getOrDefault(OFFSET_FIELD, -1L).longValue() + 1;
+            OffsetProgress progress = new OffsetProgress(start);
+            AtomicInteger nextIndex = new AtomicInteger(start);
+            AtomicInteger lastIndex = new AtomicInteger(Integer.MAX_VALUE);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            runWorkers(failure, () -> {
+                while (failure.get() == null) {
+                    int index = nextIndex.getAndIncrement();
+                    if (index > lastIndex.get()) {
+                        return;
+                    }
+                    int count;
+                    try {
+                        count = task.run(index, limit, ctx);
+                    } catch (Throwable t) {
+                        if (breakOnError) {
+                            failure.compareAndSet(null, t);
+                            return;
+                        }
+                        LOGGER.error("### 分片 {} 执行错误, breakOnError 为 false, 继续执行", index, t);
+                        count = limit;
+                    }
+                    //本页不满, 表明是最后一页, 不再领取更大的页码
+                    if (count < limit) {
+                        lastIndex.accumulateAndGet(index, Math::min);
+                    }
+                    progress.complete(index);
+                }
+            });
+        }
+
+        /**
+         * 按主键区间并行执行
+         *
+         * @param task         任务
+         * @param minId        最小id(包含)
+         * @param maxId        最大id(包含)
+         * @param rangeSize    每个区间的id跨度, 同时也是领取工作的粒度
+         * @param breakOnError 遇到异常时是否停止, 为 false 时跳过失败区间的剩余部分
+         */
+        public void execute(KeysetShardingTask task, long minId, long maxId, long rangeSize, boolean breakOnError) {
+            if (task == null || minId > maxId) {
+                return;
+            }
+            Assert.check(rangeSize > 0, "rangeSize must be greater than 0.");
+            Map<String, Long> checkpoints = loadCheckpoints();
+            long ranges = (maxId - minId) / rangeSize + 1;
+            AtomicLong nextRange = new AtomicLong();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            runWorkers(failure, () -> {
+                long range;
+                while (failure.get() == null && (range = nextRange.getAndIncrement()) < ranges) {
+                    long rangeStart = minId + range * rangeSize;
+                    long rangeEnd = rangeStart + Math.min(rangeSize, maxId - rangeStart + 1);
+                    String field = RANGE_FIELD_PREFIX + range;
+                    long afterId = checkpoints.getOrDefault(field, rangeStart - 1);
+                    while (afterId < rangeEnd - 1 && failure.get() == null) {
+                        Long lastId;
+                        try {
+                            lastId = task.run(afterId, rangeEnd, limit, ctx);
+                            Assert.check(lastId == null || lastId > afterId, "keyset task must return an id greater than afterId.");
+                        } catch (Throwable t) {
+                            if (breakOnError) {
+                                failure.compareAndSet(null, t);
+                                return;
+                            }
+                            LOGGER.error("### 区间 [{}, {}) 执行错误, breakOnError 为 false, 跳过该区间剩余部分", afterId + 1, rangeEnd, t);
+                            lastId = null;
+                        }
+                        afterId = lastId == null ? rangeEnd - 1 : lastId;
+                        saveCheckpoint(field, afterId);
+                    }
+                }
+            });
+        }
+
+        private void runWorkers(AtomicReference<Throwable> failure, Runnable worker) {
+            ExecutorService ownExecutor = executor == null ? Executors.newFixedThreadPool(parallelism,
+                    new ThreadFactoryBuilder().setNameFormat("sharding-task-%d").setDaemon(true).build()) : null;
+            Executor target = ownExecutor == null ? executor : ownExecutor;
+            CountDownLatch latch = new CountDownLatch(parallelism);
+            try {
+                for (int i = 0; i < parallelism; i++) {
+                    Runnable task = ContextPropagation.wrap(() -> {
+                        try {
+                            worker.run();
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            latch.countDown();
+                        }
+                    });
+                    try {
+                        target.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        failure.compareAndSet(null, e);
+                        latch.countDown();
+                    }
+                }
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } finally {
+                if (ownExecutor != null) {
+                    ownExecutor.shutdownNow();
+                }
+            }
+            Throwable t = failure.get();
+            if (t == null) {
+                if (checkpointStore != null) {
+                    checkpointStore.clear(jobKey);
+                }
+                return;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new ApplicationException(SYS_SHARDING_EXECUTE_ERROR, t);
+        }
+
+        private Map<String, Long> loadCheckpoints() {
+            return checkpointStore == null ? Collections.emptyMap() : checkpointStore.load(jobKey);
+        }
+
+        private void saveCheckpoint(String field, long value) {
+            if (checkpointStore != null) {
+                checkpointStore.save(jobKey, field, value);
+            }
+        }
+
+        /**
+         * 页码进度, 记录连续完成的最大页码
+         */
+        private class OffsetProgress {
+
+            private final BitSet completed = new BitSet();
+            private final int start;
+            private int watermark;
+
+            OffsetProgress(int start) {
+                this.start = start;
+                this.watermark = start - 1;
+            }
+
+            synchronized void complete(int index) {
+                completed.set(index - start);
+                int next = completed.nextClearBit(watermark + 1 - start) + start - 1;
+                if (next > watermark) {
+                    watermark = next;
+                    saveCheckpoint(OFFSET_FIELD, watermark);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package com.barry.common.core.util.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>无锁雪花分布式 ID 生成器</p>
+ * <p>
+ * 位分布、纪元与 {@link SnowflakeIdWorker} 完全一致, 两者生成的 id 可以混用. 区别在于将时间戳和毫秒内序列
+ * 打包在一个 {@link AtomicLong} 中通过 CAS 推进, 不需要加锁:
+ * <ul>
+ *     <li>毫秒内序列用完时直接进位到下一毫秒(借用未来时间), 不再自旋等待</li>
+ *     <li>时钟回拨不超过 clockBackwardToleranceMillis 时继续借用未来时间, 超过时抛出异常</li>
+ *     <li>{@link #nextIds(int)} 一次 CAS 预留连续的 n 个序列</li>
+ * </ul>
+ * 借用的时间超过容忍值(突发流量)时, 等待时钟追上后再分配.
+ * </p>
+ *
+ * @author barry chen
+ */
+public final class AtomicSnowflakeIdWorker implements IdWorker {
+
+    public static final String ID_WORKER_NAME_ATOMIC_SNOWFLAKE = "ATOMIC_SNOWFLAKE";
+    /**
+     * 默认的时钟回拨容忍时间, 单位毫秒
+     */
+    public static final long DEFAULT_CLOCK_BACKWARD_TOLERANCE_MILLIS = 10L;
+
+    private static final long EPOCH = 1524153600000L;
+    private static final long WORKER_ID_BITS = 6L;
+    private static final long DATA_CENTER_ID_BITS = 6L;
+    private static final long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
+    private static final long MAX_DATA_CENTER_ID = ~(-1L << DATA_CENTER_ID_BITS);
+    private static final long SEQUENCE_BITS = 12L;
+    private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final long DATA_CENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+    private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATA_CENTER_ID_BITS;
+    private static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
+
+    private final long dataCenterId;
+    private final long workerId;
+    private final long clockBackwardToleranceMillis;
+    private final LongSupplier clock;
+    /**
+     * (时间戳 - 纪元) << 12 | 毫秒内序列, 表示最近一次分配出去的序列
+     */
+    private final AtomicLong state = new AtomicLong(-1L);
+    /**
+     * 观察到的最大时钟, 用于区分时钟回拨和突发流量
+     */
+    private volatile long maxObservedMillis;
+
+    public AtomicSnowflakeIdWorker() {
+        this(DEFAULT_CLOCK_BACKWARD_TOLERANCE_MILLIS);
+    }
+
+    /**
+     * 作为 {@link IdWorkerContainer#registerPrototype(IdWorker)} 的原型使用
+     *
+     * @param clockBackwardToleranceMillis 时钟回拨容忍时间, 单位毫秒
+     */
+    public AtomicSnowflakeIdWorker(long clockBackwardToleranceMillis) {
+        this(0, 0, clockBackwardToleranceMillis, System::currentTimeMillis);
+    }
+
+    public AtomicSnowflakeIdWorker(long dataCenterId, long workerId, long clockBackwardToleranceMillis) {
+        this(dataCenterId, workerId, clockBackwardToleranceMillis, System::currentTimeMillis);
+    }
+
+    AtomicSnowflakeIdWorker(long dataCenterId, long workerId, long clockBackwardToleranceMillis, LongSupplier clock) {
+        if (dataCenterId > MAX_DATA_CENTER_ID || dataCenterId < 0) {
+            throw new IllegalArgumentException(
+                    String.format("dataCenterId can't be greater than %d or less than 0", MAX_DATA_CENTER_ID));
+        }
+        if (workerId > MAX_WORKER_ID || workerId < 0) {
+            throw new IllegalArgumentException(
+                    String.format("worker Id can't be greater than %d or less than 0", MAX_WORKER_ID));
+        }
+        if (clockBackwardToleranceMillis < 0) {
+            throw new IllegalArgumentException("clockBackwardToleranceMillis can't be less than 0");
+        }
+        this.dataCenterId = dataCenterId;
+        this.workerId = workerId;
+        this.clockBackwardToleranceMillis = clockBackwardToleranceMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    public IdWorker newInstance(long dataCenterId, long workerId) {
+        return new AtomicSnowflakeIdWorker(dataCenterId, workerId, clockBackwardToleranceMillis, clock);
+    }
+
+    /**
+     * 获得下一个ID (该方法是线程安全的)
+     *
+     * @return snowflakeId
+     */
+    @Override
+    public Long nextId() {
+        return toId(reserve(1));
+    }
+
+    /**
+     * 一次预留连续的 n 个 id, 返回的 id 递增
+     *
+     * @param n 数量
+     * @return ids
+     */
+    @Override
+    public long[] nextIds(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be greater than 0");
+        }
+        long first = reserve(n);
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = toId(first + i);
+        }
+        return ids;
+    }
+
+    @Override
+    public String getType() {
+        return ID_WORKER_NAME_ATOMIC_SNOWFLAKE;
+    }
+
+    /**
+     * 预留 n 个序列
+     *
+     * @return 预留的第一个序列(已打包时间戳)
+     */
+    private long reserve(int n) {
+        while (true) {
+            long now = currentMillis() - EPOCH;
+            long current = state.get();
+            long lastMillis = current >> SEQUENCE_BITS;
+            long first;
+            if (now > lastMillis) {
+                // 时间前进, 序列从0开始
+                first = now << SEQUENCE_BITS;
+            } else {
+                long lead = lastMillis - now;
+                if (lead > clockBackwardToleranceMillis) {
+                    // 借用的时间超过容忍值, 等待时钟追上
+                    LockSupport.parkNanos(100_000L);
+                    continue;
+                }
+                // 同一毫秒或时钟落后, 继续借用, 序列用完时自动进位到下一毫秒
+                first = current + 1;
+            }
+            if (state.compareAndSet(current, first + n - 1)) {
+                return first;
+            }
+        }
+    }
+
+    private long currentMillis() {
+        //先读取 max 再读取时钟, 线程在两次读取之间被挂起时 now 只会更大, 不会误判为时钟回拨
+        long max = maxObservedMillis;
+        long now = clock.getAsLong();
+        if (now > max) {
+            maxObservedMillis = now;
+        } else if (max - now > clockBackwardToleranceMillis) {
+            //时钟回拨超过容忍值, 这个时候应当抛出异常
+            throw new IllegalStateException(
+                    String.format("Clock moved backwards. Refusing to generate id for %d milliseconds", max - now));
+        }
+        return now;
+    }
+
+    private long toId(long packed) {
+        //移位并通过按位或运算拼到一起组成64位的ID
+        return ((packed >> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                | (dataCenterId << DATA_CENTER_ID_SHIFT)
+                | (workerId << WORKER_ID_SHIFT)
+                | (packed & SEQUENCE_MASK);
+    }
+}
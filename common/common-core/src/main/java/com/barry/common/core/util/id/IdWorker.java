@@ -19,6 +19,24 @@ public interface IdWorker {
      */
     Long nextId();
 
+    /**
+     * <p>一次获取 n 个 id</p>
+     * 默认逐个调用 {@link #nextId()}, 实现类可以一次预留连续的区间.
+     *
+     * @param n 数量
+     * @return ids
+     */
+    default long[] nextIds(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be greater than 0");
+        }
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+
     /**
      * <p>获取当前 idworker 的实现类型</p>
      *
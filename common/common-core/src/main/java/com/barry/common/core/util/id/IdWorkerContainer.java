@@ -20,6 +20,11 @@ public final class IdWorkerContainer {
 
     private static final ConcurrentMap<String, IdWorker> WORKERS = Maps.newConcurrentMap();
 
+    /**
+     * 通过原型创建的派号器, key 为派号器类型, 未注册的类型通过反射创建
+     */
+    private final ConcurrentMap<Class<? extends IdWorker>, IdWorker> prototypes = Maps.newConcurrentMap();
+
     private final Long workerId;
 
     public IdWorkerContainer(Long workerId) {
@@ -64,17 +69,26 @@ public final class IdWorkerContainer {
                 return idWorker;
             }
 
-            IdWorker target = createIdWorker(dataCenterId, idWorkerClass);
-            if (target != null) {
-                WORKERS.putIfAbsent(key,
-                        target);
-                idWorker = target;
-            }
+            //并发获取时只创建一个, 同一个 key 的派号器必须唯一, 否则会生成重复的 id
+            Class<? extends IdWorker> targetClass = idWorkerClass;
+            idWorker = WORKERS.computeIfAbsent(key, k -> createIdWorker(dataCenterId, targetClass));
         }
 
         return idWorker;
     }
 
+    /**
+     * <p>注册派号器原型</p>
+     * 之后获取该类型的派号器时, 通过 {@link IdWorker#newInstance(long, long)} 复制原型的配置(如时钟回拨容忍时间),
+     * 而不是通过无参构造反射创建. 需要在第一次获取该类型的派号器之前注册.
+     *
+     * @param prototype 原型
+     */
+    public IdWorkerContainer registerPrototype(IdWorker prototype) {
+        prototypes.put(prototype.getClass(), prototype);
+        return this;
+    }
+
     /**
      * 根据 IdWorkClass反射创建实例
      * @param dataCenterId
@@ -82,6 +96,10 @@ public final class IdWorkerContainer {
      * @return
      */
     private IdWorker createIdWorker(Long dataCenterId, Class<? extends IdWorker> idWorkerClass) {
+        IdWorker prototype = prototypes.get(idWorkerClass);
+        if (prototype != null) {
+            return prototype.newInstance(dataCenterId, workerId);
+        }
         IdWorker idWorker = null;
         try {
             idWorker = idWorkerClass.newInstance();
@@ -0,0 +1,105 @@
+package com.barry.common.core.util.id;
+
+import com.barry.common.core.exception.ApplicationException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import static com.barry.common.core.exception.SystemErrorCode.SYS_ID_SEGMENT_ALLOCATE_ERROR;
+
+/**
+ * <p>基于数据库表的号段分配器</p>
+ * 表结构:
+ * <pre>
+ * CREATE TABLE id_segment (
+ *     biz_tag     VARCHAR(128) NOT NULL PRIMARY KEY,
+ *     max_id      BIGINT       NOT NULL,
+ *     update_time DATETIME     NOT NULL
+ * );
+ * </pre>
+ * 在一个事务中先 UPDATE max_id = max_id + step 再读取, 行锁保证多个节点分配的号段不重叠.
+ * 业务标识第一次使用时自动插入, 从1开始.
+ *
+ * @author barry chen
+ */
+public class JdbcSegmentAllocator implements SegmentAllocator {
+
+    public static final String DEFAULT_TABLE_NAME = "id_segment";
+
+    private static final int MAX_RETRY = 3;
+
+    private final DataSource dataSource;
+    private final String updateSql;
+    private final String selectSql;
+    private final String insertSql;
+
+    public JdbcSegmentAllocator(DataSource dataSource) {
+        this(dataSource, DEFAULT_TABLE_NAME);
+    }
+
+    public JdbcSegmentAllocator(DataSource dataSource, String tableName) {
+        this.dataSource = dataSource;
+        this.updateSql = "UPDATE " + tableName + " SET max_id = max_id + ?, update_time = ? WHERE biz_tag = ?";
+        this.selectSql = "SELECT max_id FROM " + tableName + " WHERE biz_tag = ?";
+        this.insertSql = "INSERT INTO " + tableName + " (biz_tag, max_id, update_time) VALUES (?, ?, ?)";
+    }
+
+    @Override
+    public long allocate(String tag, int step) {
+        SQLException last = null;
+        for (int i = 0; i < MAX_RETRY; i++) {
+            try (Connection connection = dataSource.getConnection()) {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    long max = allocate(connection, tag, step);
+                    connection.commit();
+                    return max;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                last = e;
+                // 23xxx 为唯一约束冲突, 说明其它节点同时插入了该业务标识, 重试 UPDATE
+                if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                    break;
+                }
+            }
+        }
+        throw new ApplicationException(SYS_ID_SEGMENT_ALLOCATE_ERROR, last, "allocate id segment fail, tag: " + tag);
+    }
+
+    private long allocate(Connection connection, String tag, int step) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement update = connection.prepareStatement(updateSql)) {
+            update.setLong(1, step);
+            update.setTimestamp(2, now);
+            update.setString(3, tag);
+            if (update.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+                    insert.setString(1, tag);
+                    insert.setLong(2, step);
+                    insert.setTimestamp(3, now);
+                    insert.executeUpdate();
+                }
+                return step;
+            }
+        }
+        try (PreparedStatement select = connection.prepareStatement(selectSql)) {
+            select.setString(1, tag);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("id segment not found, tag: " + tag);
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.barry.common.core.util.id;
+
+/**
+ * <p>号段分配器</p>
+ * 每次分配一段连续的 id, 同一个 tag 下分配的号段不会重叠. 实现必须是原子的, 多个节点可以同时调用.
+ *
+ * @author barry chen
+ * @see SegmentIdWorker
+ */
+public interface SegmentAllocator {
+
+    /**
+     * <p>分配一个号段</p>
+     *
+     * @param tag  业务标识
+     * @param step 号段长度
+     * @return 号段的最大值(包含), 号段为 [返回值 - step + 1, 返回值]
+     */
+    long allocate(String tag, int step);
+}
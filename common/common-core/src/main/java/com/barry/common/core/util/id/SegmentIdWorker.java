@@ -0,0 +1,190 @@
+package com.barry.common.core.util.id;
+
+import com.barry.common.core.exception.ApplicationException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.barry.common.core.exception.SystemErrorCode.SYS_ID_SEGMENT_ALLOCATE_ERROR;
+import static com.barry.common.core.exception.SystemErrorCode.SYS_ID_WORKER_INIT_ERROR;
+
+/**
+ * <p>号段 ID 生成器</p>
+ * <p>
+ * 每次从 {@link SegmentAllocator}(redis INCRBY 或数据库表)租用一段连续的 id, 在内存中递增派发.
+ * 当前号段消耗 10% 时异步预加载下一个号段(双缓冲), 当前号段用完时直接切换, 派号不等待 I/O.
+ * 与雪花算法不同, 不依赖 workerId, 没有节点数量上限; id 趋势递增但多个节点之间不保证有序.
+ * </p>
+ * 通过 {@link IdWorkerContainer#registerPrototype(IdWorker)} 注册带分配器的原型后使用,
+ * dataCenterId 作为号段的业务标识.
+ *
+ * @author barry chen
+ */
+public final class SegmentIdWorker implements IdWorker {
+
+    public static final String ID_WORKER_NAME_SEGMENT = "SEGMENT";
+    /**
+     * 默认号段长度
+     */
+    public static final int DEFAULT_STEP = 1000;
+    /**
+     * 当前号段消耗该比例后预加载下一个号段
+     */
+    private static final double PRELOAD_RATIO = 0.1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentIdWorker.class);
+
+    private static final ExecutorService PRELOAD_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("id-segment-preload-%d").setDaemon(true).build());
+
+    private final SegmentAllocator allocator;
+    private final int step;
+    private final String tag;
+    private final Object switchLock = new Object();
+
+    private volatile Segment current;
+    /**
+     * 正在预加载或已经加载好的下一个号段
+     */
+    private volatile CompletableFuture<Segment> next;
+
+    /**
+     * 仅用于反射创建, 没有分配器时无法派号
+     */
+    public SegmentIdWorker() {
+        this(null, DEFAULT_STEP);
+    }
+
+    /**
+     * 作为 {@link IdWorkerContainer#registerPrototype(IdWorker)} 的原型使用
+     *
+     * @param allocator 号段分配器
+     * @param step      号段长度
+     */
+    public SegmentIdWorker(SegmentAllocator allocator, int step) {
+        this(allocator, step, null);
+    }
+
+    /**
+     * @param allocator 号段分配器
+     * @param step      号段长度
+     * @param tag       业务标识
+     */
+    public SegmentIdWorker(SegmentAllocator allocator, int step, String tag) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be greater than 0");
+        }
+        this.allocator = allocator;
+        this.step = step;
+        this.tag = tag;
+    }
+
+    @Override
+    public IdWorker newInstance(long dataCenterId, long workerId) {
+        if (allocator == null) {
+            throw new ApplicationException(SYS_ID_WORKER_INIT_ERROR,
+                    "SegmentIdWorker requires a SegmentAllocator, register it by IdWorkerContainer.registerPrototype");
+        }
+        return new SegmentIdWorker(allocator, step, String.valueOf(dataCenterId));
+    }
+
+    /**
+     * 获得下一个ID (该方法是线程安全的)
+     *
+     * @return id
+     */
+    @Override
+    public Long nextId() {
+        while (true) {
+            Segment segment = current;
+            if (segment == null) {
+                segment = switchSegment(null);
+            }
+            long id = segment.cursor.getAndIncrement();
+            if (id <= segment.max) {
+                // 每个号段只有一个线程会拿到这个 id, 由它触发预加载
+                if (id == segment.preloadAt) {
+                    preload();
+                }
+                return id;
+            }
+            switchSegment(segment);
+        }
+    }
+
+    @Override
+    public String getType() {
+        return ID_WORKER_NAME_SEGMENT;
+    }
+
+    private void preload() {
+        synchronized (switchLock) {
+            if (next == null) {
+                next = CompletableFuture.supplyAsync(this::allocate, PRELOAD_EXECUTOR);
+            }
+        }
+    }
+
+    /**
+     * 切换到下一个号段, 预加载失败或还没有开始时同步加载
+     *
+     * @param exhausted 已用完的号段
+     * @return 当前号段
+     */
+    private Segment switchSegment(Segment exhausted) {
+        synchronized (switchLock) {
+            if (current != exhausted) {
+                return current;
+            }
+            CompletableFuture<Segment> future = next;
+            next = null;
+            Segment segment = null;
+            if (future != null) {
+                try {
+                    segment = future.join();
+                } catch (CompletionException e) {
+                    LOGGER.warn("preload id segment error, tag: {}", tag, e.getCause());
+                }
+            }
+            if (segment == null) {
+                segment = allocate();
+            }
+            current = segment;
+            return segment;
+        }
+    }
+
+    private Segment allocate() {
+        long max;
+        try {
+            max = allocator.allocate(tag, step);
+        } catch (ApplicationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ApplicationException(SYS_ID_SEGMENT_ALLOCATE_ERROR, e);
+        }
+        return new Segment(max - step + 1, max);
+    }
+
+    /**
+     * 号段 [start, max]
+     */
+    private final class Segment {
+
+        private final AtomicLong cursor;
+        private final long max;
+        private final long preloadAt;
+
+        Segment(long start, long max) {
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+            this.preloadAt = start + (long) (step * PRELOAD_RATIO);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.barry.common.core.util;
+
+import com.barry.common.core.exception.BatchInvokeException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author barry chen
+ */
+public class BatchInvokeUtilTest {
+
+    private static List<Integer> range(int size) {
+        return IntStream.range(0, size).boxed().collect(Collectors.toList());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void keepOrderTest() {
+        List<Integer> params = range(1000);
+        List<Integer> result = BatchInvokeUtil.parallelBatchParamInvokeCollectList(params, 10, it -> {
+            sleep(ThreadLocalRandom.current().nextInt(5));
+            return new ArrayList<>(it);
+        });
+        Assert.assertEquals(params, result);
+    }
+
+    @Test
+    public void maxConcurrencyTest() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        BatchInvokeUtil.parallelBatchParamInvoke(range(100), 5, it -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(5);
+            running.decrementAndGet();
+        }, BatchInvokeOptions.defaults().executor(executor).maxConcurrency(3));
+        executor.shutdown();
+        Assert.assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void timeoutTest() {
+        try {
+            BatchInvokeUtil.parallelBatchParamInvokeCollectList(range(4), 1, it -> {
+                if (it.get(0) == 2) {
+                    sleep(500);
+                }
+                return it;
+            }, BatchInvokeOptions.defaults()
+                    .chunkTimeout(Duration.ofMillis(50))
+                    .errorPolicy(BatchInvokeOptions.ErrorPolicy.COLLECT_ERRORS));
+            Assert.fail();
+        } catch (BatchInvokeException e) {
+            Assert.assertEquals(1, e.getErrors().size());
+            Assert.assertTrue(e.getErrors().get(2) instanceof TimeoutException);
+            Assert.assertEquals(List.of(0, 1, 3), e.getPartialResults());
+        }
+    }
+
+    @Test
+    public void maxConcurrencyWithTimeoutTest() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            BatchInvokeUtil.parallelBatchParamInvoke(range(6), 1, it -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(100);
+                running.decrementAndGet();
+            }, BatchInvokeOptions.defaults().executor(executor).maxConcurrency(2)
+                    .chunkTimeout(Duration.ofMillis(10))
+                    .errorPolicy(BatchInvokeOptions.ErrorPolicy.COLLECT_ERRORS));
+            Assert.fail();
+        } catch (BatchInvokeException e) {
+            Assert.assertEquals(6, e.getErrors().size());
+        } finally {
+            executor.shutdown();
+        }
+        //超时的分片仍在执行, 不能因为超时提交更多的分片
+        Assert.assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void hungChunksTest() throws Exception {
+        CountDownLatch hung = new CountDownLatch(1);
+        AtomicInteger invoked = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        long start = System.nanoTime();
+        try {
+            BatchInvokeUtil.parallelBatchParamInvoke(range(10), 1, it -> {
+                invoked.incrementAndGet();
+                try {
+                    hung.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, BatchInvokeOptions.defaults().executor(executor).maxConcurrency(2)
+                    .chunkTimeout(Duration.ofMillis(50))
+                    .errorPolicy(BatchInvokeOptions.ErrorPolicy.COLLECT_ERRORS));
+            Assert.fail();
+        } catch (BatchInvokeException e) {
+            Assert.assertEquals(10, e.getErrors().size());
+            Assert.assertTrue(e.getErrors().values().stream().allMatch(t -> t instanceof TimeoutException));
+        } finally {
+            hung.countDown();
+            executor.shutdown();
+        }
+        //卡住的分片超过并发数时, 调用方不等待卡住的分片结束, 也不再提交新的分片
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        Assert.assertEquals(2, invoked.get());
+    }
+
+    @Test
+    public void failFastTest() {
+        AtomicInteger invoked = new AtomicInteger();
+        try {
+            BatchInvokeUtil.parallelBatchParamInvoke(range(100), 1, it -> {
+                invoked.incrementAndGet();
+                if (it.get(0) == 0) {
+                    throw new IllegalArgumentException("fail");
+                }
+                sleep(10);
+            }, BatchInvokeOptions.defaults().maxConcurrency(2));
+            Assert.fail();
+        } catch (BatchInvokeException e) {
+            Assert.assertTrue(e.getErrors().get(0) instanceof IllegalArgumentException);
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        //第一个分片失败后不再提交新的分片
+        Assert.assertTrue(invoked.get() < 10);
+    }
+
+    @Test
+    public void collectErrorsTest() {
+        AtomicInteger invoked = new AtomicInteger();
+        try {
+            BatchInvokeUtil.parallelBatchParamInvokeCollectList(range(10), 1, it -> {
+                invoked.incrementAndGet();
+                if (it.get(0) % 3 == 0) {
+                    throw new IllegalStateException("fail " + it.get(0));
+                }
+                return it;
+            }, BatchInvokeOptions.defaults().errorPolicy(BatchInvokeOptions.ErrorPolicy.COLLECT_ERRORS));
+            Assert.fail();
+        } catch (BatchInvokeException e) {
+            Assert.assertEquals(10, invoked.get());
+            Assert.assertEquals(List.of(0, 3, 6, 9), new ArrayList<>(e.getErrors().keySet()));
+            Assert.assertEquals(3, e.getSuppressed().length);
+            Assert.assertEquals(List.of(1, 2, 4, 5, 7, 8), e.getPartialResults());
+        }
+    }
+
+    @Test
+    public void contextPropagationTest() throws Exception {
+        ThreadLocal<String> traceId = new ThreadLocal<>();
+        ContextPropagation.register("test", runnable -> {
+            String captured = traceId.get();
+            return () -> {
+                traceId.set(captured);
+                try {
+                    runnable.run();
+                } finally {
+                    traceId.remove();
+                }
+            };
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        traceId.set("t-1");
+        try {
+            List<String> traceIds = BatchInvokeUtil.parallelBatchParamInvokeCollectList(range(10), 1,
+                    it -> List.of(traceId.get()), BatchInvokeOptions.defaults().executor(executor));
+            Assert.assertEquals(10, traceIds.size());
+            Assert.assertTrue(traceIds.stream().allMatch("t-1"::equals));
+            //执行完毕后还原执行线程原有的上下文
+            Assert.assertNull(executor.submit(traceId::get).get());
+        } finally {
+            ContextPropagation.unregister("test");
+            traceId.remove();
+            executor.shutdown();
+        }
+    }
+}
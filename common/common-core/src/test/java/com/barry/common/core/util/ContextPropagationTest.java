@@ -0,0 +1,88 @@
+package com.barry.common.core.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author barry chen
+ */
+public class ContextPropagationTest {
+
+    private final ThreadLocal<String> tenant = new ThreadLocal<>();
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        ContextPropagation.register("tenant", runnable -> {
+            String captured = tenant.get();
+            return () -> {
+                String previous = tenant.get();
+                tenant.set(captured);
+                try {
+                    runnable.run();
+                } finally {
+                    tenant.set(previous);
+                }
+            };
+        });
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        ContextPropagation.unregister("tenant");
+        tenant.remove();
+        executor.shutdown();
+    }
+
+    @Test
+    public void callableTest() throws Exception {
+        tenant.set("t-1");
+        Callable<String> callable = ContextPropagation.wrapCallable(tenant::get);
+        tenant.set("t-2");
+        //捕获的是包装时的上下文, 可以多次调用
+        Assert.assertEquals("t-1", executor.submit(callable).get());
+        Assert.assertEquals("t-1", executor.submit(callable).get());
+        Assert.assertEquals("t-1", callable.call());
+        Assert.assertEquals("t-2", tenant.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void callableExceptionTest() throws Exception {
+        ContextPropagation.wrapCallable(() -> {
+            throw new IllegalStateException("fail");
+        }).call();
+    }
+
+    @Test
+    public void executorServiceTest() throws Exception {
+        ExecutorService wrapped = ContextPropagation.wrap(executor);
+        tenant.set("t-1");
+        Future<String> future = wrapped.submit(tenant::get);
+        List<Future<String>> futures = wrapped.invokeAll(List.of(tenant::get, tenant::get));
+        Assert.assertEquals("t-1", future.get());
+        for (Future<String> f : futures) {
+            Assert.assertEquals("t-1", f.get());
+        }
+        //执行完毕后还原执行线程原有的上下文
+        Assert.assertNull(executor.submit(tenant::get).get());
+        Assert.assertSame(wrapped, ContextPropagation.wrap(wrapped));
+    }
+
+    @Test
+    public void completableFutureTest() {
+        tenant.set("t-1");
+        Assert.assertEquals("t-1", ContextPropagation.supplyAsync(tenant::get, executor).join());
+        String[] captured = new String[1];
+        ContextPropagation.runAsync(() -> captured[0] = tenant.get(), executor).join();
+        Assert.assertEquals("t-1", captured[0]);
+    }
+}
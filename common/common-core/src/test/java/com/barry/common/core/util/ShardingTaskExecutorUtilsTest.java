@@ -0,0 +1,115 @@
+package com.barry.common.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author barry chen
+ */
+public class ShardingTaskExecutorUtilsTest {
+
+    private static final int TOTAL = 10_005;
+
+    @Test
+    public void parallelOffsetTest() {
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        ShardingTaskExecutorUtils.parallel(100, 4).execute((index, limit, ctx) -> {
+            int count = 0;
+            for (int i = index * limit; i < Math.min(TOTAL, (index + 1) * limit); i++) {
+                Assert.assertTrue(processed.add(i));
+                count++;
+            }
+            return count;
+        }, true);
+        Assert.assertEquals(TOTAL, processed.size());
+    }
+
+    @Test
+    public void parallelKeysetTest() {
+        Set<Long> processed = ConcurrentHashMap.newKeySet();
+        ShardingTaskExecutorUtils.parallel(100, 4).execute((afterId, endId, limit, ctx) -> {
+            long last = Math.min(endId - 1, afterId + limit);
+            for (long id = afterId + 1; id <= last; id++) {
+                Assert.assertTrue(processed.add(id));
+            }
+            return last > afterId ? last : null;
+        }, 1, TOTAL, 1000, true);
+        Assert.assertEquals(TOTAL, processed.size());
+    }
+
+    @Test
+    public void offsetResumeTest() {
+        ShardingCheckpointStore store = ShardingCheckpointStore.memory();
+        AtomicBoolean broken = new AtomicBoolean(true);
+        Set<Integer> firstRun = ConcurrentHashMap.newKeySet();
+        try {
+            ShardingTaskExecutorUtils.parallel(10, 1).checkpoint(store, "offset-job").execute((index, limit, ctx) -> {
+                if (index == 5 && broken.get()) {
+                    throw new IllegalStateException("crash");
+                }
+                firstRun.add(index);
+                return limit;
+            }, true);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(Long.valueOf(4), store.load("offset-job").get("offset"));
+        }
+
+        broken.set(false);
+        Set<Integer> secondRun = ConcurrentHashMap.newKeySet();
+        ShardingTaskExecutorUtils.parallel(10, 1).checkpoint(store, "offset-job").execute((index, limit, ctx) -> {
+            secondRun.add(index);
+            return index < 8 ? limit : 0;
+        }, true);
+        Assert.assertEquals(Set.of(0, 1, 2, 3, 4), firstRun);
+        Assert.assertEquals(Set.of(5, 6, 7, 8), secondRun);
+        //正常结束后清除进度
+        Assert.assertTrue(store.load("offset-job").isEmpty());
+    }
+
+    @Test
+    public void keysetResumeTest() {
+        ShardingCheckpointStore store = ShardingCheckpointStore.memory();
+        try {
+            ShardingTaskExecutorUtils.parallel(10, 2).checkpoint(store, "keyset-job").execute((afterId, endId, limit, ctx) -> {
+                if (afterId >= 150) {
+                    throw new IllegalStateException("crash");
+                }
+                long last = Math.min(endId - 1, afterId + limit);
+                return last > afterId ? last : null;
+            }, 1, 200, 100, true);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Map<String, Long> checkpoints = store.load("keyset-job");
+            Assert.assertEquals(Long.valueOf(150), checkpoints.get("range:1"));
+        }
+
+        Set<Long> processed = ConcurrentHashMap.newKeySet();
+        ShardingTaskExecutorUtils.parallel(10, 2).checkpoint(store, "keyset-job").execute((afterId, endId, limit, ctx) -> {
+            long last = Math.min(endId - 1, afterId + limit);
+            for (long id = afterId + 1; id <= last; id++) {
+                processed.add(id);
+            }
+            return last > afterId ? last : null;
+        }, 1, 200, 100, true);
+        Assert.assertTrue(processed.contains(151L));
+        Assert.assertTrue(processed.contains(200L));
+        Assert.assertFalse(processed.contains(150L));
+        Assert.assertTrue(store.load("keyset-job").isEmpty());
+    }
+
+    @Test
+    public void sequentialTest() {
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        ShardingTaskExecutorUtils.apply(100).execute((index, limit, ctx) -> {
+            processed.add(index);
+            return index < 3 ? limit : 1;
+        });
+        Assert.assertEquals(Set.of(0, 1, 2, 3), processed);
+    }
+}
@@ -0,0 +1,93 @@
+package com.barry.common.core.util.id;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author barry chen
+ */
+public class AtomicSnowflakeIdWorkerTest {
+
+    @Test
+    public void sameLayoutAsSnowflakeTest() {
+        long before = new SnowflakeIdWorker(1, 2).nextId();
+        long id = new AtomicSnowflakeIdWorker(1, 2, 10).nextId();
+        long after = new SnowflakeIdWorker(1, 2).nextId();
+        //时间戳的位置和纪元一致
+        Assert.assertTrue(before >> 24 <= id >> 24 && id >> 24 <= after >> 24);
+        //dataCenterId 和 workerId 的位置一致
+        Assert.assertEquals(1, (id >> 18) & 0x3F);
+        Assert.assertEquals(2, (id >> 12) & 0x3F);
+    }
+
+    @Test
+    public void nextIdsTest() {
+        AtomicSnowflakeIdWorker idWorker = new AtomicSnowflakeIdWorker(1, 1, 10);
+        long[] ids = idWorker.nextIds(10000);
+        Assert.assertEquals(10000, ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            Assert.assertTrue(ids[i] > ids[i - 1]);
+        }
+        Assert.assertTrue(idWorker.nextId() > ids[ids.length - 1]);
+    }
+
+    @Test
+    public void concurrentUniqueTest() throws InterruptedException {
+        AtomicSnowflakeIdWorker idWorker = new AtomicSnowflakeIdWorker(1, 1, 10);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int perThread = 50000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(idWorker.nextId());
+                }
+                latch.countDown();
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    public void clockBackwardWithinToleranceTest() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        AtomicSnowflakeIdWorker idWorker = new AtomicSnowflakeIdWorker(1, 1, 10, clock::get);
+        long first = idWorker.nextId();
+        //回拨5毫秒, 继续借用未来的序列
+        clock.addAndGet(-5);
+        long second = idWorker.nextId();
+        Assert.assertTrue(second > first);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void clockBackwardBeyondToleranceTest() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        AtomicSnowflakeIdWorker idWorker = new AtomicSnowflakeIdWorker(1, 1, 10, clock::get);
+        idWorker.nextId();
+        clock.addAndGet(-100);
+        idWorker.nextId();
+    }
+
+    @Test
+    public void registerPrototypeTest() {
+        IdWorkerContainer idWorkerContainer = new IdWorkerContainer(3L)
+                .registerPrototype(new AtomicSnowflakeIdWorker(50));
+        IdWorker idWorker = idWorkerContainer.getIdWorker(4L, AtomicSnowflakeIdWorker.class);
+        Assert.assertEquals(AtomicSnowflakeIdWorker.ID_WORKER_NAME_ATOMIC_SNOWFLAKE, idWorker.getType());
+        long id = idWorker.nextId();
+        Assert.assertEquals(4, (id >> 18) & 0x3F);
+        Assert.assertEquals(3, (id >> 12) & 0x3F);
+    }
+}
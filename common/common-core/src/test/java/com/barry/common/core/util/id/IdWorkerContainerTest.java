@@ -5,6 +5,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author barry chen
  * @date 2022/9/14 15:56
@@ -46,4 +53,24 @@ public class IdWorkerContainerTest {
 
     }
 
+    @Test
+    public void concurrentGetIdWorkerTest() throws InterruptedException {
+        IdWorkerContainer idWorkerContainer = new IdWorkerContainer(51L);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Set<IdWorker> idWorkers = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                start.await();
+                return idWorkers.add(idWorkerContainer.getIdWorker(51L));
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        //并发获取同一个 dataCenterId 的派号器, 只创建一个
+        Assert.assertEquals(1, idWorkers.size());
+        Assert.assertSame(idWorkerContainer.getIdWorker(51L), idWorkers.iterator().next());
+    }
 }
@@ -0,0 +1,86 @@
+package com.barry.common.core.util.id;
+
+import com.barry.common.core.exception.ApplicationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author barry chen
+ */
+public class SegmentIdWorkerTest {
+
+    /**
+     * 内存号段分配器
+     */
+    private static class MemorySegmentAllocator implements SegmentAllocator {
+
+        private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public long allocate(String tag, int step) {
+            calls.incrementAndGet();
+            return counters.computeIfAbsent(tag, t -> new AtomicLong()).addAndGet(step);
+        }
+    }
+
+    @Test
+    public void nextIdTest() {
+        MemorySegmentAllocator allocator = new MemorySegmentAllocator();
+        IdWorker idWorker = new SegmentIdWorker(allocator, 100).newInstance(1, 0);
+        for (long i = 1; i <= 1000; i++) {
+            Assert.assertEquals(i, idWorker.nextId().longValue());
+        }
+        //1000个id需要10个号段, 最后一个号段消耗10%后会预加载第11个
+        Assert.assertTrue(allocator.calls.get() >= 10 && allocator.calls.get() <= 11);
+    }
+
+    @Test
+    public void concurrentUniqueTest() throws InterruptedException {
+        MemorySegmentAllocator allocator = new MemorySegmentAllocator();
+        IdWorker idWorker = new SegmentIdWorker(allocator, 1000).newInstance(1, 0);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int perThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(idWorker.nextId());
+                }
+                latch.countDown();
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    public void containerTest() {
+        MemorySegmentAllocator allocator = new MemorySegmentAllocator();
+        IdWorkerContainer idWorkerContainer = new IdWorkerContainer(1L)
+                .registerPrototype(new SegmentIdWorker(allocator, 10));
+        IdWorker idWorker = idWorkerContainer.getIdWorker(7L, SegmentIdWorker.class);
+        Assert.assertEquals(SegmentIdWorker.ID_WORKER_NAME_SEGMENT, idWorker.getType());
+        idWorker.nextId();
+        //dataCenterId 作为业务标识
+        Assert.assertTrue(allocator.counters.containsKey("7"));
+    }
+
+    @Test(expected = ApplicationException.class)
+    public void withoutAllocatorTest() {
+        new SegmentIdWorker().newInstance(1, 0);
+    }
+}
@@ -1,8 +1,13 @@
 package com.barry.common.spring.config.id;
 
+import com.barry.common.core.util.id.AtomicSnowflakeIdWorker;
 import com.barry.common.core.util.id.IdWorkerContainer;
+import com.barry.common.core.util.id.JdbcSegmentAllocator;
+import com.barry.common.core.util.id.SegmentAllocator;
+import com.barry.common.core.util.id.SegmentIdWorker;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -10,6 +15,8 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
+import javax.sql.DataSource;
+
 @Configuration
 @EnableScheduling
 @Slf4j
@@ -18,13 +25,21 @@ public class IdWorkerAutoConfiguration {
     private RedisTemplate<String, Object> redisTemplate;
     private static final DistributedIdWorkerIdGenerator DISTRIBUTED_ID_WORKER_ID_GENERATOR = new DistributedIdWorkerIdGenerator();
     private Long workerId;
+    @Autowired
+    private IdWorkerProperties idWorkerProperties;
 
     @Bean
     @Primary
-    public IdWorkerContainer idWorkerContainer() {
+    public IdWorkerContainer idWorkerContainer(ObjectProvider<DataSource> dataSource) {
         workerId = DISTRIBUTED_ID_WORKER_ID_GENERATOR.acquireId(redisTemplate);
         log.info("IdWorkerContainer init, workerId: {}", workerId);
-        return new IdWorkerContainer(workerId);
+        IdWorkerProperties.Segment segment = idWorkerProperties.getSegment();
+        SegmentAllocator segmentAllocator = segment.getAllocator() == IdWorkerProperties.Allocator.JDBC
+                ? new JdbcSegmentAllocator(dataSource.getObject(), segment.getTableName())
+                : new RedisSegmentAllocator(redisTemplate);
+        return new IdWorkerContainer(workerId)
+                .registerPrototype(new AtomicSnowflakeIdWorker(idWorkerProperties.getClockBackwardToleranceMillis()))
+                .registerPrototype(new SegmentIdWorker(segmentAllocator, segment.getStep()));
     }
 
     @Scheduled(cron = "0 0/1 * * * ?")
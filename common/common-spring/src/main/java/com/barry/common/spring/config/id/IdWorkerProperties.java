@@ -0,0 +1,51 @@
+package com.barry.common.spring.config.id;
+
+import com.barry.common.core.util.id.AtomicSnowflakeIdWorker;
+import com.barry.common.core.util.id.JdbcSegmentAllocator;
+import com.barry.common.core.util.id.SegmentIdWorker;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "id-worker")
+@Data
+public class IdWorkerProperties {
+
+    /**
+     * 无锁雪花派号器的时钟回拨容忍时间, 单位毫秒
+     */
+    private long clockBackwardToleranceMillis = AtomicSnowflakeIdWorker.DEFAULT_CLOCK_BACKWARD_TOLERANCE_MILLIS;
+    /**
+     * 号段派号器配置
+     */
+    private Segment segment = new Segment();
+
+    @Data
+    public static class Segment {
+
+        /**
+         * 号段分配器
+         */
+        private Allocator allocator = Allocator.REDIS;
+        /**
+         * 号段长度
+         */
+        private int step = SegmentIdWorker.DEFAULT_STEP;
+        /**
+         * 使用数据库分配时的表名
+         */
+        private String tableName = JdbcSegmentAllocator.DEFAULT_TABLE_NAME;
+    }
+
+    public enum Allocator {
+        /**
+         * redis INCRBY
+         */
+        REDIS,
+        /**
+         * 数据库表, 需要容器中有 DataSource
+         */
+        JDBC
+    }
+}
@@ -0,0 +1,33 @@
+package com.barry.common.spring.config.id;
+
+import com.barry.common.core.exception.ApplicationException;
+import com.barry.common.core.util.id.SegmentAllocator;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import static com.barry.common.core.exception.SystemErrorCode.SYS_ID_SEGMENT_ALLOCATE_ERROR;
+
+/**
+ * <p>基于 redis INCRBY 的号段分配器</p>
+ * 每个业务标识一个计数器, 一次 INCRBY step 分配一个号段. 计数器不过期, 需要开启 redis 持久化以免重启后 id 重复.
+ *
+ * @author barry chen
+ */
+public class RedisSegmentAllocator implements SegmentAllocator {
+
+    private static final String ID_SEGMENT_PREFIX = "ID_SEGMENT_";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    public RedisSegmentAllocator(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public long allocate(String tag, int step) {
+        Long max = redisTemplate.opsForValue().increment(ID_SEGMENT_PREFIX + tag, step);
+        if (max == null) {
+            throw new ApplicationException(SYS_ID_SEGMENT_ALLOCATE_ERROR, "allocate id segment fail, tag: " + tag);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,70 @@
+package com.barry.common.spring.config.redis;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * <p>与 {@link RedisObjectMapper} 相同的默认类型信息(NON_FINAL), 但注册过别名的类型只写入别名</p>
+ *
+ * @author barry chen
+ */
+public class AliasTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+
+    private static final long serialVersionUID = 6118431567023398042L;
+
+    private final transient TypeAliasRegistry registry;
+
+    public AliasTypeResolverBuilder(TypeAliasRegistry registry) {
+        super(ObjectMapper.DefaultTyping.NON_FINAL, LaissezFaireSubTypeValidator.instance);
+        this.registry = registry;
+        init(JsonTypeInfo.Id.CLASS, null);
+        inclusion(JsonTypeInfo.As.PROPERTY);
+    }
+
+    @Override
+    protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType,
+            PolymorphicTypeValidator subtypeValidator, Collection<NamedType> subtypes, boolean forSer, boolean forDeser) {
+        return new AliasTypeIdResolver(baseType, config.getTypeFactory(), subtypeValidator, registry);
+    }
+
+    /**
+     * 先按别名解析, 未注册的类型退回完整类名
+     */
+    static class AliasTypeIdResolver extends ClassNameIdResolver {
+
+        private final TypeAliasRegistry registry;
+
+        AliasTypeIdResolver(JavaType baseType, TypeFactory typeFactory, PolymorphicTypeValidator ptv,
+                TypeAliasRegistry registry) {
+            super(baseType, typeFactory, ptv);
+            this.registry = registry;
+        }
+
+        @Override
+        protected String _idFrom(Object value, Class<?> cls, TypeFactory typeFactory) {
+            String alias = registry.aliasOf(cls);
+            return alias != null ? alias : super._idFrom(value, cls, typeFactory);
+        }
+
+        @Override
+        public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+            Class<?> type = registry.typeOf(id);
+            if (type != null) {
+                return context.getTypeFactory().constructSpecializedType(_baseType, type);
+            }
+            return super.typeFromId(context, id);
+        }
+    }
+}
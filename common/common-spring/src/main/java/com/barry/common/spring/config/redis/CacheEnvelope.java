@@ -0,0 +1,29 @@
+package com.barry.common.spring.config.redis;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>开启击穿保护的缓存在 redis 中保存的值, 附带回源耗时和逻辑过期时间</p>
+ *
+ * @author barry chen
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEnvelope {
+
+    /**
+     * 缓存值
+     */
+    private Object value;
+    /**
+     * 回源耗时, 单位毫秒, 用于计算提前刷新的概率
+     */
+    private long delta;
+    /**
+     * 逻辑过期时间戳, 单位毫秒
+     */
+    private long expireAt;
+}
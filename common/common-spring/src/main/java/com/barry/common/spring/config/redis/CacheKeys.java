@@ -0,0 +1,30 @@
+package com.barry.common.spring.config.redis;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+
+/**
+ * <p>缓存 key 转字符串, 与 RedisCache 的转换规则保持一致</p>
+ *
+ * @author barry chen
+ */
+final class CacheKeys {
+
+    private static final TypeDescriptor STRING_TYPE = TypeDescriptor.valueOf(String.class);
+    private static final ConversionService CONVERSION_SERVICE = RedisCacheConfiguration.defaultCacheConfig().getConversionService();
+
+    private CacheKeys() {
+    }
+
+    static String convert(Object key) {
+        if (key instanceof String) {
+            return (String) key;
+        }
+        TypeDescriptor source = TypeDescriptor.forObject(key);
+        if (CONVERSION_SERVICE.canConvert(source, STRING_TYPE)) {
+            return CONVERSION_SERVICE.convert(key, String.class);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.barry.common.spring.config.redis;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceExceptionConverter;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <p>集群模式下批量查询 key 的类型</p>
+ * 集群连接不支持管道. 使用 lettuce 时一次发出所有异步 TYPE 命令, 由 lettuce 按 slot 路由到各节点后统一等待结果,
+ * 一批 key 只需要一次往返; 其它客户端逐个查询.
+ *
+ * @author barry chen
+ */
+final class ClusterKeyTypes {
+
+    private static final boolean LETTUCE_PRESENT = ClassUtils.isPresent(
+            "io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands", ClusterKeyTypes.class.getClassLoader());
+
+    private ClusterKeyTypes() {
+    }
+
+    /**
+     * @param connection 集群连接
+     * @param keys       序列化后的 key
+     * @return 与 keys 一一对应的类型
+     */
+    static List<DataType> types(RedisConnection connection, List<byte[]> keys) {
+        if (LETTUCE_PRESENT && Lettuce.supports(connection.getNativeConnection())) {
+            return Lettuce.types(connection.getNativeConnection(), keys);
+        }
+        return keys.stream().map(connection::type).collect(Collectors.toList());
+    }
+
+    /**
+     * 隔离 lettuce 的类, 没有 lettuce 时不会加载
+     */
+    private static final class Lettuce {
+
+        private static final LettuceExceptionConverter EXCEPTION_CONVERTER = new LettuceExceptionConverter();
+
+        static boolean supports(Object nativeConnection) {
+            return nativeConnection instanceof RedisAdvancedClusterAsyncCommands;
+        }
+
+        @SuppressWarnings("unchecked")
+        static List<DataType> types(Object nativeConnection, List<byte[]> keys) {
+            RedisAdvancedClusterAsyncCommands<byte[], byte[]> commands = (RedisAdvancedClusterAsyncCommands<byte[], byte[]>) nativeConnection;
+            long timeout = commands.getStatefulConnection().getTimeout().toMillis();
+            List<RedisFuture<String>> futures = keys.stream().map(commands::type).collect(Collectors.toList());
+            try {
+                return futures.stream()
+                        .map(future -> DataType.fromCode(LettuceFutures.awaitOrCancel(future, timeout, TimeUnit.MILLISECONDS)))
+                        .collect(Collectors.toList());
+            } catch (RuntimeException e) {
+                futures.forEach(future -> future.cancel(true));
+                DataAccessException translated = EXCEPTION_CONVERTER.convert(e);
+                throw translated != null ? translated : e;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.barry.common.spring.config.redis;
+
+import com.barry.common.core.util.Assert;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>可切换格式的 redis 值序列化器</p>
+ * <p>
+ * 写入格式由 {@link Format} 决定, 读取时两种格式都支持:
+ * <ul>
+ *     <li>首字节不是 {@link #MAGIC} 的值, 按原有 json 格式({@link RedisObjectMapper})读取, 兼容已有数据</li>
+ *     <li>首字节是 {@link #MAGIC} 的值, 格式为 magic(1) + version(1) + flags(1) + payload,
+ *     flags 标记 payload 是 Smile 还是 json, 以及是否经过 LZ4 压缩</li>
+ * </ul>
+ * 灰度上线时先以 json 格式发布所有节点(已能读取新格式), 再切换写入格式为 smile.
+ * </p>
+ * 未压缩的 json 不写头部, 与原有格式完全一致.
+ *
+ * @author barry chen
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 头部魔数, 不是合法的 UTF-8 首字节, 不会与 json 冲突
+     */
+    public static final byte MAGIC = (byte) 0xB7;
+    /**
+     * 头部格式版本
+     */
+    public static final byte VERSION = 1;
+
+    private static final int HEADER_LENGTH = 3;
+    private static final int FLAG_LZ4 = 1;
+    private static final int FLAG_SMILE = 1 << 1;
+    private static final int KNOWN_FLAGS = FLAG_LZ4 | FLAG_SMILE;
+
+    private static final boolean SMILE_PRESENT = ClassUtils.isPresent(
+            "com.fasterxml.jackson.dataformat.smile.SmileFactory", CompactRedisSerializer.class.getClassLoader());
+    private static final boolean LZ4_PRESENT = ClassUtils.isPresent(
+            "net.jpountz.lz4.LZ4Factory", CompactRedisSerializer.class.getClassLoader());
+
+    private final Format format;
+    private final Compression compression;
+    private final int compressionThreshold;
+    private final ObjectMapper jsonMapper;
+    private final RedisSerializer<Object> jsonSerializer;
+    private final ObjectMapper smileMapper;
+
+    /**
+     * @param format               写入格式
+     * @param compression          压缩算法
+     * @param compressionThreshold 序列化后超过该字节数才压缩
+     * @param registry             smile 格式使用的类型别名
+     */
+    public CompactRedisSerializer(Format format, Compression compression, int compressionThreshold,
+            TypeAliasRegistry registry) {
+        Assert.check(format != Format.SMILE || SMILE_PRESENT, "redis serializer format smile requires jackson-dataformat-smile.");
+        Assert.check(compression != Compression.LZ4 || LZ4_PRESENT, "redis serializer compression lz4 requires lz4-java.");
+        this.format = format;
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+        this.jsonMapper = new RedisObjectMapper();
+        this.jsonSerializer = new GenericJackson2JsonRedisSerializer(jsonMapper);
+        this.smileMapper = SMILE_PRESENT ? SmileObjectMappers.create(registry) : null;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        int flags = 0;
+        byte[] payload;
+        try {
+            if (format == Format.SMILE) {
+                payload = smileMapper.writeValueAsBytes(value);
+                flags |= FLAG_SMILE;
+            } else {
+                payload = jsonMapper.writeValueAsBytes(value);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Could not write value: " + e.getMessage(), e);
+        }
+        if (compression == Compression.LZ4 && compressionThreshold > 0 && payload.length >= compressionThreshold) {
+            payload = Lz4Codec.compress(payload);
+            flags |= FLAG_LZ4;
+        }
+        if (flags == 0) {
+            return payload;
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = (byte) flags;
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != VERSION) {
+            throw new SerializationException("Unsupported redis value header version: " + (bytes.length > 1 ? bytes[1] : -1));
+        }
+        int flags = bytes[2];
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new SerializationException("Unsupported redis value header flags: " + flags);
+        }
+        byte[] payload = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+        if ((flags & FLAG_LZ4) != 0) {
+            Assert.check(LZ4_PRESENT, "redis value is lz4 compressed but lz4-java is not present.");
+            payload = Lz4Codec.decompress(payload);
+        }
+        try {
+            if ((flags & FLAG_SMILE) != 0) {
+                Assert.check(SMILE_PRESENT, "redis value is smile encoded but jackson-dataformat-smile is not present.");
+                return smileMapper.readValue(payload, Object.class);
+            }
+            return jsonMapper.readValue(payload, Object.class);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read value: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写入格式
+     */
+    public enum Format {
+        /**
+         * 原有的 json 格式, 带完整类名
+         */
+        JSON,
+        /**
+         * Smile 二进制格式, 注册过别名的类型只写别名
+         */
+        SMILE
+    }
+
+    /**
+     * 压缩算法
+     */
+    public enum Compression {
+        NONE,
+        LZ4
+    }
+}
@@ -0,0 +1,52 @@
+package com.barry.common.spring.config.redis;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * <p>LZ4 压缩, 格式为 原始长度(4字节, 大端) + 压缩数据</p>
+ * 单独成类, 未引入 lz4-java 时不会加载.
+ *
+ * @author barry chen
+ */
+final class Lz4Codec {
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private Lz4Codec() {
+    }
+
+    static byte[] compress(byte[] src) {
+        int maxLength = COMPRESSOR.maxCompressedLength(src.length);
+        byte[] dest = new byte[4 + maxLength];
+        writeInt(dest, src.length);
+        int length = COMPRESSOR.compress(src, 0, src.length, dest, 4, maxLength);
+        byte[] result = new byte[4 + length];
+        System.arraycopy(dest, 0, result, 0, result.length);
+        return result;
+    }
+
+    static byte[] decompress(byte[] src) {
+        if (src.length < 4) {
+            throw new SerializationException("Invalid lz4 payload");
+        }
+        int length = readInt(src);
+        byte[] dest = new byte[length];
+        DECOMPRESSOR.decompress(src, 4, dest, 0, length);
+        return dest;
+    }
+
+    private static void writeInt(byte[] dest, int value) {
+        dest[0] = (byte) (value >>> 24);
+        dest[1] = (byte) (value >>> 16);
+        dest[2] = (byte) (value >>> 8);
+        dest[3] = (byte) value;
+    }
+
+    private static int readInt(byte[] src) {
+        return ((src[0] & 0xFF) << 24) | ((src[1] & 0xFF) << 16) | ((src[2] & 0xFF) << 8) | (src[3] & 0xFF);
+    }
+}
@@ -0,0 +1,193 @@
+package com.barry.common.spring.config.redis;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * <p>二级缓存: 一级为进程内 Caffeine, 二级为 redis</p>
+ * <p>
+ * 读取时先查本地缓存, 未命中再查 redis 并回填本地. 写入/删除时先操作 redis, 再更新本地缓存,
+ * 最后通过 redis channel 广播失效消息, 其它节点收到后删除各自的本地副本.
+ * </p>
+ * 本地缓存的 key 为转换成字符串后的缓存 key, 与 redis 中的 key 一致, 以便跨节点失效.
+ * <p>
+ * 回填本地缓存与失效之间存在竞争: 读取 redis 得到旧值后, 失效消息先到达, 回填会把旧值写回本地.
+ * 因此按 key 分段维护版本号, 本地写入和失效前先递增版本号; 回填时在 key 的锁内比较读取 redis 前的版本号,
+ * 版本号变化时放弃回填.
+ *
+ * @author barry chen
+ */
+public class NearCache implements Cache {
+
+    /**
+     * 版本号的分段数, 不同 key 共用分段时只会多放弃一些回填
+     */
+    private static final int GENERATION_STRIPES = 256;
+
+    private final Cache delegate;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Function<Object, String> keyConverter;
+    private final BiConsumer<String, String> invalidationPublisher;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    /**
+     * @param delegate              二级缓存(redis)
+     * @param local                 一级缓存
+     * @param keyConverter          缓存 key 转字符串
+     * @param invalidationPublisher 失效广播, 参数为缓存名称和 key, key 为 null 表示清空整个缓存
+     */
+    NearCache(Cache delegate, com.github.benmanes.caffeine.cache.Cache<String, Object> local,
+            Function<Object, String> keyConverter, BiConsumer<String, String> invalidationPublisher) {
+        this.delegate = delegate;
+        this.local = local;
+        this.keyConverter = keyConverter;
+        this.invalidationPublisher = invalidationPublisher;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = keyConverter.apply(key);
+        Object value = local.getIfPresent(localKey);
+        if (value != null) {
+            return toValueWrapper(value);
+        }
+        long generation = generation(localKey);
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            fill(localKey, generation, wrapper.get());
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        // 同一个 key 在本节点只会有一个线程回源, 其它线程等待结果
+        Object value = local.get(keyConverter.apply(key), k -> toStoreValue(delegate.get(key, valueLoader)));
+        return (T) fromStoreValue(value);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        String localKey = keyConverter.apply(key);
+        putLocal(localKey, value);
+        invalidationPublisher.accept(getName(), localKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        String localKey = keyConverter.apply(key);
+        long generation = generation(localKey);
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        if (existing == null) {
+            putLocal(localKey, value);
+            invalidationPublisher.accept(getName(), localKey);
+        } else {
+            fill(localKey, generation, existing.get());
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        String localKey = keyConverter.apply(key);
+        invalidateLocal(localKey);
+        invalidationPublisher.accept(getName(), localKey);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = delegate.evictIfPresent(key);
+        String localKey = keyConverter.apply(key);
+        invalidateLocal(localKey);
+        invalidationPublisher.accept(getName(), localKey);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        invalidateLocal(null);
+        invalidationPublisher.accept(getName(), null);
+    }
+
+    /**
+     * 只删除本地缓存, 收到其它节点的失效广播时调用
+     *
+     * @param localKey 字符串 key, 为 null 时清空本地缓存
+     */
+    void invalidateLocal(String localKey) {
+        if (localKey == null) {
+            for (int i = 0; i < GENERATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            local.invalidateAll();
+        } else {
+            generations.incrementAndGet(stripe(localKey));
+            local.invalidate(localKey);
+        }
+    }
+
+    private void putLocal(String localKey, Object value) {
+        generations.incrementAndGet(stripe(localKey));
+        local.put(localKey, toStoreValue(value));
+    }
+
+    /**
+     * 回填 redis 中读取的值, 读取后本地有过写入或失效时放弃.
+     * 在 key 的锁内比较版本号, 与失效的删除串行, 版本号先于删除递增, 不会在删除之后写回旧值
+     */
+    private void fill(String localKey, long generation, Object value) {
+        local.asMap().compute(localKey, (k, current) -> generation(k) == generation ? toStoreValue(value) : current);
+    }
+
+    private long generation(String localKey) {
+        return generations.get(stripe(localKey));
+    }
+
+    private static int stripe(String localKey) {
+        int hash = localKey.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private static Object toStoreValue(Object value) {
+        return value == null ? NullValue.INSTANCE : value;
+    }
+
+    private static Object fromStoreValue(Object value) {
+        return value == NullValue.INSTANCE ? null : value;
+    }
+
+    private static ValueWrapper toValueWrapper(Object value) {
+        return new SimpleValueWrapper(fromStoreValue(value));
+    }
+}
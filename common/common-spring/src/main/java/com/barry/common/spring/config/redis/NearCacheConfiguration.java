@@ -0,0 +1,67 @@
+package com.barry.common.spring.config.redis;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachingConfigurerSupport;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * <p>二级缓存(Caffeine + Redis)配置</p>
+ * <p>
+ * 开启 spring.cache.redis.near-cache.enabled 后, 未指定 cacheManager 的 @Cacheable 等注解将使用二级缓存;
+ * 指定 cacheManager = {@link RedisExtensionAutoConfiguration#REDIS_CACHE_MANAGER} 时仍然只使用 redis.
+ * </p>
+ *
+ * @author barry chen
+ */
+@Configuration
+@ConditionalOnClass(Caffeine.class)
+@ConditionalOnProperty(prefix = "spring.cache.redis", name = {"enabled", "near-cache.enabled"}, havingValue = "true")
+public class NearCacheConfiguration extends CachingConfigurerSupport {
+
+    /**
+     * 二级缓存
+     */
+    public static final String NEAR_CACHE_MANAGER = "nearCacheManager";
+
+    @Autowired
+    private RedisOverdueTimeProperties redisProperties;
+
+    @Autowired
+    private CacheProperties cacheProperties;
+
+    @Autowired
+    @Qualifier(RedisExtensionAutoConfiguration.REDIS_CACHE_MANAGER)
+    private CacheManager redisCacheManager;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Bean(NEAR_CACHE_MANAGER)
+    @Override
+    public NearCacheManager cacheManager() {
+        return new NearCacheManager(redisCacheManager, redisTemplate, redisProperties.getNearCache(),
+                redisProperties.getExpires(), cacheProperties.getRedis().getTimeToLive());
+    }
+
+    /**
+     * 监听失效广播
+     */
+    @Bean
+    public RedisMessageListenerContainer nearCacheListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(cacheManager(), new ChannelTopic(redisProperties.getNearCache().getChannel()));
+        return container;
+    }
+}
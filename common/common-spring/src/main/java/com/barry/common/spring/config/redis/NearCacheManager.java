@@ -0,0 +1,142 @@
+package com.barry.common.spring.config.redis;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>二级缓存管理器</p>
+ * <p>
+ * 包装 redis 的 CacheManager, 为每个缓存增加一层进程内的 Caffeine 缓存. 本地缓存的存活时间取
+ * {@link RedisOverdueTimeProperties#getExpires()} 中该缓存的 ttl 与 near-cache.time-to-live 的较小者.
+ * 写入和删除会通过 redis channel 广播, 其它节点收到后删除本地副本; 广播丢失(如连接断开)时,
+ * 本地缓存最多在 time-to-live 之后过期.
+ * </p>
+ *
+ * @author barry chen
+ */
+public class NearCacheManager implements CacheManager, MessageListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearCacheManager.class);
+
+    /**
+     * 当前节点的标识, 用于忽略自己发出的广播
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, NearCache> caches = new ConcurrentHashMap<>(16);
+
+    private final CacheManager delegate;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisOverdueTimeProperties.NearCache config;
+    private final Map<String, Duration> expires;
+    private final Duration defaultTimeToLive;
+
+    /**
+     * @param delegate          redis CacheManager
+     * @param redisTemplate     用于发送失效广播
+     * @param config            二级缓存配置
+     * @param expires           每个缓存在 redis 中的 ttl
+     * @param defaultTimeToLive 未单独配置 ttl 的缓存在 redis 中的 ttl, 可以为 null
+     */
+    public NearCacheManager(CacheManager delegate, RedisTemplate<String, Object> redisTemplate,
+            RedisOverdueTimeProperties.NearCache config, Map<String, Duration> expires, Duration defaultTimeToLive) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.config = config;
+        this.expires = expires;
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, n -> {
+            Cache cache = delegate.getCache(n);
+            return cache == null ? null : new NearCache(cache, buildLocalCache(n), CacheKeys::convert, this::publish);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body;
+        try {
+            body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        } catch (Exception e) {
+            LOGGER.warn("near cache invalidation message deserialize error", e);
+            return;
+        }
+        if (!(body instanceof Invalidation)) {
+            return;
+        }
+        Invalidation invalidation = (Invalidation) body;
+        if (instanceId.equals(invalidation.getInstanceId())) {
+            return;
+        }
+        NearCache cache = caches.get(invalidation.getCacheName());
+        if (cache != null) {
+            cache.invalidateLocal(invalidation.getKey());
+        }
+    }
+
+    /**
+     * 本地缓存的存活时间
+     */
+    Duration localTimeToLive(String name) {
+        Duration ttl = expires.getOrDefault(name, defaultTimeToLive);
+        if (ttl == null || ttl.isZero() || ttl.isNegative() || ttl.compareTo(config.getTimeToLive()) > 0) {
+            return config.getTimeToLive();
+        }
+        return ttl;
+    }
+
+    private com.github.benmanes.caffeine.cache.Cache<String, Object> buildLocalCache(String name) {
+        return Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(localTimeToLive(name))
+                .build();
+    }
+
+    private void publish(String cacheName, String key) {
+        try {
+            redisTemplate.convertAndSend(config.getChannel(), new Invalidation(instanceId, cacheName, key));
+        } catch (Exception e) {
+            // 广播失败不影响本次缓存操作, 其它节点的本地缓存将在 ttl 后过期
+            LOGGER.warn("near cache invalidation publish error, cache: {}, key: {}", cacheName, key, e);
+        }
+    }
+
+    /**
+     * 失效广播消息
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Invalidation {
+
+        private String instanceId;
+        private String cacheName;
+        /**
+         * 为 null 表示清空整个缓存
+         */
+        private String key;
+    }
+}
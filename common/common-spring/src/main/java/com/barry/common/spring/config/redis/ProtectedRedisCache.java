@@ -0,0 +1,346 @@
+package com.barry.common.spring.config.redis;
+
+import com.barry.common.core.util.ThreadUtils;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>带击穿保护的 redis 缓存</p>
+ * <ul>
+ *     <li>单飞回源: 同一个 key 在本节点只有一个线程回源, 跨节点通过 redis 短锁协调, 未拿到锁的节点等待回源结果</li>
+ *     <li>提前刷新: 按 XFetch 算法, 越接近过期、回源越慢, 越可能在过期前由某个调用方刷新</li>
+ *     <li>过期后返回旧值: 逻辑过期后的 stale-while-revalidate 时间内继续返回旧值, 由一个调用方在后台刷新</li>
+ * </ul>
+ * 完整的保护需要使用 {@code @Cacheable(sync = true)}. 非 sync 模式下没有回源函数, 只能做到
+ * 需要刷新时只让拿到锁的调用方返回未命中, 其它调用方继续使用旧值.
+ *
+ * @author barry chen
+ */
+public class ProtectedRedisCache implements Cache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProtectedRedisCache.class);
+
+    private static final long WAIT_INTERVAL_MILLIS = 50L;
+
+    /**
+     * 后台刷新被跳过(没有拿到锁或刷新失败)的标记, 等待者收到后自己回源
+     */
+    private static final Object SKIPPED = new Object();
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final Cache delegate;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisOverdueTimeProperties.Protection protection;
+    private final Duration timeToLive;
+    private final Executor refreshExecutor;
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * 非 sync 模式下记录未命中的时间, 在 put 时计算回源耗时
+     */
+    private final com.google.common.cache.Cache<String, Long> missStartedAt;
+    /**
+     * 非 sync 模式下本节点持有的回源锁, 在 put 时释放
+     */
+    private final com.google.common.cache.Cache<String, String> ownedLocks;
+
+    /**
+     * @param delegate        redis 缓存
+     * @param redisTemplate   用于回源锁
+     * @param protection      保护配置
+     * @param timeToLive      逻辑 ttl, 为空表示永不过期, 此时只做单飞回源
+     * @param refreshExecutor 后台刷新线程池
+     */
+    ProtectedRedisCache(Cache delegate, StringRedisTemplate redisTemplate, RedisOverdueTimeProperties.Protection protection,
+            Duration timeToLive, Executor refreshExecutor) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.protection = protection;
+        this.timeToLive = timeToLive == null || timeToLive.isZero() ? null : timeToLive;
+        this.refreshExecutor = refreshExecutor;
+        this.missStartedAt = CacheBuilder.newBuilder().maximumSize(10000)
+                .expireAfterWrite(protection.getLockTimeout().toMillis(), TimeUnit.MILLISECONDS).build();
+        this.ownedLocks = CacheBuilder.newBuilder().maximumSize(10000)
+                .expireAfterWrite(protection.getLockTimeout().toMillis(), TimeUnit.MILLISECONDS).build();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String cacheKey = CacheKeys.convert(key);
+        long now = System.currentTimeMillis();
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper == null) {
+            missStartedAt.put(cacheKey, now);
+            return null;
+        }
+        if (!(wrapper.get() instanceof CacheEnvelope)) {
+            return wrapper;
+        }
+        CacheEnvelope envelope = (CacheEnvelope) wrapper.get();
+        if (needsRefresh(envelope, now)) {
+            // 只有拿到锁的调用方返回未命中去回源, 其它调用方继续使用旧值
+            String token = UUID.randomUUID().toString();
+            if (tryLock(cacheKey, token)) {
+                ownedLocks.put(cacheKey, token);
+                missStartedAt.put(cacheKey, now);
+                return null;
+            }
+        }
+        return new SimpleValueWrapper(envelope.getValue());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String cacheKey = CacheKeys.convert(key);
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper == null) {
+            return (T) load(key, cacheKey, valueLoader);
+        }
+        if (!(wrapper.get() instanceof CacheEnvelope)) {
+            return (T) wrapper.get();
+        }
+        CacheEnvelope envelope = (CacheEnvelope) wrapper.get();
+        if (needsRefresh(envelope, System.currentTimeMillis())) {
+            refreshAsync(key, cacheKey, valueLoader);
+        }
+        return (T) envelope.getValue();
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String cacheKey = CacheKeys.convert(key);
+        Long startedAt = missStartedAt.getIfPresent(cacheKey);
+        missStartedAt.invalidate(cacheKey);
+        long delta = startedAt == null ? 0 : System.currentTimeMillis() - startedAt;
+        delegate.put(key, wrap(value, delta));
+        String token = ownedLocks.getIfPresent(cacheKey);
+        if (token != null) {
+            ownedLocks.invalidate(cacheKey);
+            unlock(cacheKey, token);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, wrap(value, 0));
+        if (existing != null && existing.get() instanceof CacheEnvelope) {
+            return new SimpleValueWrapper(((CacheEnvelope) existing.get()).getValue());
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    /**
+     * 未命中时回源, 本节点单飞, 跨节点通过锁协调
+     */
+    private Object load(Object key, String cacheKey, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(cacheKey, future);
+        if (existing != null) {
+            return join(existing, key, cacheKey, valueLoader);
+        }
+        try {
+            Object value = loadAcrossNodes(key, cacheKey, valueLoader);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, future);
+        }
+    }
+
+    private Object loadAcrossNodes(Object key, String cacheKey, Callable<?> valueLoader) {
+        String token = UUID.randomUUID().toString();
+        if (!tryLock(cacheKey, token)) {
+            // 其它节点正在回源, 等待其写入结果, 超时后自己回源
+            long deadline = System.currentTimeMillis() + protection.getLockTimeout().toMillis();
+            while (System.currentTimeMillis() < deadline) {
+                ThreadUtils.sleep(WAIT_INTERVAL_MILLIS);
+                ValueWrapper wrapper = delegate.get(key);
+                if (wrapper != null) {
+                    return unwrap(wrapper.get());
+                }
+            }
+            LOGGER.warn("wait for cache load timeout, cache: {}, key: {}", getName(), cacheKey);
+        }
+        try {
+            return loadAndPut(key, valueLoader);
+        } finally {
+            unlock(cacheKey, token);
+        }
+    }
+
+    private Object loadAndPut(Object key, Callable<?> valueLoader) {
+        long start = System.currentTimeMillis();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        delegate.put(key, wrap(value, System.currentTimeMillis() - start));
+        return value;
+    }
+
+    /**
+     * 后台刷新, 同一个 key 在所有节点中只有拿到锁的一个调用方刷新
+     */
+    private void refreshAsync(Object key, String cacheKey, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(cacheKey, future) != null) {
+            return;
+        }
+        Runnable refresh = () -> {
+            String token = UUID.randomUUID().toString();
+            try {
+                if (tryLock(cacheKey, token)) {
+                    try {
+                        future.complete(loadAndPut(key, valueLoader));
+                    } finally {
+                        unlock(cacheKey, token);
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warn("refresh cache error, cache: {}, key: {}", getName(), cacheKey, e);
+            } finally {
+                future.complete(SKIPPED);
+                inFlight.remove(cacheKey, future);
+            }
+        };
+        try {
+            refreshExecutor.execute(refresh);
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(cacheKey, future);
+            future.complete(SKIPPED);
+        }
+    }
+
+    private Object join(CompletableFuture<Object> future, Object key, String cacheKey, Callable<?> valueLoader) {
+        Object value;
+        try {
+            // 回源方最多持有锁 lockTimeout, 超过后不再等待, 自己回源
+            value = future.get(protection.getLockTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("wait for cache load timeout, cache: {}, key: {}", getName(), cacheKey);
+            return loadAndPut(key, valueLoader);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+        return value == SKIPPED ? load(key, cacheKey, valueLoader) : value;
+    }
+
+    /**
+     * XFetch: now - delta * beta * ln(random) >= expireAt 时提前刷新
+     */
+    private boolean needsRefresh(CacheEnvelope envelope, long now) {
+        if (now >= envelope.getExpireAt()) {
+            return true;
+        }
+        if (protection.getBeta() <= 0 || envelope.getDelta() <= 0) {
+            return false;
+        }
+        double gap = -envelope.getDelta() * protection.getBeta() * Math.log(ThreadLocalRandom.current().nextDouble());
+        return now + gap >= envelope.getExpireAt();
+    }
+
+    private Object wrap(Object value, long delta) {
+        if (timeToLive == null) {
+            return value;
+        }
+        return new CacheEnvelope(value, delta, System.currentTimeMillis() + timeToLive.toMillis());
+    }
+
+    private static Object unwrap(Object value) {
+        return value instanceof CacheEnvelope ? ((CacheEnvelope) value).getValue() : value;
+    }
+
+    private String lockKey(String cacheKey) {
+        return getName() + "::" + cacheKey + "::lock";
+    }
+
+    private boolean tryLock(String cacheKey, String token) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue()
+                    .setIfAbsent(lockKey(cacheKey), token, protection.getLockTimeout()));
+        } catch (Exception e) {
+            // redis 异常时降级为直接回源
+            LOGGER.warn("acquire cache lock error, cache: {}, key: {}", getName(), cacheKey, e);
+            return true;
+        }
+    }
+
+    private void unlock(String cacheKey, String token) {
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey(cacheKey)), token);
+        } catch (Exception e) {
+            LOGGER.warn("release cache lock error, cache: {}, key: {}", getName(), cacheKey, e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.barry.common.spring.config.redis;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>支持击穿保护的 RedisCacheManager</p>
+ * <p>
+ * 对 {@link RedisOverdueTimeProperties#getProtection()} 中配置的缓存, 使用 {@link ProtectedRedisCache} 包装,
+ * 其它缓存与 {@link RedisCacheManager} 完全一致.
+ * </p>
+ *
+ * @author barry chen
+ */
+public class ProtectedRedisCacheManager extends RedisCacheManager implements DisposableBean {
+
+    private final StringRedisTemplate redisTemplate;
+    private final Map<String, RedisOverdueTimeProperties.Protection> protections;
+    private final Map<String, Duration> expires;
+    private final Duration defaultTimeToLive;
+    /**
+     * 后台刷新线程池, 队列满时拒绝, 由 {@link ProtectedRedisCache} 放弃本次刷新并清理单飞记录, 由后续调用再次触发
+     */
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(1, 4, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000),
+            new ThreadFactoryBuilder().setNameFormat("cache-refresh-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    /**
+     * @param cacheWriter                 redis 读写
+     * @param defaultCacheConfiguration   默认缓存配置
+     * @param initialCacheConfigurations  每个缓存的配置
+     * @param redisTemplate               用于回源锁
+     * @param protections                 击穿保护配置, key 为缓存名称
+     * @param expires                     每个缓存的逻辑 ttl
+     * @param defaultTimeToLive           未单独配置 ttl 的缓存的逻辑 ttl, 可以为 null
+     */
+    public ProtectedRedisCacheManager(RedisCacheWriter cacheWriter, RedisCacheConfiguration defaultCacheConfiguration,
+            Map<String, RedisCacheConfiguration> initialCacheConfigurations, StringRedisTemplate redisTemplate,
+            Map<String, RedisOverdueTimeProperties.Protection> protections, Map<String, Duration> expires,
+            Duration defaultTimeToLive) {
+        super(cacheWriter, defaultCacheConfiguration, initialCacheConfigurations);
+        this.redisTemplate = redisTemplate;
+        this.protections = protections;
+        this.expires = expires;
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    @Override
+    protected Cache decorateCache(Cache cache) {
+        Cache decorated = super.decorateCache(cache);
+        RedisOverdueTimeProperties.Protection protection = protections.get(cache.getName());
+        if (protection == null) {
+            return decorated;
+        }
+        return new ProtectedRedisCache(decorated, redisTemplate, protection,
+                expires.getOrDefault(cache.getName(), defaultTimeToLive), refreshExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdown();
+    }
+}
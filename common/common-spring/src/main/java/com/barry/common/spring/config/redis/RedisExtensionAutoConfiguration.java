@@ -1,10 +1,11 @@
 package com.barry.common.spring.config.redis;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
+import com.barry.common.core.util.ShardingCheckpointStore;
+import com.google.common.collect.Maps;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
@@ -16,7 +17,7 @@ import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -40,6 +41,10 @@ public class RedisExtensionAutoConfiguration {
      * redis
      */
     public static final String REDIS_CACHE_MANAGER = "redisCacheManager";
+    /**
+     * redisTemplate 和缓存共用的值序列化器, 定义同名的 {@code RedisSerializer<Object>} bean 可以替换默认的 {@link CompactRedisSerializer}
+     */
+    public static final String REDIS_VALUE_SERIALIZER = "redisValueSerializer";
 
 
     @Autowired
@@ -52,14 +57,14 @@ public class RedisExtensionAutoConfiguration {
      * Create at February 18, 2019 at 15:59:19 GMT+8
      */
     @Bean(name = "redisTemplate")
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
-        ObjectMapper objectMapper = new RedisObjectMapper();
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
+            @Qualifier(REDIS_VALUE_SERIALIZER) RedisSerializer<Object> valueSerializer) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         redisTemplate.setKeySerializer(keySerializer());
         redisTemplate.setHashKeySerializer(keySerializer());
-        redisTemplate.setValueSerializer(valueSerializer(objectMapper));
-        redisTemplate.setHashValueSerializer(valueSerializer(objectMapper));
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
         redisTemplate.setEnableTransactionSupport(false);
         redisTemplate.afterPropertiesSet();
         return redisTemplate;
@@ -74,9 +79,8 @@ public class RedisExtensionAutoConfiguration {
     @Bean(REDIS_CACHE_MANAGER)
     @Primary
     public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
-            CacheProperties cacheProperties) {
+            CacheProperties cacheProperties, @Qualifier(REDIS_VALUE_SERIALIZER) RedisSerializer<Object> valueSerializer) {
 
-        ObjectMapper objectMapper = new RedisObjectMapper();
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig();
 
         if (cacheProperties != null && cacheProperties.getRedis() != null) {
@@ -87,23 +91,25 @@ public class RedisExtensionAutoConfiguration {
         }
 
         config = config.serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(keySerializer()))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
-                        valueSerializer(objectMapper)));
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(valueSerializer));
 
         RedisCacheWriter redisCacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory);
 
-        ImmutableSet.Builder<String> cacheNames = ImmutableSet.builder();
-        ImmutableMap.Builder<String, RedisCacheConfiguration> cacheConfig = ImmutableMap.builder();
+        Map<String, RedisOverdueTimeProperties.Protection> protections = redisProperties.getProtection();
+        Duration defaultTimeToLive = config.getTtl();
+        Map<String, RedisCacheConfiguration> cacheConfig = Maps.newHashMap();
         for (Map.Entry<String, Duration> entry : redisProperties.getExpires().entrySet()) {
-            cacheNames.add(entry.getKey());
             cacheConfig.put(entry.getKey(), config.entryTtl(entry.getValue()));
         }
+        // 开启击穿保护的缓存, redis 中的 ttl 需要加上过期后返回旧值的时长
+        for (Map.Entry<String, RedisOverdueTimeProperties.Protection> entry : protections.entrySet()) {
+            Duration timeToLive = redisProperties.getExpires().getOrDefault(entry.getKey(), defaultTimeToLive);
+            cacheConfig.put(entry.getKey(), config.entryTtl(entry.getValue().redisTimeToLive(timeToLive)));
+        }
 
-        return RedisCacheManager.builder(redisCacheWriter)
-                .cacheDefaults(config)
-                .initialCacheNames(cacheNames.build())
-                .withInitialCacheConfigurations(cacheConfig.build())
-                .build();
+        return new ProtectedRedisCacheManager(redisCacheWriter, config, cacheConfig,
+                new StringRedisTemplate(redisConnectionFactory), protections, redisProperties.getExpires(),
+                defaultTimeToLive);
     }
 
     @Bean
@@ -111,11 +117,28 @@ public class RedisExtensionAutoConfiguration {
         return new RedisHelper(redisTemplate);
     }
 
+    /**
+     * 并行分片执行器的进度存储
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public ShardingCheckpointStore shardingCheckpointStore(RedisConnectionFactory redisConnectionFactory) {
+        return new RedisShardingCheckpointStore(new StringRedisTemplate(redisConnectionFactory));
+    }
+
     private RedisSerializer<String> keySerializer() {
         return new StringRedisSerializer();
     }
 
-    private RedisSerializer<Object> valueSerializer(ObjectMapper mapper) {
-        return new GenericJackson2JsonRedisSerializer(mapper);
+    /**
+     * 默认的值序列化器, 格式和压缩由 {@code spring.cache.redis.serializer.*} 配置.
+     * 按名称判断, 其它用途的 RedisSerializer bean(如 StringRedisSerializer)不会替换它
+     */
+    @Bean(REDIS_VALUE_SERIALIZER)
+    @ConditionalOnMissingBean(name = REDIS_VALUE_SERIALIZER)
+    public RedisSerializer<Object> redisValueSerializer() {
+        RedisOverdueTimeProperties.Serializer serializer = redisProperties.getSerializer();
+        return new CompactRedisSerializer(serializer.getFormat(), serializer.getCompression(),
+                serializer.getCompressionThreshold(), new TypeAliasRegistry().registerAll(serializer.getTypeAliases()));
     }
 }
@@ -107,14 +107,47 @@ public final class RedisHelper {
         return redisTemplate.expireAt(key, date);
     }
 
+    /**
+     * 非阻塞删除 key, 内存在 redis 后台线程中回收
+     *
+     * @param key
+     * @return
+     */
+    public Boolean unlink(String key) {
+        return redisTemplate.unlink(key);
+    }
+
+    /**
+     * 批量非阻塞删除 key
+     *
+     * @param keys
+     * @return
+     */
+    public Long unlink(Collection<String> keys) {
+        return redisTemplate.unlink(keys);
+    }
+
     /**
      * 查找匹配的key
+     * <p>
+     * 通过 SCAN 遍历, 不会像 KEYS 一样阻塞 redis. 会把所有匹配的 key 加载到内存,
+     * 结果集较大时请使用 {@link #scan(String)} 惰性遍历.
      *
      * @param pattern
      * @return
      */
     public Set<String> keys(String pattern) {
-        return redisTemplate.keys(pattern);
+        return scan(pattern).toSet();
+    }
+
+    /**
+     * 通过 SCAN 惰性遍历匹配的 key
+     *
+     * @param pattern
+     * @return RedisKeyScanner
+     */
+    public RedisKeyScanner scan(String pattern) {
+        return new RedisKeyScanner(redisTemplate, pattern);
     }
 
     /**
@@ -1751,6 +1784,25 @@ public final class RedisHelper {
         return null;
     }
 
+    /**
+     * 开启管道批量操作, 每批发送 {@link RedisPipeline#DEFAULT_BATCH_SIZE} 个命令
+     *
+     * @return RedisPipeline
+     */
+    public RedisPipeline pipeline() {
+        return pipeline(RedisPipeline.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * 开启管道批量操作
+     *
+     * @param batchSize 每批通过管道发送的命令数量
+     * @return RedisPipeline
+     */
+    public RedisPipeline pipeline(int batchSize) {
+        return new RedisPipeline(redisTemplate, batchSize);
+    }
+
     private <T> T apply(Object e) {
         T r = null;
         if (e != null) {
@@ -0,0 +1,307 @@
+package com.barry.common.spring.config.redis;
+
+import com.barry.common.core.util.Assert;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>基于 SCAN 游标的 key 遍历器</p>
+ * <p>
+ * 与 KEYS 不同, SCAN 每次只遍历一小部分 keyspace, 不会长时间阻塞 redis. 遍历是惰性的,
+ * 内存中最多只保留一批(batchSize)key. 集群模式下依次遍历每个 master 节点.
+ * </p>
+ * <pre>
+ * {@code
+ * // 以500个为一批, 通过 UNLINK 删除所有匹配的 key
+ * long deleted = redisHelper.scan("order:cache:*").count(1000).batchSize(500).unlink();
+ *
+ * // 只处理 hash 类型的 key
+ * try (Stream<String> keys = redisHelper.scan("user:*").type(DataType.HASH).stream()) {
+ *     keys.forEach(...);
+ * }
+ * }
+ * </pre>
+ * 注意: SCAN 可能返回重复的 key, 调用方需要保证处理逻辑幂等.
+ *
+ * @author barry chen
+ */
+public final class RedisKeyScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisKeyScanner.class);
+
+    /**
+     * 默认每次 SCAN 的 count 提示值
+     */
+    public static final long DEFAULT_COUNT = 1000L;
+    /**
+     * 默认每批回调的 key 数量
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final String pattern;
+    private long count = DEFAULT_COUNT;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private DataType type;
+
+    RedisKeyScanner(RedisTemplate<String, Object> redisTemplate, String pattern) {
+        Assert.check(StringUtils.isNotBlank(pattern), "pattern is blank.");
+        this.redisTemplate = redisTemplate;
+        this.pattern = pattern;
+    }
+
+    /**
+     * SCAN 的 count 提示值, 值越大单次往返遍历的 slot 越多, 但单次阻塞时间也越长
+     */
+    public RedisKeyScanner count(long count) {
+        Assert.check(count > 0, "count must be greater than 0.");
+        this.count = count;
+        return this;
+    }
+
+    /**
+     * 每批处理的 key 数量
+     */
+    public RedisKeyScanner batchSize(int batchSize) {
+        Assert.check(batchSize > 0, "batchSize must be greater than 0.");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 只返回指定类型的 key. 每批 key 通过一次管道 TYPE 命令过滤, 集群模式见 {@link ClusterKeyTypes}.
+     */
+    public RedisKeyScanner type(DataType type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * 按批回调匹配的 key
+     *
+     * @param consumer 批处理函数
+     * @return 处理的 key 总数
+     */
+    public long forEachBatch(Consumer<List<String>> consumer) {
+        long total = 0;
+        try (BatchIterator iterator = new BatchIterator()) {
+            while (iterator.hasNext()) {
+                List<String> batch = iterator.next();
+                consumer.accept(batch);
+                total += batch.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 通过 UNLINK 按批删除所有匹配的 key, UNLINK 在 redis 后台线程中回收内存
+     *
+     * @return 删除的 key 数量
+     */
+    public long unlink() {
+        long[] deleted = {0};
+        forEachBatch(batch -> {
+            Long r = redisTemplate.unlink(batch);
+            deleted[0] += r == null ? 0 : r;
+        });
+        return deleted[0];
+    }
+
+    /**
+     * 惰性遍历所有匹配的 key. 使用完毕后需要关闭 Stream 以释放游标和连接, 完整遍历后会自动释放.
+     *
+     * @return Stream
+     */
+    public Stream<String> stream() {
+        BatchIterator batches = new BatchIterator();
+        Iterator<String> keys = new Iterator<String>() {
+            private Iterator<String> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (!batches.hasNext()) {
+                        return false;
+                    }
+                    current = batches.next().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(keys, Spliterator.NONNULL), false)
+                .onClose(batches::close);
+    }
+
+    /**
+     * 收集所有匹配的 key, 仅适用于结果集较小的场景
+     *
+     * @return key集合
+     */
+    public Set<String> toSet() {
+        Set<String> keys = Sets.newHashSet();
+        forEachBatch(keys::addAll);
+        return keys;
+    }
+
+    private ScanOptions scanOptions() {
+        return ScanOptions.scanOptions().match(pattern).count(count).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<String> keySerializer() {
+        return (RedisSerializer<String>) redisTemplate.getKeySerializer();
+    }
+
+    /**
+     * 按批读取游标, 单机模式只有一个游标, 集群模式每个 master 节点一个游标
+     */
+    private final class BatchIterator implements Iterator<List<String>>, Closeable {
+
+        private final Deque<RedisClusterNode> pendingNodes = new ArrayDeque<>();
+        private final boolean cluster;
+        private Cursor<byte[]> cursor;
+        private List<String> nextBatch;
+        private boolean closed;
+
+        BatchIterator() {
+            List<RedisClusterNode> masters = redisTemplate.execute((RedisCallback<List<RedisClusterNode>>) connection ->
+                    connection instanceof RedisClusterConnection
+                            ? Lists.newArrayList(((RedisClusterConnection) connection).clusterGetNodes())
+                            .stream().filter(RedisClusterNode::isMaster).collect(Collectors.toList())
+                            : null);
+            cluster = masters != null;
+            if (!cluster) {
+                cursor = redisTemplate.executeWithStickyConnection(connection -> connection.scan(scanOptions()));
+            } else {
+                pendingNodes.addAll(masters);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextBatch == null && !closed) {
+                List<byte[]> raw = readRaw();
+                if (raw.isEmpty()) {
+                    close();
+                    break;
+                }
+                List<String> batch = filterByType(raw.stream().map(keySerializer()::deserialize).collect(Collectors.toList()));
+                if (!batch.isEmpty()) {
+                    nextBatch = batch;
+                }
+            }
+            return nextBatch != null;
+        }
+
+        @Override
+        public List<String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> batch = nextBatch;
+            nextBatch = null;
+            return batch;
+        }
+
+        private List<byte[]> readRaw() {
+            List<byte[]> raw = Lists.newArrayListWithCapacity(batchSize);
+            while (raw.size() < batchSize) {
+                if (cursor == null || !cursor.hasNext()) {
+                    closeCursor();
+                    RedisClusterNode node = pendingNodes.poll();
+                    if (node == null) {
+                        break;
+                    }
+                    cursor = redisTemplate.executeWithStickyConnection(connection ->
+                            ((RedisClusterConnection) connection).scan(node, scanOptions()));
+                    continue;
+                }
+                raw.add(cursor.next());
+            }
+            return raw;
+        }
+
+        private List<String> filterByType(List<String> keys) {
+            if (type == null) {
+                return keys;
+            }
+            RedisSerializer<String> serializer = keySerializer();
+            List<?> types;
+            if (cluster) {
+                // 集群连接不支持管道, 通过异步命令批量查询
+                List<byte[]> rawKeys = keys.stream().map(serializer::serialize).collect(Collectors.toList());
+                types = redisTemplate.execute((RedisCallback<List<DataType>>) connection -> ClusterKeyTypes.types(connection, rawKeys));
+            } else {
+                types = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (String key : keys) {
+                        connection.type(serializer.serialize(key));
+                    }
+                    return null;
+                });
+            }
+            List<String> result = Lists.newArrayListWithCapacity(keys.size());
+            for (int i = 0; i < keys.size() && i < types.size(); i++) {
+                if (type.equals(types.get(i))) {
+                    result.add(keys.get(i));
+                }
+            }
+            return result;
+        }
+
+        private void closeCursor() {
+            if (cursor != null && !cursor.isClosed()) {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    LOGGER.warn("close redis scan cursor error", e);
+                }
+            }
+            cursor = null;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pendingNodes.clear();
+                closeCursor();
+            }
+        }
+    }
+}
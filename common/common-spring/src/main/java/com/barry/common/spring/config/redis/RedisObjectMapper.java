@@ -2,6 +2,7 @@ package com.barry.common.spring.config.redis;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
@@ -19,7 +20,14 @@ public class RedisObjectMapper extends ObjectMapper {
     private static final long serialVersionUID = -696530460999764926L;
 
     public RedisObjectMapper() {
-        super();
+        this(null);
+    }
+
+    /**
+     * @param factory 指定数据格式, 如 Smile, 为 null 时使用 json
+     */
+    public RedisObjectMapper(JsonFactory factory) {
+        super(factory);
         // 去掉各种@JsonSerialize注解的解析
         this.configure(MapperFeature.USE_ANNOTATIONS, false);
         // 只针对非空的值进行序列化
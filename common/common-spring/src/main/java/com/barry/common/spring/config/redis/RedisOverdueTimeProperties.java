@@ -15,4 +15,88 @@ public class RedisOverdueTimeProperties {
 
     private Boolean enabled;
     private Map<String, Duration> expires = Maps.newHashMap();
+    /**
+     * 二级缓存(本地 Caffeine + Redis)配置
+     */
+    private NearCache nearCache = new NearCache();
+    /**
+     * 缓存击穿保护配置, key 为缓存名称, 只对配置了的缓存生效
+     */
+    private Map<String, Protection> protection = Maps.newHashMap();
+    /**
+     * redisTemplate 和缓存的值序列化配置
+     */
+    private Serializer serializer = new Serializer();
+
+    @Data
+    public static class NearCache {
+
+        /**
+         * 是否启用二级缓存
+         */
+        private boolean enabled;
+        /**
+         * 每个缓存在本地最多保留的条目数
+         */
+        private long maximumSize = 10000;
+        /**
+         * 本地缓存的最长存活时间, 实际取值为该值与缓存在 redis 中 ttl 的较小者.
+         * 失效广播丢失时, 本地缓存最多不一致这么长时间.
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+        /**
+         * 失效广播使用的 redis channel
+         */
+        private String channel = "near-cache:invalidation";
+    }
+
+    @Data
+    public static class Protection {
+
+        /**
+         * 跨节点回源锁的超时时间, 也是未拿到锁的节点等待其它节点回源结果的最长时间
+         */
+        private Duration lockTimeout = Duration.ofSeconds(5);
+        /**
+         * 提前刷新系数, 越大越倾向于在过期前刷新, 小于等于0表示关闭提前刷新
+         */
+        private double beta = 1.0;
+        /**
+         * 逻辑过期后仍可返回旧值的时长, 期间由一个调用方在后台刷新. 为空表示关闭
+         */
+        private Duration staleWhileRevalidate;
+
+        /**
+         * 缓存在 redis 中的实际 ttl, 为逻辑 ttl 加上返回旧值的时长
+         *
+         * @param timeToLive 逻辑 ttl
+         */
+        public Duration redisTimeToLive(Duration timeToLive) {
+            if (timeToLive == null || timeToLive.isZero() || staleWhileRevalidate == null) {
+                return timeToLive;
+            }
+            return timeToLive.plus(staleWhileRevalidate);
+        }
+    }
+
+    @Data
+    public static class Serializer {
+
+        /**
+         * 写入格式, 读取时 json 和 smile 都支持. 灰度上线时先保持 json, 所有节点升级后再切换为 smile
+         */
+        private CompactRedisSerializer.Format format = CompactRedisSerializer.Format.JSON;
+        /**
+         * 压缩算法
+         */
+        private CompactRedisSerializer.Compression compression = CompactRedisSerializer.Compression.NONE;
+        /**
+         * 序列化后超过该字节数才压缩
+         */
+        private int compressionThreshold = 4096;
+        /**
+         * smile 格式的类型别名, key为别名, value为完整类名. 所有节点必须一致, 已使用的别名不能修改含义
+         */
+        private Map<String, String> typeAliases = Maps.newHashMap();
+    }
 }
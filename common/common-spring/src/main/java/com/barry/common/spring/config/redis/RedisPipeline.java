@@ -0,0 +1,257 @@
+package com.barry.common.spring.config.redis;
+
+import com.barry.common.core.util.Assert;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>Redis 管道批量操作</p>
+ * <p>
+ * 先将多个命令排队, 调用 {@link #execute()} 时按 batchSize 分批通过 {@link RedisTemplate#executePipelined(SessionCallback)} 发送,
+ * 每一批只产生一次网络往返. 结果的序列化方式与 redisTemplate 一致, 并按排队顺序返回.
+ * </p>
+ * <pre>
+ * {@code
+ * RedisPipeline.Results results = redisHelper.pipeline()
+ *         .hPut("user:1", "name", "barry")
+ *         .expire("user:1", 1, TimeUnit.HOURS)
+ *         .get("counter")
+ *         .execute();
+ * Long counter = results.get(2, Long.class);
+ * }
+ * </pre>
+ * 注意: 该类不是线程安全的, 每次批量操作都应通过 {@link RedisHelper#pipeline()} 获取新实例.
+ *
+ * @author barry chen
+ */
+public final class RedisPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisPipeline.class);
+
+    /**
+     * 默认每批发送的命令数量
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final int batchSize;
+    private final List<Consumer<RedisOperations<String, Object>>> commands = Lists.newArrayList();
+
+    RedisPipeline(RedisTemplate<String, Object> redisTemplate, int batchSize) {
+        Assert.check(batchSize > 0, "batchSize must be greater than 0.");
+        this.redisTemplate = redisTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /** -------------------key相关操作--------------------- */
+
+    public RedisPipeline delete(String key) {
+        return queue(ops -> ops.delete(key));
+    }
+
+    public RedisPipeline expire(String key, long timeout, TimeUnit unit) {
+        return queue(ops -> ops.expire(key, timeout, unit));
+    }
+
+    public RedisPipeline expireAt(String key, Date date) {
+        return queue(ops -> ops.expireAt(key, date));
+    }
+
+    public RedisPipeline hasKey(String key) {
+        return queue(ops -> ops.hasKey(key));
+    }
+
+    /** -------------------string相关操作--------------------- */
+
+    public RedisPipeline set(String key, Object value) {
+        return queue(ops -> ops.opsForValue().set(key, value));
+    }
+
+    public RedisPipeline set(String key, Object value, long timeout, TimeUnit unit) {
+        return queue(ops -> ops.opsForValue().set(key, value, timeout, unit));
+    }
+
+    public RedisPipeline setIfAbsent(String key, Object value) {
+        return queue(ops -> ops.opsForValue().setIfAbsent(key, value));
+    }
+
+    public RedisPipeline get(String key) {
+        return queue(ops -> ops.opsForValue().get(key));
+    }
+
+    public RedisPipeline increment(String key, long increment) {
+        return queue(ops -> ops.opsForValue().increment(key, increment));
+    }
+
+    /** -------------------hash相关操作------------------------- */
+
+    public RedisPipeline hPut(String key, String hashKey, Object value) {
+        return queue(ops -> ops.opsForHash().put(key, hashKey, value));
+    }
+
+    public RedisPipeline hPutIfAbsent(String key, String hashKey, Object value) {
+        return queue(ops -> ops.opsForHash().putIfAbsent(key, hashKey, value));
+    }
+
+    public RedisPipeline hGet(String key, String field) {
+        return queue(ops -> ops.opsForHash().get(key, field));
+    }
+
+    public RedisPipeline hDelete(String key, Object... fields) {
+        return queue(ops -> ops.opsForHash().delete(key, fields));
+    }
+
+    public RedisPipeline hIncrBy(String key, Object field, long increment) {
+        return queue(ops -> ops.opsForHash().increment(key, field, increment));
+    }
+
+    /** ------------------------list相关操作---------------------------- */
+
+    public RedisPipeline lLeftPush(String key, Object value) {
+        return queue(ops -> ops.opsForList().leftPush(key, value));
+    }
+
+    public RedisPipeline lRightPush(String key, Object value) {
+        return queue(ops -> ops.opsForList().rightPush(key, value));
+    }
+
+    public RedisPipeline lRightPushAll(String key, Collection<?> values) {
+        return queue(ops -> ops.opsForList().rightPushAll(key, values.toArray()));
+    }
+
+    /** --------------------set相关操作-------------------------- */
+
+    public RedisPipeline sAdd(String key, Object... values) {
+        return queue(ops -> ops.opsForSet().add(key, values));
+    }
+
+    public RedisPipeline sRemove(String key, Object... values) {
+        return queue(ops -> ops.opsForSet().remove(key, values));
+    }
+
+    /**------------------zSet相关操作--------------------------------*/
+
+    public RedisPipeline zAdd(String key, Object value, double score) {
+        return queue(ops -> ops.opsForZSet().add(key, value, score));
+    }
+
+    public RedisPipeline zRemove(String key, Object... values) {
+        return queue(ops -> ops.opsForZSet().remove(key, values));
+    }
+
+    public RedisPipeline zIncrementScore(String key, Object value, double delta) {
+        return queue(ops -> ops.opsForZSet().incrementScore(key, value, delta));
+    }
+
+    /**
+     * 已排队的命令数量
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * 按 batchSize 分批执行所有已排队的命令, 执行后清空队列
+     *
+     * @return 按排队顺序排列的结果
+     */
+    public Results execute() {
+        if (commands.isEmpty()) {
+            return new Results(Collections.emptyList(), redisTemplate.getValueSerializer());
+        }
+        List<Object> results = Lists.newArrayListWithCapacity(commands.size());
+        for (List<Consumer<RedisOperations<String, Object>>> batch : Lists.partition(commands, batchSize)) {
+            List<Object> batchResults = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    batch.forEach(command -> command.accept(ops));
+                    return null;
+                }
+            });
+            if (batchResults.size() != batch.size()) {
+                LOGGER.warn("redis pipeline result size {} not equals command size {}", batchResults.size(), batch.size());
+            }
+            results.addAll(batchResults);
+        }
+        commands.clear();
+        return new Results(results, redisTemplate.getValueSerializer());
+    }
+
+    private RedisPipeline queue(Consumer<RedisOperations<String, Object>> command) {
+        commands.add(command);
+        return this;
+    }
+
+    /**
+     * <p>管道执行结果, 与命令的排队顺序一一对应</p>
+     */
+    public static final class Results {
+
+        private static final ConversionService CONVERSION_SERVICE = DefaultConversionService.getSharedInstance();
+
+        private final List<Object> values;
+        private final RedisSerializer<?> valueSerializer;
+
+        Results(List<Object> values, RedisSerializer<?> valueSerializer) {
+            this.values = values;
+            this.valueSerializer = valueSerializer;
+        }
+
+        /**
+         * 获取第 index 个命令的结果
+         * <p>
+         * 未反序列化的 byte[] 先通过 redisTemplate 的 valueSerializer 反序列化, 类型不一致时尝试转换,
+         * 例如 json 反序列化得到的 Integer 转为 Long, 无法转换时抛出 {@link ClassCastException}.
+         *
+         * @param index 命令排队时的顺序, 从0开始
+         * @param clazz 结果类型
+         * @return 结果
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(int index, Class<T> clazz) {
+            Object r = values.get(index);
+            Class<T> type = (Class<T>) ClassUtils.resolvePrimitiveIfNecessary(clazz);
+            if (r instanceof byte[] && !type.isInstance(r) && valueSerializer != null) {
+                r = valueSerializer.deserialize((byte[]) r);
+            }
+            if (r == null || type.isInstance(r)) {
+                return type.cast(r);
+            }
+            if (CONVERSION_SERVICE.canConvert(r.getClass(), type)) {
+                return CONVERSION_SERVICE.convert(r, type);
+            }
+            throw new ClassCastException(String.format("pipeline result %d of type %s can't be converted to %s",
+                    index, r.getClass().getName(), clazz.getName()));
+        }
+
+        public Object get(int index) {
+            return values.get(index);
+        }
+
+        public List<Object> list() {
+            return Collections.unmodifiableList(values);
+        }
+
+        public int size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.barry.common.spring.config.redis;
+
+import com.barry.common.core.util.ShardingCheckpointStore;
+import com.google.common.collect.Maps;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * <p>基于 redis hash 的分片执行进度存储</p>
+ * 每个任务一个 hash {@code SHARDING_CHECKPOINT_<jobKey>}, field 为执行器的进度字段, value 为已完成的位置.
+ * 每次保存都会刷新过期时间, 避免中断后不再执行的任务残留进度.
+ *
+ * @author barry chen
+ */
+public class RedisShardingCheckpointStore implements ShardingCheckpointStore {
+
+    private static final String CHECKPOINT_PREFIX = "SHARDING_CHECKPOINT_";
+
+    /**
+     * 默认进度保留时间
+     */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofDays(7);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration timeToLive;
+
+    public RedisShardingCheckpointStore(StringRedisTemplate redisTemplate) {
+        this(redisTemplate, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public RedisShardingCheckpointStore(StringRedisTemplate redisTemplate, Duration timeToLive) {
+        this.redisTemplate = redisTemplate;
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public Map<String, Long> load(String jobKey) {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(CHECKPOINT_PREFIX + jobKey);
+        Map<String, Long> checkpoints = Maps.newHashMapWithExpectedSize(entries.size());
+        entries.forEach((field, value) -> checkpoints.put((String) field, Long.valueOf((String) value)));
+        return checkpoints;
+    }
+
+    @Override
+    public void save(String jobKey, String field, long value) {
+        String key = CHECKPOINT_PREFIX + jobKey;
+        redisTemplate.opsForHash().put(key, field, String.valueOf(value));
+        redisTemplate.expire(key, timeToLive);
+    }
+
+    @Override
+    public void clear(String jobKey) {
+        redisTemplate.delete(CHECKPOINT_PREFIX + jobKey);
+    }
+}
@@ -0,0 +1,31 @@
+package com.barry.common.spring.config.redis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+
+/**
+ * <p>Smile 格式的 ObjectMapper</p>
+ * 单独成类, 未引入 jackson-dataformat-smile 时不会加载.
+ *
+ * @author barry chen
+ */
+final class SmileObjectMappers {
+
+    private SmileObjectMappers() {
+    }
+
+    /**
+     * 创建不写 Smile 头部的 ObjectMapper, 注册过别名的类型只写入别名
+     */
+    static ObjectMapper create(TypeAliasRegistry registry) {
+        SmileFactory factory = SmileFactory.builder()
+                .disable(SmileGenerator.Feature.WRITE_HEADER)
+                .disable(SmileParser.Feature.REQUIRE_HEADER)
+                .build();
+        ObjectMapper mapper = new RedisObjectMapper(factory);
+        mapper.setDefaultTyping(new AliasTypeResolverBuilder(registry));
+        return mapper;
+    }
+}
@@ -0,0 +1,89 @@
+package com.barry.common.spring.config.redis;
+
+import com.barry.common.core.util.Assert;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import org.springframework.util.ClassUtils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>类型别名注册表</p>
+ * <p>
+ * 紧凑格式序列化时, 注册过的类型只写入短别名, 而不是完整类名. 别名写入后就会持久化在 redis 中,
+ * 因此所有节点的别名配置必须一致, 且已经使用的别名不能修改含义.
+ * </p>
+ *
+ * @author barry chen
+ */
+public class TypeAliasRegistry {
+
+    private final BiMap<String, Class<?>> aliases = HashBiMap.create();
+
+    public TypeAliasRegistry() {
+        register("ce", CacheEnvelope.class);
+        register("nci", NearCacheManager.Invalidation.class);
+        register("al", ArrayList.class);
+        register("ll", LinkedList.class);
+        register("hm", HashMap.class);
+        register("lhm", LinkedHashMap.class);
+        register("tm", TreeMap.class);
+        register("hs", HashSet.class);
+        register("lhs", LinkedHashSet.class);
+        register("d", Date.class);
+        register("ts", Timestamp.class);
+        register("bd", BigDecimal.class);
+    }
+
+    /**
+     * 注册别名
+     *
+     * @param alias 别名
+     * @param type  类型
+     */
+    public TypeAliasRegistry register(String alias, Class<?> type) {
+        Assert.checkNotBlank(alias, "alias is blank.");
+        Class<?> existing = aliases.get(alias);
+        if (existing == type) {
+            return this;
+        }
+        Assert.check(existing == null, "alias " + alias + " already registered for " + existing);
+        Assert.check(!aliases.containsValue(type), "type " + type.getName() + " already registered");
+        aliases.put(alias, type);
+        return this;
+    }
+
+    /**
+     * 批量注册别名
+     *
+     * @param aliases key为别名, value为完整类名
+     */
+    public TypeAliasRegistry registerAll(Map<String, String> aliases) {
+        aliases.forEach((alias, className) -> register(alias, ClassUtils.resolveClassName(className, null)));
+        return this;
+    }
+
+    /**
+     * 类型的别名, 未注册时返回 null
+     */
+    public String aliasOf(Class<?> type) {
+        return aliases.inverse().get(type);
+    }
+
+    /**
+     * 别名对应的类型, 未注册时返回 null
+     */
+    public Class<?> typeOf(String alias) {
+        return aliases.get(alias);
+    }
+}
@@ -0,0 +1,117 @@
+package com.barry.common.spring.config.redis;
+
+import com.google.common.collect.Lists;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author barry chen
+ */
+public class ClusterKeyTypesTest {
+
+    private final List<String> calls = Lists.newArrayList();
+
+    /**
+     * 已完成的 RedisFuture, 等待时记录调用
+     */
+    private class DoneFuture extends CompletableFuture<String> implements RedisFuture<String> {
+
+        @Override
+        public String getError() {
+            return null;
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) {
+            calls.add("await");
+            return true;
+        }
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private RedisConnection connection(Object nativeConnection) {
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RedisConnection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getNativeConnection":
+                            return nativeConnection;
+                        case "type":
+                            calls.add("type");
+                            return new String((byte[]) args[0], StandardCharsets.UTF_8).startsWith("h") ? DataType.HASH : DataType.STRING;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private RedisAdvancedClusterAsyncCommands<?, ?> lettuce() {
+        StatefulRedisClusterConnection<?, ?> stateful = (StatefulRedisClusterConnection<?, ?>) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{StatefulRedisClusterConnection.class}, (proxy, method, args) -> {
+                    if ("getTimeout".equals(method.getName())) {
+                        return Duration.ofSeconds(1);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return (RedisAdvancedClusterAsyncCommands<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedisAdvancedClusterAsyncCommands.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getStatefulConnection":
+                            return stateful;
+                        case "type":
+                            calls.add("type");
+                            String key = new String((byte[]) args[0], StandardCharsets.UTF_8);
+                            DoneFuture future = new DoneFuture();
+                            if (key.startsWith("bad")) {
+                                future.completeExceptionally(new RedisCommandExecutionException("ERR bad key"));
+                            } else {
+                                future.complete(key.startsWith("h") ? "hash" : "string");
+                            }
+                            return future;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    public void lettuceTest() {
+        List<DataType> types = ClusterKeyTypes.types(connection(lettuce()), Lists.newArrayList(key("h1"), key("s1"), key("h2")));
+        Assert.assertEquals(Lists.newArrayList(DataType.HASH, DataType.STRING, DataType.HASH), types);
+        // 先发出所有命令再等待结果
+        Assert.assertEquals(Lists.newArrayList("type", "type", "type", "await", "await", "await"), calls);
+    }
+
+    @Test
+    public void lettuceErrorTest() {
+        try {
+            ClusterKeyTypes.types(connection(lettuce()), Lists.newArrayList(key("h1"), key("bad")));
+            Assert.fail();
+        } catch (RedisSystemException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("ERR bad key"));
+        }
+    }
+
+    @Test
+    public void fallbackTest() {
+        List<DataType> types = ClusterKeyTypes.types(connection(new Object()), Lists.newArrayList(key("h1"), key("s1")));
+        Assert.assertEquals(Lists.newArrayList(DataType.HASH, DataType.STRING), types);
+        Assert.assertEquals(Lists.newArrayList("type", "type"), calls);
+    }
+}
@@ -0,0 +1,168 @@
+package com.barry.common.spring.config.redis;
+
+import lombok.Data;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author barry chen
+ */
+public class CompactRedisSerializerTest {
+
+    private static final int THRESHOLD = 256;
+    /**
+     * 原有的 json 格式
+     */
+    private static final RedisSerializer<Object> LEGACY = new GenericJackson2JsonRedisSerializer(new RedisObjectMapper());
+
+    @Data
+    public static class Order {
+        private Long id;
+        private String name;
+        private BigDecimal amount;
+        private Date createTime;
+        private List<String> tags;
+    }
+
+    private static CompactRedisSerializer serializer(CompactRedisSerializer.Format format, CompactRedisSerializer.Compression compression) {
+        return new CompactRedisSerializer(format, compression, THRESHOLD, new TypeAliasRegistry());
+    }
+
+    private static Order order(int tagCount) {
+        Order order = new Order();
+        order.setId(1L);
+        order.setName("订单");
+        order.setAmount(new BigDecimal("12.50"));
+        order.setCreateTime(new Date(1_600_000_000_000L));
+        order.setTags(new ArrayList<>());
+        for (int i = 0; i < tagCount; i++) {
+            order.getTags().add("tag-" + i);
+        }
+        return order;
+    }
+
+    private static boolean contains(byte[] bytes, String text) {
+        return new String(bytes, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    @Test
+    public void smileAliasRoundTripTest() {
+        CompactRedisSerializer serializer = serializer(CompactRedisSerializer.Format.SMILE, CompactRedisSerializer.Compression.NONE);
+        Map<String, Object> value = new HashMap<>();
+        value.put("date", new Date(1_600_000_000_000L));
+        value.put("amount", new BigDecimal("12.50"));
+        value.put("list", new ArrayList<>(List.of("a", "b")));
+        CacheEnvelope envelope = new CacheEnvelope(value, 15, 1_600_000_060_000L);
+
+        byte[] bytes = serializer.serialize(envelope);
+        Assert.assertEquals(CompactRedisSerializer.MAGIC, bytes[0]);
+        Assert.assertEquals(CompactRedisSerializer.VERSION, bytes[1]);
+        Assert.assertEquals(2, bytes[2]);
+        // 注册过别名的类型不写完整类名
+        Assert.assertFalse(contains(bytes, "java."));
+        Assert.assertFalse(contains(bytes, "com.barry"));
+        Assert.assertEquals(envelope, serializer.deserialize(bytes));
+
+        NearCacheManager.Invalidation invalidation = new NearCacheManager.Invalidation("i-1", "order", "1");
+        bytes = serializer.serialize(invalidation);
+        Assert.assertFalse(contains(bytes, "com.barry"));
+        Assert.assertEquals(invalidation, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void smileUnregisteredTypeTest() {
+        CompactRedisSerializer serializer = serializer(CompactRedisSerializer.Format.SMILE, CompactRedisSerializer.Compression.NONE);
+        Order order = order(2);
+        byte[] bytes = serializer.serialize(order);
+        // 未注册的类型写入完整类名
+        Assert.assertTrue(contains(bytes, Order.class.getName()));
+        Assert.assertEquals(order, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void jsonCompatibleTest() {
+        Order order = order(2);
+        byte[] legacyBytes = LEGACY.serialize(order);
+
+        // json 格式不压缩时与原有格式完全一致
+        CompactRedisSerializer json = serializer(CompactRedisSerializer.Format.JSON, CompactRedisSerializer.Compression.NONE);
+        Assert.assertArrayEquals(legacyBytes, json.serialize(order));
+        Assert.assertEquals(order, LEGACY.deserialize(json.serialize(order)));
+
+        // 任意格式都能读取原有数据
+        for (CompactRedisSerializer.Format format : CompactRedisSerializer.Format.values()) {
+            for (CompactRedisSerializer.Compression compression : CompactRedisSerializer.Compression.values()) {
+                Assert.assertEquals(order, serializer(format, compression).deserialize(legacyBytes));
+            }
+        }
+    }
+
+    @Test
+    public void lz4ThresholdTest() {
+        CompactRedisSerializer serializer = serializer(CompactRedisSerializer.Format.JSON, CompactRedisSerializer.Compression.LZ4);
+        Order small = order(1);
+        byte[] bytes = serializer.serialize(small);
+        // 低于阈值不压缩, 不写头部
+        Assert.assertTrue(bytes.length < THRESHOLD);
+        Assert.assertEquals('{', bytes[0]);
+        Assert.assertEquals(small, serializer.deserialize(bytes));
+
+        Order large = order(100);
+        bytes = serializer.serialize(large);
+        Assert.assertEquals(CompactRedisSerializer.MAGIC, bytes[0]);
+        Assert.assertEquals(1, bytes[2]);
+        Assert.assertTrue(bytes.length < LEGACY.serialize(large).length);
+        Assert.assertEquals(large, serializer.deserialize(bytes));
+
+        CompactRedisSerializer smile = serializer(CompactRedisSerializer.Format.SMILE, CompactRedisSerializer.Compression.LZ4);
+        bytes = smile.serialize(large);
+        Assert.assertEquals(3, bytes[2]);
+        Assert.assertEquals(large, smile.deserialize(bytes));
+        // 不压缩的节点也能读取压缩的值
+        Assert.assertEquals(large, serializer(CompactRedisSerializer.Format.JSON, CompactRedisSerializer.Compression.NONE).deserialize(bytes));
+    }
+
+    @Test
+    public void unsupportedHeaderTest() {
+        CompactRedisSerializer serializer = serializer(CompactRedisSerializer.Format.SMILE, CompactRedisSerializer.Compression.NONE);
+        byte[] bytes = serializer.serialize(order(1));
+
+        byte[] version = bytes.clone();
+        version[1] = 2;
+        assertUnsupported(serializer, version, "version");
+
+        byte[] flags = bytes.clone();
+        flags[2] = (byte) (flags[2] | 1 << 2);
+        assertUnsupported(serializer, flags, "flags");
+
+        assertUnsupported(serializer, new byte[]{CompactRedisSerializer.MAGIC, CompactRedisSerializer.VERSION}, "version");
+    }
+
+    private static void assertUnsupported(CompactRedisSerializer serializer, byte[] bytes, String message) {
+        try {
+            serializer.deserialize(bytes);
+            Assert.fail();
+        } catch (SerializationException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void nullTest() {
+        CompactRedisSerializer serializer = serializer(CompactRedisSerializer.Format.SMILE, CompactRedisSerializer.Compression.LZ4);
+        Assert.assertEquals(0, serializer.serialize(null).length);
+        Assert.assertNull(serializer.deserialize(new byte[0]));
+        Assert.assertNull(serializer.deserialize(null));
+    }
+}
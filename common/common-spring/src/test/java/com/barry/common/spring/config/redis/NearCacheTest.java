@@ -0,0 +1,174 @@
+package com.barry.common.spring.config.redis;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author barry chen
+ */
+public class NearCacheTest {
+
+    /**
+     * 发出的失效广播
+     */
+    private final List<NearCacheManager.Invalidation> published = Lists.newArrayList();
+
+    private final RedisTemplate<String, Object> redisTemplate = new RedisTemplate<String, Object>() {
+        @Override
+        public void convertAndSend(String channel, Object message) {
+            published.add((NearCacheManager.Invalidation) message);
+        }
+    };
+
+    private final RedisCache redis = new RedisCache();
+    private final GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(new RedisObjectMapper());
+
+    /**
+     * 模拟 redis 的缓存, 记录读取次数, 可以在读取到值之后执行一次 hook
+     */
+    private static class RedisCache extends ConcurrentMapCache {
+        private final AtomicInteger reads = new AtomicInteger();
+        private Runnable afterRead;
+
+        RedisCache() {
+            super("order");
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            reads.incrementAndGet();
+            ValueWrapper wrapper = super.get(key);
+            Runnable hook = afterRead;
+            afterRead = null;
+            if (hook != null) {
+                hook.run();
+            }
+            return wrapper;
+        }
+    }
+
+    private NearCacheManager manager() {
+        redisTemplate.setValueSerializer(serializer);
+        ConcurrentMapCacheManager delegate = new ConcurrentMapCacheManager() {
+            @Override
+            protected Cache createConcurrentMapCache(String name) {
+                return redis;
+            }
+        };
+        return new NearCacheManager(delegate, redisTemplate, new RedisOverdueTimeProperties.NearCache(),
+                Collections.emptyMap(), null);
+    }
+
+    private void receive(NearCacheManager manager, NearCacheManager.Invalidation invalidation) {
+        byte[] body = serializer.serialize(invalidation);
+        manager.onMessage(new DefaultMessage("near-cache:invalidation".getBytes(StandardCharsets.UTF_8), body), null);
+    }
+
+    @Test
+    public void hitTest() {
+        Cache cache = manager().getCache("order");
+        cache.put(1L, "paid");
+        // 写入时同时写入本地缓存, 读取不访问 redis
+        Assert.assertEquals("paid", cache.get(1L).get());
+        Assert.assertEquals("paid", cache.get(1L, String.class));
+        Assert.assertEquals(0, redis.reads.get());
+    }
+
+    @Test
+    public void missFillTest() {
+        Cache cache = manager().getCache("order");
+        redis.put(1L, "paid");
+        redis.put(2L, null);
+        Assert.assertEquals("paid", cache.get(1L).get());
+        Assert.assertEquals(1, redis.reads.get());
+        // 回填后读取本地缓存, null 值也会回填
+        Assert.assertEquals("paid", cache.get(1L).get());
+        Assert.assertNull(cache.get(2L).get());
+        Assert.assertNull(cache.get(2L).get());
+        Assert.assertEquals(2, redis.reads.get());
+        // 不存在的 key 不回填
+        Assert.assertNull(cache.get(3L));
+        Assert.assertNull(cache.get(3L));
+        Assert.assertEquals(4, redis.reads.get());
+    }
+
+    @Test
+    public void evictBroadcastTest() {
+        NearCacheManager manager = manager();
+        Cache cache = manager.getCache("order");
+        cache.put(1L, "paid");
+        cache.evict(1L);
+        cache.clear();
+        Assert.assertEquals(3, published.size());
+        Assert.assertEquals("1", published.get(1).getKey());
+        Assert.assertEquals("order", published.get(1).getCacheName());
+        Assert.assertNull(published.get(2).getKey());
+        Assert.assertEquals(published.get(0).getInstanceId(), published.get(2).getInstanceId());
+        Assert.assertNull(cache.get(1L));
+    }
+
+    @Test
+    public void receiveInvalidationTest() {
+        NearCacheManager manager = manager();
+        Cache cache = manager.getCache("order");
+        cache.put(1L, "paid");
+        cache.put(2L, "paid");
+
+        // 其它节点更新了 redis 并广播失效
+        redis.put(1L, "refunded");
+        receive(manager, new NearCacheManager.Invalidation("other", "order", "1"));
+        Assert.assertEquals("refunded", cache.get(1L).get());
+        Assert.assertEquals("paid", cache.get(2L).get());
+
+        // 自己发出的广播忽略
+        redis.put(2L, "refunded");
+        receive(manager, new NearCacheManager.Invalidation(published.get(0).getInstanceId(), "order", "2"));
+        Assert.assertEquals("paid", cache.get(2L).get());
+
+        receive(manager, new NearCacheManager.Invalidation("other", "order", null));
+        Assert.assertEquals("refunded", cache.get(2L).get());
+    }
+
+    @Test
+    public void fillRaceTest() {
+        NearCacheManager manager = manager();
+        Cache cache = manager.getCache("order");
+        redis.put(1L, "paid");
+        // 读取到旧值后, 回填之前收到了其它节点的失效广播
+        redis.afterRead = () -> {
+            redis.put(1L, "refunded");
+            receive(manager, new NearCacheManager.Invalidation("other", "order", "1"));
+        };
+        Assert.assertEquals("paid", cache.get(1L).get());
+        // 旧值没有回填到本地
+        Assert.assertEquals("refunded", cache.get(1L).get());
+        Assert.assertEquals(2, redis.reads.get());
+        Assert.assertEquals("refunded", cache.get(1L).get());
+        Assert.assertEquals(2, redis.reads.get());
+    }
+
+    @Test
+    public void clearRaceTest() {
+        NearCacheManager manager = manager();
+        Cache cache = manager.getCache("order");
+        redis.put(1L, "paid");
+        redis.afterRead = () -> {
+            redis.put(1L, "refunded");
+            receive(manager, new NearCacheManager.Invalidation("other", "order", null));
+        };
+        Assert.assertEquals("paid", cache.get(1L).get());
+        Assert.assertEquals("refunded", cache.get(1L).get());
+    }
+}
@@ -0,0 +1,84 @@
+package com.barry.common.spring.config.redis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 没有连接的 redisTemplate 获取锁失败时降级为直接回源, 只验证本节点的单飞和后台刷新
+ *
+ * @author barry chen
+ */
+public class ProtectedRedisCacheTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    private static ProtectedRedisCache cache(Executor refreshExecutor) {
+        RedisOverdueTimeProperties.Protection protection = new RedisOverdueTimeProperties.Protection();
+        protection.setBeta(0);
+        protection.setLockTimeout(Duration.ofMillis(200));
+        return new ProtectedRedisCache(new ConcurrentMapCache("test"), new StringRedisTemplate(), protection,
+                Duration.ofMillis(50), refreshExecutor);
+    }
+
+    /**
+     * 放入已经逻辑过期的值, 下一次读取触发后台刷新
+     */
+    private static void putExpired(ProtectedRedisCache cache) throws InterruptedException {
+        cache.put("k", "v1");
+        Thread.sleep(80);
+        Assert.assertEquals("v1", cache.get("k", () -> "refreshed"));
+    }
+
+    private static Object loadWithin(ProtectedRedisCache cache, long millis) throws Exception {
+        return CompletableFuture.supplyAsync(() -> cache.get("k", () -> "v2")).get(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void saturatedPoolTest() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new ThreadPoolExecutor.AbortPolicy());
+        try {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            ProtectedRedisCache cache = cache(executor);
+            putExpired(cache);
+            //刷新被拒绝后不留下单飞记录, 未命中时直接回源
+            cache.evict("k");
+            Assert.assertEquals("v2", loadWithin(cache, 100));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lostRefreshTest() throws Exception {
+        //刷新任务被丢弃, 单飞记录一直存在
+        ProtectedRedisCache cache = cache(runnable -> {
+        });
+        putExpired(cache);
+        cache.evict("k");
+        //等待不超过 lockTimeout, 之后自己回源
+        Assert.assertEquals("v2", loadWithin(cache, 2000));
+    }
+}
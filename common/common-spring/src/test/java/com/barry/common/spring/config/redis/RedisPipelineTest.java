@@ -0,0 +1,32 @@
+package com.barry.common.spring.config.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @author barry chen
+ */
+public class RedisPipelineTest {
+
+    private final RedisPipeline.Results results = new RedisPipeline.Results(
+            Arrays.asList(1, "12", "12".getBytes(StandardCharsets.UTF_8), null, "barry"), new StringRedisSerializer());
+
+    @Test
+    public void convertTest() {
+        Assert.assertEquals(Long.valueOf(1L), results.get(0, Long.class));
+        Assert.assertEquals(Long.valueOf(12L), results.get(1, long.class));
+        Assert.assertEquals("12", results.get(2, String.class));
+        Assert.assertEquals(Integer.valueOf(12), results.get(2, Integer.class));
+        Assert.assertNull(results.get(3, Long.class));
+        Assert.assertEquals("barry", results.get(4, String.class));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void inconvertibleTest() {
+        results.get(0, Runnable.class);
+    }
+}
@@ -1,6 +1,8 @@
 package com.barry.spring.boot.starter.amqp.plus;
 
 import com.barry.common.core.util.UUIDUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.amqp.core.Message;
@@ -19,33 +21,73 @@ import java.util.Date;
 public abstract class AbstractFailMessageProcessor implements IFailMessageProcessor {
     private static final int RETRY_COUNT = 0;
 
+    /**
+     * 紧凑格式, 只保存压缩的 {@link FailMessageEnvelope} 和异常指纹, 不保存 body 字符串, 原消息对象和序列化的原消息
+     */
+    private boolean compact;
+    /**
+     * 紧凑格式下已经生成过完整堆栈的指纹
+     */
+    private final Cache<String, Boolean> tracedFingerprints = CacheBuilder.newBuilder().maximumSize(10_000).build();
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
     @Override
     public void process(Message message, Exception ex) {
+        long start = System.nanoTime();
         Date now = new Date();
         MessageProperties properties = message.getMessageProperties();
         FailMessage failMessage = new FailMessage();
         failMessage.setId(UUIDUtils.uuid());
         properties.setHeader("x-retry-count", RETRY_COUNT);
-        String body;
-        try {
-            body = new String(message.getBody(), properties.getContentEncoding());
-        } catch (UnsupportedEncodingException e) {
-            body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String newFingerprint = null;
+        if (compact) {
+            failMessage.setMessageEnvelope(FailMessageEnvelope.encode(message));
+            String fingerprint = FailMessageEnvelope.fingerprint(ex);
+            failMessage.setExceptionFingerprint(fingerprint);
+            failMessage.setExceptionDetail(FailMessageEnvelope.summary(ex));
+            //同一处抛出的异常只在第一次生成完整的堆栈
+            if (tracedFingerprints.asMap().putIfAbsent(fingerprint, Boolean.TRUE) == null) {
+                newFingerprint = fingerprint;
+                failMessage.setExceptionTrace(ExceptionUtils.getStackTrace(ex));
+            }
+        } else {
+            String body;
+            try {
+                body = new String(message.getBody(), properties.getContentEncoding());
+            } catch (UnsupportedEncodingException e) {
+                body = new String(message.getBody(), StandardCharsets.UTF_8);
+            }
+            failMessage.setMessage(message);
+            failMessage.setMessageBinary(SerializationUtils.serialize(message));
+            failMessage.setMessageBody(body);
+            failMessage.setMessageProperties(properties.toString());
+            failMessage.setExceptionDetail(ExceptionUtils.getStackTrace(ex));
         }
-        failMessage.setMessage(message);
-        failMessage.setMessageBinary(SerializationUtils.serialize(message));
-        failMessage.setMessageBody(body);
-        failMessage.setMessageProperties(properties.toString());
         failMessage.setMessageId(properties.getMessageId());
         failMessage.setExceptionType(ex.getClass().getSimpleName());
-        failMessage.setExceptionDetail(ExceptionUtils.getStackTrace(ex));
         failMessage.setFailTime(now);
         failMessage.setOriExchange(properties.getHeader(RabbitMqRetryHelper.X_ORI_EXCHANGE));
         failMessage.setOriRouteKey(properties.getHeader(RabbitMqRetryHelper.X_ORI_ROUTE_KEY));
         failMessage.setOriQueue(properties.getConsumerQueue());
         failMessage.setRetryCount(properties.getHeader(RabbitMqRetryHelper.X_RETRY_COUNT));
 
-        doProcess(failMessage, ex);
+        try {
+            doProcess(failMessage, ex);
+        } catch (RuntimeException e) {
+            //堆栈没有保存成功, 下次出现时重新生成
+            if (newFingerprint != null) {
+                tracedFingerprints.invalidate(newFingerprint);
+            }
+            throw e;
+        }
+        RabbitMqPlusMetrics.failProcess(getClass(), start);
     }
 
     /**
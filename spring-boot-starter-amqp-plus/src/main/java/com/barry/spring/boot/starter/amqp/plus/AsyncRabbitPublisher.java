@@ -0,0 +1,123 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 异步确认的消息发送
+ * <p>
+ * 每条消息通过 {@link CorrelationData} 关联 publisher confirm, 返回 {@code CompletableFuture<Confirm>}, 发送线程不等待确认,
+ * 同一个 channel 上可以连续发送大量消息. 未确认的消息数达到 maxOutstanding 时发送线程等待, 超过 confirmTimeout 未确认时 future 以 {@link TimeoutException} 结束.
+ * <p>
+ * 需要开启 {@code spring.rabbitmq.publisher-confirm-type=correlated}.
+ * <pre>
+ * {@code
+ * List<CompletableFuture<CorrelationData.Confirm>> futures = orders.stream()
+ *         .map(order -> publisher.convertAndSend("order-exchange", "order", order))
+ *         .collect(Collectors.toList());
+ * boolean allAcked = publisher.awaitAll(futures, Duration.ofSeconds(10));
+ * }
+ * </pre>
+ *
+ * @author barry chen
+ */
+@Slf4j
+@Component
+public class AsyncRabbitPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitMqRetryHelper retryHelper;
+    private final int maxOutstanding;
+    private final Semaphore outstanding;
+    private final long confirmTimeoutMillis;
+
+    public AsyncRabbitPublisher(RabbitTemplate rabbitTemplate, RabbitMqRetryHelper retryHelper, RabbitMqPlusProperties properties) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.retryHelper = retryHelper;
+        this.maxOutstanding = properties.getPublisher().getMaxOutstanding();
+        this.outstanding = new Semaphore(maxOutstanding);
+        this.confirmTimeoutMillis = properties.getPublisher().getConfirmTimeout().toMillis();
+    }
+
+    public CompletableFuture<CorrelationData.Confirm> send(String exchange, String routingKey, Message message) {
+        return publish(correlationData -> rabbitTemplate.send(exchange, routingKey, message, correlationData));
+    }
+
+    public CompletableFuture<CorrelationData.Confirm> convertAndSend(String exchange, String routingKey, Object object) {
+        return send(exchange, routingKey, retryHelper.convertMessageIfNecessary(object));
+    }
+
+    /**
+     * 延迟发送
+     *
+     * @see RabbitMqRetryHelper#convertAndSendWithDelay(String, String, Object, Integer)
+     */
+    public CompletableFuture<CorrelationData.Confirm> convertAndSendWithDelay(String exchange, String routingKey, Object object,
+            Integer delayPeriod) {
+        return publish(correlationData -> retryHelper.convertAndSendWithDelay(exchange, routingKey, object, delayPeriod, correlationData));
+    }
+
+    /**
+     * 当前未确认的消息数
+     */
+    public int getOutstanding() {
+        return maxOutstanding - outstanding.availablePermits();
+    }
+
+    /**
+     * 等待所有消息确认
+     *
+     * @param futures 发送返回的 future
+     * @param timeout 总的等待时间
+     * @return 全部被 broker ack 时返回true, 有 nack, 发送失败或超时时返回false
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean awaitAll(Collection<CompletableFuture<CorrelationData.Confirm>> futures, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        boolean allAcked = true;
+        for (CompletableFuture<CorrelationData.Confirm> future : futures) {
+            try {
+                CorrelationData.Confirm confirm = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                allAcked &= confirm.isAck();
+            } catch (ExecutionException | TimeoutException e) {
+                allAcked = false;
+            }
+        }
+        return allAcked;
+    }
+
+    private CompletableFuture<CorrelationData.Confirm> publish(Consumer<CorrelationData> sender) {
+        try {
+            outstanding.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<CorrelationData.Confirm> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+            return interrupted;
+        }
+        CompletableFuture<CorrelationData.Confirm> future = new CompletableFuture<>();
+        future.whenComplete((confirm, e) -> outstanding.release());
+        CorrelationData correlationData = new CorrelationData();
+        correlationData.getFuture().addCallback(future::complete, future::completeExceptionally);
+        try {
+            sender.accept(correlationData);
+        } catch (Throwable e) {
+            // 发送前的同步异常(如转换失败, 空的延迟时间)也要结束 future, 否则许可不会释放
+            future.completeExceptionally(e);
+            return future;
+        }
+        return future.orTimeout(confirmTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,57 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量消费容器
+ * <p>
+ * 按 batchSize 或 receiveTimeout 把消息聚合为 {@code List<Message>} 交给监听方法, 配合
+ * {@link RabbitMqRetryHelper#processBatch} 只把失败的消息发送到重试/失败队列, 其它消息正常确认.
+ * 确认模式为 MANUAL 时, 转移失败的消息单独重新投递.
+ * <pre>
+ * {@code
+ * @RabbitListener(queues = "order-queue", containerFactory = BatchListenerConfiguration.BATCH_LISTENER_CONTAINER_FACTORY)
+ * public void onMessages(List<Message> messages) {
+ *     retryHelper.processBatch(messages, message -> handle(message), 3, failMessageProcessor);
+ * }
+ * }
+ * </pre>
+ *
+ * @author barry chen
+ */
+@Configuration
+public class BatchListenerConfiguration {
+
+    public static final String BATCH_LISTENER_CONTAINER_FACTORY = "batchRabbitListenerContainerFactory";
+
+    @Bean(BATCH_LISTENER_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(ConnectionFactory connectionFactory,
+            ObjectProvider<SimpleRabbitListenerContainerFactoryConfigurer> configurer, MessageConverter jsonMessageConverter,
+            RabbitMqPlusProperties properties) {
+        RabbitMqPlusProperties.BatchListener batchListener = properties.getBatchListener();
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        SimpleRabbitListenerContainerFactoryConfigurer factoryConfigurer = configurer.getIfAvailable();
+        if (factoryConfigurer != null) {
+            factoryConfigurer.configure(factory, connectionFactory);
+        } else {
+            factory.setConnectionFactory(connectionFactory);
+        }
+        factory.setMessageConverter(jsonMessageConverter);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setDeBatchingEnabled(true);
+        factory.setBatchSize(batchListener.getBatchSize());
+        factory.setReceiveTimeout(batchListener.getReceiveTimeout().toMillis());
+        factory.setPrefetchCount(Math.max(batchListener.getPrefetch(), batchListener.getBatchSize()));
+        if (batchListener.getAcknowledgeMode() != null) {
+            factory.setAcknowledgeMode(batchListener.getAcknowledgeMode());
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,142 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 失败消息缓冲后批量存储到数据库
+ * <p>
+ * 消费线程只把失败消息放入有界队列, 后台线程按批次大小或时间窗口批量写入 mq_fail_message.
+ * 数据库不可用时, 写入失败的批次溢出到本地文件, 每隔 replayInterval 尝试重新写入数据库.
+ * 队列满时按 {@link RabbitMqPlusProperties.OverflowPolicy} 处理, 默认写入本地文件, 消费线程不会等待数据库.
+ * <p>
+ * 关闭时写入队列中剩余的消息.
+ *
+ * @author barry chen
+ */
+@Slf4j
+public class BufferedDatabaseFailMessageProcessor extends DatabaseFailMessageProcessor implements DisposableBean {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000L;
+
+    private final RabbitMqPlusProperties.FailBuffer config;
+    private final BlockingQueue<FailMessage> queue;
+    private final FailMessageSpillFile spillFile;
+    private final Thread drainThread;
+    private volatile boolean running = true;
+    private long lastReplayAt;
+
+    public BufferedDatabaseFailMessageProcessor(DataSource dataSource) {
+        this(dataSource, new RabbitMqPlusProperties.FailBuffer());
+    }
+
+    public BufferedDatabaseFailMessageProcessor(DataSource dataSource, RabbitMqPlusProperties.FailBuffer config) {
+        super(dataSource);
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.getCapacity());
+        this.spillFile = new FailMessageSpillFile(config.getSpillDirectory());
+        this.drainThread = new ThreadFactoryBuilder().setNameFormat("fail-message-drain").setDaemon(true).build()
+                .newThread(this::drain);
+        this.drainThread.start();
+    }
+
+    @Override
+    public void doProcess(FailMessage failMessage, Exception ex) {
+        if (running && queue.offer(failMessage)) {
+            return;
+        }
+        switch (config.getOverflowPolicy()) {
+            case CALLER_RUNS:
+                super.doProcess(failMessage, ex);
+                break;
+            case DISCARD:
+                log.error("fail message buffer is full, discard message, messageId: {}, routeKey: {}",
+                        failMessage.getMessageId(), failMessage.getOriRouteKey());
+                break;
+            case SPILL:
+            default:
+                spillFile.append(Collections.singletonList(failMessage));
+                break;
+        }
+    }
+
+    /**
+     * 当前缓冲的消息数
+     */
+    public int getBufferedSize() {
+        return queue.size();
+    }
+
+    private void drain() {
+        long flushInterval = config.getFlushInterval().toMillis();
+        int batchSize = config.getBatchSize();
+        List<FailMessage> batch = new ArrayList<>(batchSize);
+        long firstAt = 0;
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = batch.isEmpty() ? flushInterval : Math.max(0, firstAt + flushInterval - System.currentTimeMillis());
+                FailMessage failMessage = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (failMessage != null) {
+                    if (batch.isEmpty()) {
+                        firstAt = System.currentTimeMillis();
+                    }
+                    batch.add(failMessage);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                if (!batch.isEmpty() && (batch.size() >= batchSize || System.currentTimeMillis() - firstAt >= flushInterval)) {
+                    flush(batch);
+                    batch = new ArrayList<>(batchSize);
+                } else if (batch.isEmpty()) {
+                    replayIfDue();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable t) {
+                log.error("drain fail message error", t);
+            }
+        }
+        queue.drainTo(batch);
+        for (List<FailMessage> partition : Lists.partition(batch, batchSize)) {
+            flush(partition);
+        }
+    }
+
+    private void flush(List<FailMessage> batch) {
+        try {
+            batchInsert(batch);
+        } catch (Exception e) {
+            log.error("batch insert {} fail message(s) fail, spill to local file", batch.size(), e);
+            spillFile.append(batch);
+        }
+    }
+
+    private void replayIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastReplayAt < config.getReplayInterval().toMillis() || !spillFile.hasPending()) {
+            return;
+        }
+        lastReplayAt = now;
+        try {
+            spillFile.replay(config.getBatchSize(), this::batchInsert);
+        } catch (Exception e) {
+            log.warn("replay spilled fail message fail, retry after {}", config.getReplayInterval(), e);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        drainThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+    }
+}
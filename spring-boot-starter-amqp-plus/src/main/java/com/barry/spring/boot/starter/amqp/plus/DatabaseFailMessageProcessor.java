@@ -2,6 +2,7 @@ package com.barry.spring.boot.starter.amqp.plus;
 
 import com.barry.common.core.util.StringUtils;
 import com.barry.common.core.util.UUIDUtils;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 
@@ -9,10 +10,30 @@ import javax.sql.DataSource;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 失败消息存储到数据库
+ * <p>
+ * 紧凑格式({@link #setCompact(boolean)})只写入 message_envelope 和 exception_fingerprint, 相同指纹的堆栈只在 mq_fail_exception_trace 中写入一次:
+ * <pre>
+ * {@code
+ * ALTER TABLE `mq_fail_message` ADD COLUMN `message_envelope` mediumblob DEFAULT NULL, ADD COLUMN `exception_fingerprint` char(40) DEFAULT NULL;
+ * CREATE TABLE `mq_fail_exception_trace` (
+ *   `fingerprint` char(40) NOT NULL,
+ *   `exception_type` varchar(256) DEFAULT NULL,
+ *   `exception_detail` text,
+ *   `create_time` datetime NOT NULL,
+ *   PRIMARY KEY (`fingerprint`)
+ * );
+ * }
+ * </pre>
  *
  * @author barry chen
  * @date 2021/3/12 17:39
@@ -24,6 +45,12 @@ public class DatabaseFailMessageProcessor extends AbstractFailMessageProcessor {
     private static final String INSERT_SQL = "INSERT INTO `mq_fail_message` (`id`,`message_id`, `ori_exchange`, `ori_route_key`, `ori_queue`, `message_body`, " +
             "`message_properties`, `message_binary`,`exception_type`, `exception_detail`, `retry_count`, `fail_time`, `redeliver_time`, `redeliver_user`) " +
             "  VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String EXCEPTION_TRACE_TABLE_NAME = "mq_fail_exception_trace";
+    private static final String COMPACT_INSERT_SQL = "INSERT INTO `mq_fail_message` (`id`, `message_id`, `ori_exchange`, `ori_route_key`, `ori_queue`, " +
+            "`message_envelope`, `exception_type`, `exception_detail`, `exception_fingerprint`, `retry_count`, `fail_time`) " +
+            "  VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TRACE_SQL = "INSERT IGNORE INTO `mq_fail_exception_trace` (`fingerprint`, `exception_type`, `exception_detail`, `create_time`) " +
+            "VALUES (?, ?, ?, ?)";
     private final DataSource dataSource;
     private final JdbcTemplate jdbcTemplate;
 
@@ -34,24 +61,98 @@ public class DatabaseFailMessageProcessor extends AbstractFailMessageProcessor {
 
     @Override
     public void doProcess(FailMessage failMessage, Exception ex) {
-        jdbcTemplate.update(INSERT_SQL, new PreparedStatementSetter() {
+        saveTraces(Collections.singletonList(failMessage));
+        jdbcTemplate.update(insertSql(), new PreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps) throws SQLException {
-                ps.setString(1, UUIDUtils.uuid());
-                ps.setString(2, failMessage.getMessageId());
-                ps.setString(3, failMessage.getOriExchange());
-                ps.setString(4, failMessage.getOriRouteKey());
-                ps.setString(5, failMessage.getOriQueue());
-                ps.setString(6, StringUtils.left(failMessage.getMessageBody(), 5120));
-                ps.setString(7, StringUtils.left(failMessage.getMessageProperties(), 5120));
-                ps.setObject(8, failMessage.getMessage());
-                ps.setString(9, StringUtils.left(failMessage.getExceptionType(), 256));
-                ps.setString(10, StringUtils.left(failMessage.getExceptionDetail(), 2048));
-                ps.setInt(11, failMessage.getRetryCount());
-                ps.setDate(12, new Date(failMessage.getFailTime().getTime()));
-                ps.setNull(13, Types.DATE);
-                ps.setNull(14, Types.VARCHAR);
+                DatabaseFailMessageProcessor.this.setValues(ps, failMessage);
             }
         });
     }
+
+    /**
+     * 批量写入
+     *
+     * @param failMessages 失败消息
+     */
+    public void batchInsert(List<FailMessage> failMessages) {
+        saveTraces(failMessages);
+        jdbcTemplate.batchUpdate(insertSql(), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                DatabaseFailMessageProcessor.this.setValues(ps, failMessages.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return failMessages.size();
+            }
+        });
+    }
+
+    private String insertSql() {
+        return isCompact() ? COMPACT_INSERT_SQL : INSERT_SQL;
+    }
+
+    /**
+     * 写入指纹第一次出现时生成的完整堆栈, 重启后已经存在的指纹由 INSERT IGNORE 忽略
+     */
+    private void saveTraces(List<FailMessage> failMessages) {
+        if (!isCompact()) {
+            return;
+        }
+        Map<String, FailMessage> unsaved = new LinkedHashMap<>();
+        for (FailMessage failMessage : failMessages) {
+            String fingerprint = failMessage.getExceptionFingerprint();
+            if (fingerprint != null && failMessage.getExceptionTrace() != null) {
+                unsaved.putIfAbsent(fingerprint, failMessage);
+            }
+        }
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> args = new ArrayList<>(unsaved.size());
+        unsaved.forEach((fingerprint, failMessage) -> args.add(new Object[]{fingerprint,
+                StringUtils.left(failMessage.getExceptionType(), 256), failMessage.getExceptionTrace(), now}));
+        jdbcTemplate.batchUpdate(INSERT_TRACE_SQL, args);
+    }
+
+    protected void setValues(PreparedStatement ps, FailMessage failMessage) throws SQLException {
+        if (isCompact()) {
+            setCompactValues(ps, failMessage);
+            return;
+        }
+        ps.setString(1, UUIDUtils.uuid());
+        ps.setString(2, failMessage.getMessageId());
+        ps.setString(3, failMessage.getOriExchange());
+        ps.setString(4, failMessage.getOriRouteKey());
+        ps.setString(5, failMessage.getOriQueue());
+        ps.setString(6, StringUtils.left(failMessage.getMessageBody(), 5120));
+        ps.setString(7, StringUtils.left(failMessage.getMessageProperties(), 5120));
+        ps.setObject(8, failMessage.getMessage());
+        ps.setString(9, StringUtils.left(failMessage.getExceptionType(), 256));
+        ps.setString(10, StringUtils.left(failMessage.getExceptionDetail(), 2048));
+        ps.setInt(11, failMessage.getRetryCount());
+        ps.setDate(12, new Date(failMessage.getFailTime().getTime()));
+        ps.setNull(13, Types.DATE);
+        ps.setNull(14, Types.VARCHAR);
+    }
+
+    /**
+     * exception_detail 只保存异常摘要(异常类型, 信息和抛出位置), 完整的堆栈按指纹保存在 mq_fail_exception_trace
+     */
+    private void setCompactValues(PreparedStatement ps, FailMessage failMessage) throws SQLException {
+        ps.setString(1, UUIDUtils.uuid());
+        ps.setString(2, failMessage.getMessageId());
+        ps.setString(3, failMessage.getOriExchange());
+        ps.setString(4, failMessage.getOriRouteKey());
+        ps.setString(5, failMessage.getOriQueue());
+        ps.setBytes(6, failMessage.getMessageEnvelope());
+        ps.setString(7, StringUtils.left(failMessage.getExceptionType(), 256));
+        ps.setString(8, StringUtils.left(failMessage.getExceptionDetail(), 512));
+        ps.setString(9, failMessage.getExceptionFingerprint());
+        ps.setInt(10, failMessage.getRetryCount());
+        ps.setDate(11, new Date(failMessage.getFailTime().getTime()));
+    }
 }
@@ -0,0 +1,75 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.AbstractRabbitListenerContainerFactory;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 开启 {@code spring.rabbitmq.plus.dedup.enabled} 后, 为所有监听容器工厂加入 {@link MessageDeduplicator}.
+ * 存在 redis 时跨实例去重, 否则只在本地去重.
+ *
+ * @author barry chen
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "spring.rabbitmq.plus.dedup", name = "enabled", havingValue = "true")
+public class DedupConfiguration {
+
+    private static final String REDIS_TEMPLATE_CLASS = "org.springframework.data.redis.core.StringRedisTemplate";
+
+    /**
+     * 去重放在 advice 链的最前面, 重复消息不进入重试等其它 advice.
+     * 容器工厂没有提供确认模式的 getter, 从字段读取, MANUAL 时由去重确认跳过的消息
+     */
+    @Bean
+    public static BeanPostProcessor dedupListenerContainerFactoryPostProcessor(ObjectProvider<MessageDeduplicator> deduplicator) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof AbstractRabbitListenerContainerFactory) {
+                    AbstractRabbitListenerContainerFactory<?> factory = (AbstractRabbitListenerContainerFactory<?>) bean;
+                    Advice[] chain = factory.getAdviceChain();
+                    Advice[] advices = new Advice[chain == null ? 1 : chain.length + 1];
+                    Object acknowledgeMode = new DirectFieldAccessor(factory).getPropertyValue("acknowledgeMode");
+                    advices[0] = acknowledgeMode == AcknowledgeMode.MANUAL ? deduplicator.getObject().manualAck() : deduplicator.getObject();
+                    if (chain != null) {
+                        System.arraycopy(chain, 0, advices, 1, chain.length);
+                    }
+                    factory.setAdviceChain(advices);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = REDIS_TEMPLATE_CLASS)
+    static class RedisDedupConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public MessageDeduplicator messageDeduplicator(RabbitMqPlusProperties properties, ObjectProvider<StringRedisTemplate> redisTemplate) {
+            return new MessageDeduplicator(properties.getDedup(), redisTemplate.getIfAvailable());
+        }
+    }
+
+    @Configuration
+    @ConditionalOnMissingClass(REDIS_TEMPLATE_CLASS)
+    static class LocalDedupConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public MessageDeduplicator messageDeduplicator(RabbitMqPlusProperties properties) {
+            return new MessageDeduplicator(properties.getDedup());
+        }
+    }
+}
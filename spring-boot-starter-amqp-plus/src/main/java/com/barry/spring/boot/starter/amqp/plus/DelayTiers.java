@@ -0,0 +1,101 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.barry.common.core.util.Assert;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 分级延迟队列与指数退避策略
+ * <p>
+ * RabbitMQ 只在队头检查消息是否过期, 不同延迟的消息放在同一个队列时, 长延迟的消息会阻塞后面短延迟的消息.
+ * 每一级延迟一个固定 TTL 的队列, 同一个队列中的消息按进入顺序过期, 过期后进入 retry-exchange.
+ * <p>
+ * 队列名称 {@code delay-queue.<tier>}, 路由 {@code delay.<tier>}, 例如 {@code delay-queue.5s}
+ *
+ * @author barry chen
+ */
+public class DelayTiers {
+
+    public static final String DELAY_TIER_QUEUE_PREFIX = RabbitMqRetryHelper.DELAY_QUEUE + ".";
+    public static final String DELAY_TIER_ROUTE_KEY_PREFIX = RabbitMqRetryHelper.DELAY_ROUTE_KEY + ".";
+
+    private final long[] tiers;
+    private final long initialInterval;
+    private final double multiplier;
+    private final long maxInterval;
+
+    public DelayTiers(RabbitMqPlusProperties.Retry retry) {
+        Assert.check(!retry.getDelayTiers().isEmpty(), "delay tiers must not be empty.");
+        this.tiers = retry.getDelayTiers().stream().mapToLong(Duration::toMillis).filter(t -> t > 0).distinct().sorted().toArray();
+        this.initialInterval = retry.getInitialInterval().toMillis();
+        this.multiplier = retry.getMultiplier();
+        this.maxInterval = retry.getMaxInterval().toMillis();
+    }
+
+    /**
+     * 第 retryCount 次重试的退避延迟, min(initialInterval * multiplier^(retryCount-1), maxInterval)
+     *
+     * @param retryCount 从1开始
+     */
+    public long backoff(int retryCount) {
+        double delay = initialInterval * Math.pow(multiplier, Math.max(0, retryCount - 1));
+        return (long) Math.min(delay, maxInterval);
+    }
+
+    /**
+     * 不小于延迟的最小一级, 超过最大一级时取最大一级
+     */
+    public long tierFor(long delayMillis) {
+        int index = Arrays.binarySearch(tiers, delayMillis);
+        if (index >= 0) {
+            return tiers[index];
+        }
+        int insertion = -index - 1;
+        return tiers[Math.min(insertion, tiers.length - 1)];
+    }
+
+    /**
+     * 最大一级延迟
+     */
+    public long getMaxTier() {
+        return tiers[tiers.length - 1];
+    }
+
+    /**
+     * 延迟是否正好是某一级
+     */
+    public boolean isTier(long delayMillis) {
+        return Arrays.binarySearch(tiers, delayMillis) >= 0;
+    }
+
+    public List<Long> getTiers() {
+        return Arrays.stream(tiers).boxed().collect(Collectors.toList());
+    }
+
+    public static String queueName(long tier) {
+        return DELAY_TIER_QUEUE_PREFIX + name(tier);
+    }
+
+    public static String routeKey(long tier) {
+        return DELAY_TIER_ROUTE_KEY_PREFIX + name(tier);
+    }
+
+    /**
+     * 1000 -> 1s, 300000 -> 5m, 1500 -> 1500ms
+     */
+    static String name(long tier) {
+        if (tier % 3_600_000 == 0) {
+            return tier / 3_600_000 + "h";
+        }
+        if (tier % 60_000 == 0) {
+            return tier / 60_000 + "m";
+        }
+        if (tier % 1000 == 0) {
+            return tier / 1000 + "s";
+        }
+        return tier + "ms";
+    }
+}
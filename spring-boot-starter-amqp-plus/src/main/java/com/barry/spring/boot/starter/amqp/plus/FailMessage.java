@@ -50,6 +50,10 @@ public class FailMessage implements Serializable {
      * 原消息
      */
     private Message message;
+    /**
+     * 紧凑格式: 压缩的 properties, headers 和 body, 见 {@link FailMessageEnvelope}
+     */
+    private byte[] messageEnvelope;
     /**
      * 异常类型 class全名
      */
@@ -58,6 +62,14 @@ public class FailMessage implements Serializable {
      * 异常堆栈信息
      */
     private String exceptionDetail;
+    /**
+     * 紧凑格式: 异常指纹, 堆栈保存在 mq_fail_exception_trace
+     */
+    private String exceptionFingerprint;
+    /**
+     * 紧凑格式: 完整的异常堆栈, 只有指纹第一次出现时才有值
+     */
+    private String exceptionTrace;
     /**
      * 消息重试次数
      */
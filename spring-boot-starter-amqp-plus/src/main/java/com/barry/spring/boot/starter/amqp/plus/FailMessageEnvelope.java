@@ -0,0 +1,170 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.io.BaseEncoding;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 失败消息的紧凑格式
+ * <p>
+ * 2 字节 magic + 1 字节版本, 之后是 deflate 压缩的常用 properties, headers 和 body. 与 java 序列化的 Message 相比不包含类描述信息,
+ * body 也只保存一次.
+ * <p>
+ * 异常按异常类型和堆栈计算指纹, 不包含异常信息, 同一处抛出的异常指纹相同, 堆栈只需要保存一次.
+ *
+ * @author barry chen
+ */
+public final class FailMessageEnvelope {
+
+    private static final byte MAGIC_0 = 'F';
+    private static final byte MAGIC_1 = 'M';
+    private static final byte VERSION = 1;
+
+    private FailMessageEnvelope() {
+    }
+
+    public static byte[] encode(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getBody().length / 2 + 128);
+        bytes.write(MAGIC_0);
+        bytes.write(MAGIC_1);
+        bytes.write(VERSION);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            writeString(out, properties.getContentType());
+            writeString(out, properties.getContentEncoding());
+            writeString(out, properties.getMessageId());
+            writeString(out, properties.getCorrelationId());
+            writeString(out, properties.getAppId());
+            writeString(out, properties.getType());
+            writeString(out, properties.getReplyTo());
+            out.writeInt(properties.getPriority() == null ? -1 : properties.getPriority());
+            out.writeByte(properties.getDeliveryMode() == null ? -1 : properties.getDeliveryMode().ordinal());
+            out.writeLong(properties.getTimestamp() == null ? -1 : properties.getTimestamp().getTime());
+            writeBytes(out, properties.getHeaders().isEmpty() ? new byte[0] : SerializationUtils.serialize(serializableHeaders(properties)));
+            writeBytes(out, message.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 是否为 {@link #encode(Message)} 生成的数据
+     */
+    public static boolean isEnvelope(byte[] data) {
+        return data != null && data.length > 3 && data[0] == MAGIC_0 && data[1] == MAGIC_1 && data[2] == VERSION;
+    }
+
+    public static Message decode(byte[] data) {
+        if (!isEnvelope(data)) {
+            throw new IllegalArgumentException("not a fail message envelope");
+        }
+        MessageProperties properties = new MessageProperties();
+        byte[] body;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data, 3, data.length - 3)))) {
+            properties.setContentType(readString(in));
+            properties.setContentEncoding(readString(in));
+            properties.setMessageId(readString(in));
+            properties.setCorrelationId(readString(in));
+            properties.setAppId(readString(in));
+            properties.setType(readString(in));
+            properties.setReplyTo(readString(in));
+            int priority = in.readInt();
+            properties.setPriority(priority < 0 ? null : priority);
+            byte deliveryMode = in.readByte();
+            properties.setDeliveryMode(deliveryMode < 0 ? null : MessageDeliveryMode.values()[deliveryMode]);
+            long timestamp = in.readLong();
+            properties.setTimestamp(timestamp < 0 ? null : new Date(timestamp));
+            byte[] headers = readBytes(in);
+            if (headers.length > 0) {
+                Map<String, Object> map = SerializationUtils.deserialize(headers);
+                map.forEach(properties::setHeader);
+            }
+            body = readBytes(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Message(body, properties);
+    }
+
+    /**
+     * 异常指纹, 异常链中每个异常的类型和堆栈的 SHA-1
+     */
+    public static String fingerprint(Throwable ex) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Throwable throwable : ExceptionUtils.getThrowableList(ex)) {
+            digest.update(throwable.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            for (StackTraceElement element : throwable.getStackTrace()) {
+                digest.update(element.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
+
+    /**
+     * 异常摘要, 只包含异常类型, 异常信息和抛出位置, 不生成完整的堆栈
+     */
+    public static String summary(Throwable ex) {
+        StackTraceElement[] stackTrace = ex.getStackTrace();
+        return stackTrace.length == 0 ? ex.toString() : ex + System.lineSeparator() + "\tat " + stackTrace[0];
+    }
+
+    /**
+     * headers 的值通常是 String, 数字, Date 和 x-death 的 List/Map, 其它无法序列化的值保存为字符串
+     */
+    private static HashMap<String, Object> serializableHeaders(MessageProperties properties) {
+        HashMap<String, Object> headers = new HashMap<>(properties.getHeaders().size() * 2);
+        properties.getHeaders().forEach((k, v) -> headers.put(k, v == null || v instanceof Serializable ? v : String.valueOf(v)));
+        return headers;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+}
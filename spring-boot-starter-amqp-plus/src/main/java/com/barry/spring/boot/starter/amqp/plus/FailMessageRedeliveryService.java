@@ -0,0 +1,270 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 失败消息重新投递
+ * <p>
+ * 按 (fail_time, id) 游标分页读取 mq_fail_message, 通过令牌桶限制每秒投递的消息数, 发送到原 exchange/route key.
+ * 每页发送完毕后等待 publisher confirm, broker 确认的行批量更新 redeliver_time/redeliver_user, 未确认的行保持不变, 可以再次投递.
+ * <p>
+ * 以 mandatory 发送, 无法路由(队列被删除, route key 已变更)的消息会被 broker 退回, broker 仍然会确认, 退回的消息视为投递失败.
+ * 没有记录原 exchange 或者原 route key 的行无法投递, 直接跳过.
+ * <p>
+ * 需要开启 {@code spring.rabbitmq.publisher-confirm-type=correlated} 和 {@code spring.rabbitmq.publisher-returns=true},
+ * 否则所有消息都会确认超时, 或者无法发现退回的消息.
+ *
+ * <pre>
+ * {@code
+ * RedeliveryResult result = redeliveryService.redeliver(new RedeliveryQuery()
+ *         .setOriQueue("order-queue")
+ *         .setExceptionType("TimeoutException"), "admin");
+ * }
+ * </pre>
+ *
+ * @author barry chen
+ */
+@Slf4j
+public class FailMessageRedeliveryService {
+
+    private static final String SELECT_COLUMNS = "SELECT `id`, `message_id`, `ori_exchange`, `ori_route_key`, `message_body`, `message_binary`, `fail_time` FROM ";
+    private static final String SELECT_COLUMNS_WITH_ENVELOPE = "SELECT `id`, `message_id`, `ori_exchange`, `ori_route_key`, `message_body`, `message_binary`, " +
+            "`message_envelope`, `fail_time` FROM ";
+    private static final String UPDATE_SQL = "UPDATE %s SET `redeliver_time` = ?, `redeliver_user` = ? WHERE `id` = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitMqPlusProperties.Redelivery config;
+    private final String tableName;
+    /**
+     * 表中是否有紧凑格式的 message_envelope 列, 第一次投递时检查
+     */
+    private volatile Boolean envelopeColumn;
+
+    public FailMessageRedeliveryService(DataSource dataSource, RabbitTemplate rabbitTemplate) {
+        this(dataSource, rabbitTemplate, new RabbitMqPlusProperties.Redelivery());
+    }
+
+    public FailMessageRedeliveryService(DataSource dataSource, RabbitTemplate rabbitTemplate, RabbitMqPlusProperties.Redelivery config) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        //独立的 template 开启 mandatory, 不影响业务使用的 template
+        this.rabbitTemplate = new RabbitTemplate(rabbitTemplate.getConnectionFactory());
+        this.rabbitTemplate.setMandatory(true);
+        if (!rabbitTemplate.getConnectionFactory().isPublisherReturns()) {
+            log.warn("publisher returns is disabled, unroutable fail messages will be marked as redelivered");
+        }
+        this.config = config;
+        this.tableName = DatabaseFailMessageProcessor.DEFAULT_TABLE_NAME;
+    }
+
+    /**
+     * 按条件重新投递失败消息
+     *
+     * @param query    筛选条件
+     * @param operator 操作人, 记录到 redeliver_user
+     * @return 投递结果
+     */
+    public RedeliveryResult redeliver(RedeliveryQuery query, String operator) {
+        RateLimiter rateLimiter = RateLimiter.create(config.getPermitsPerSecond());
+        RedeliveryResult result = new RedeliveryResult();
+        long remaining = query.getMaxMessages() == null ? Long.MAX_VALUE : query.getMaxMessages();
+        Row last = null;
+        while (remaining > 0) {
+            int limit = (int) Math.min(config.getPageSize(), remaining);
+            List<Row> rows = queryPage(query, last, limit);
+            if (rows.isEmpty()) {
+                break;
+            }
+            result.setScanned(result.getScanned() + rows.size());
+            remaining -= rows.size();
+            last = rows.get(rows.size() - 1);
+
+            List<String> confirmed = publish(rows, rateLimiter);
+            markRedelivered(confirmed, operator);
+            result.setRedelivered(result.getRedelivered() + confirmed.size());
+            result.setFailed(result.getFailed() + rows.size() - confirmed.size());
+            if (rows.size() < limit) {
+                break;
+            }
+        }
+        log.info("redeliver fail message finished, query: {}, result: {}", query, result);
+        return result;
+    }
+
+    /**
+     * 发送一页消息, 等待确认
+     *
+     * @return broker 确认并且没有退回的行id
+     */
+    private List<String> publish(List<Row> rows, RateLimiter rateLimiter) {
+        List<Row> sent = new ArrayList<>(rows.size());
+        List<CorrelationData> correlations = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            if (row.exchange == null || row.routeKey == null || (row.exchange.isEmpty() && row.routeKey.isEmpty())) {
+                log.error("redeliver fail message skipped, no original exchange/route key, id: {}, messageId: {}", row.id, row.messageId);
+                continue;
+            }
+            rateLimiter.acquire();
+            CorrelationData correlationData = new CorrelationData(row.id);
+            try {
+                rabbitTemplate.send(row.exchange, row.routeKey, row.message, correlationData);
+                sent.add(row);
+                correlations.add(correlationData);
+            } catch (AmqpException e) {
+                log.error("redeliver fail message error, id: {}, messageId: {}", row.id, row.messageId, e);
+            }
+        }
+        List<String> confirmed = new ArrayList<>(sent.size());
+        long deadline = System.nanoTime() + config.getConfirmTimeout().toNanos();
+        for (int i = 0; i < sent.size(); i++) {
+            try {
+                CorrelationData.Confirm confirm = correlations.get(i).getFuture()
+                        .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                //退回的消息在确认之前设置到 correlationData
+                Message returned = correlations.get(i).getReturnedMessage();
+                if (returned != null) {
+                    log.error("redeliver fail message returned as unroutable, id: {}, exchange: {}, routeKey: {}", sent.get(i).id,
+                            sent.get(i).exchange, sent.get(i).routeKey);
+                } else if (confirm.isAck()) {
+                    confirmed.add(sent.get(i).id);
+                } else {
+                    log.error("redeliver fail message nack, id: {}, cause: {}", sent.get(i).id, confirm.getReason());
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                log.error("redeliver fail message not confirmed, id: {}", sent.get(i).id, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return confirmed;
+    }
+
+    private void markRedelivered(List<String> ids, String operator) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> args = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            args.add(new Object[]{now, operator, id});
+        }
+        jdbcTemplate.batchUpdate(String.format(UPDATE_SQL, tableName), args);
+    }
+
+    private List<Row> queryPage(RedeliveryQuery query, Row last, int limit) {
+        StringBuilder sql = new StringBuilder(hasEnvelopeColumn() ? SELECT_COLUMNS_WITH_ENVELOPE : SELECT_COLUMNS)
+                .append(tableName).append(" WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (!query.isIncludeRedelivered()) {
+            sql.append(" AND `redeliver_time` IS NULL");
+        }
+        if (query.getExceptionType() != null) {
+            sql.append(" AND `exception_type` = ?");
+            args.add(query.getExceptionType());
+        }
+        if (query.getOriQueue() != null) {
+            sql.append(" AND `ori_queue` = ?");
+            args.add(query.getOriQueue());
+        }
+        if (query.getOriRouteKey() != null) {
+            sql.append(" AND `ori_route_key` = ?");
+            args.add(query.getOriRouteKey());
+        }
+        if (query.getFailTimeFrom() != null) {
+            sql.append(" AND `fail_time` >= ?");
+            args.add(new Timestamp(query.getFailTimeFrom().getTime()));
+        }
+        if (query.getFailTimeTo() != null) {
+            sql.append(" AND `fail_time` < ?");
+            args.add(new Timestamp(query.getFailTimeTo().getTime()));
+        }
+        if (last != null) {
+            sql.append(" AND (`fail_time` > ? OR (`fail_time` = ? AND `id` > ?))");
+            args.add(last.failTime);
+            args.add(last.failTime);
+            args.add(last.id);
+        }
+        sql.append(" ORDER BY `fail_time`, `id` LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> toRow(rs), args.toArray());
+    }
+
+    private boolean hasEnvelopeColumn() {
+        if (envelopeColumn == null) {
+            envelopeColumn = jdbcTemplate.query("SELECT * FROM " + tableName + " WHERE 1 = 0", rs -> {
+                ResultSetMetaData metaData = rs.getMetaData();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    if ("message_envelope".equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+        return envelopeColumn;
+    }
+
+    private Row toRow(ResultSet rs) throws SQLException {
+        String id = rs.getString("id");
+        byte[] envelope = envelopeColumn ? rs.getBytes("message_envelope") : null;
+        return new Row(id, rs.getString("message_id"), rs.getString("ori_exchange"), rs.getString("ori_route_key"),
+                rs.getTimestamp("fail_time"), toMessage(id, envelope, rs.getBytes("message_binary"), rs.getString("message_body")));
+    }
+
+    /**
+     * 紧凑格式的行使用 message_envelope, 否则优先使用序列化的原消息, 无法反序列化时用 message_body 重建
+     */
+    private Message toMessage(String id, byte[] envelope, byte[] binary, String body) {
+        if (FailMessageEnvelope.isEnvelope(envelope)) {
+            return FailMessageEnvelope.decode(envelope);
+        }
+        if (binary != null) {
+            try {
+                Object message = SerializationUtils.deserialize(binary);
+                if (message instanceof Message) {
+                    return (Message) message;
+                }
+            } catch (SerializationException e) {
+                log.warn("deserialize fail message error, rebuild from message body, id: {}", id, e);
+            }
+        }
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setHeader(RabbitMqRetryHelper.X_RETRY_COUNT, 0);
+        return new Message(body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @AllArgsConstructor
+    private static class Row {
+        private final String id;
+        private final String messageId;
+        private final String exchange;
+        private final String routeKey;
+        private final Date failTime;
+        private final Message message;
+    }
+}
@@ -0,0 +1,127 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 失败消息的本地溢出文件
+ * <p>
+ * 每条记录为 4 字节长度 + java 序列化的 {@link FailMessage}. 新记录追加到 {@code fail-message.spill},
+ * 重放时先改名为 {@code fail-message.replay}, 每写入一批记录一次已写入的条数到 {@code fail-message.offset},
+ * 中途失败时下次从记录的位置继续, 全部写入后删除. 进程在追加时退出导致的不完整记录在重放时丢弃.
+ *
+ * @author barry chen
+ */
+@Slf4j
+class FailMessageSpillFile {
+
+    private final File spillFile;
+    private final File replayFile;
+    private final File offsetFile;
+
+    FailMessageSpillFile(String directory) {
+        File dir = new File(directory);
+        if (!dir.exists() && !dir.mkdirs()) {
+            log.warn("create fail message spill directory fail: {}", dir.getAbsolutePath());
+        }
+        this.spillFile = new File(dir, "fail-message.spill");
+        this.replayFile = new File(dir, "fail-message.replay");
+        this.offsetFile = new File(dir, "fail-message.offset");
+    }
+
+    /**
+     * 追加记录, 写入失败时记录日志, 消息丢失
+     */
+    synchronized void append(List<FailMessage> failMessages) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile, true)))) {
+            for (FailMessage failMessage : failMessages) {
+                byte[] bytes = SerializationUtils.serialize(failMessage);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            log.error("spill fail message fail, {} message(s) lost", failMessages.size(), e);
+        }
+    }
+
+    boolean hasPending() {
+        return replayFile.exists() || spillFile.exists();
+    }
+
+    /**
+     * 按批重放, insert 抛出异常时停止, 下次从未写入的记录继续
+     */
+    void replay(int batchSize, Consumer<List<FailMessage>> insert) throws IOException {
+        synchronized (this) {
+            if (!replayFile.exists()) {
+                if (!spillFile.exists()) {
+                    return;
+                }
+                Files.move(spillFile.toPath(), replayFile.toPath());
+                Files.deleteIfExists(offsetFile.toPath());
+            }
+        }
+        long offset = readOffset();
+        long index = 0;
+        List<FailMessage> batch = new ArrayList<>(batchSize);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(replayFile)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                try {
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    // 追加时进程退出, 最后一条记录不完整, 丢弃
+                    log.warn("discard truncated spilled fail message at index {}", index);
+                    break;
+                }
+                if (index++ < offset) {
+                    continue;
+                }
+                batch.add(SerializationUtils.deserialize(bytes));
+                if (batch.size() >= batchSize) {
+                    insert.accept(batch);
+                    writeOffset(index);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert.accept(batch);
+        }
+        Files.deleteIfExists(replayFile.toPath());
+        Files.deleteIfExists(offsetFile.toPath());
+        log.info("replay {} spilled fail message(s)", index - offset);
+    }
+
+    private long readOffset() throws IOException {
+        if (!offsetFile.exists()) {
+            return 0;
+        }
+        return Long.parseLong(new String(Files.readAllBytes(offsetFile.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    private void writeOffset(long offset) throws IOException {
+        Files.write(offsetFile.toPath(), Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+    }
+}
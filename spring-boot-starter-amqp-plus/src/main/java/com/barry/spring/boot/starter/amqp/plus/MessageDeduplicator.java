@@ -0,0 +1,264 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费端去重
+ * <p>
+ * 作为监听容器的 advice, 在消息转换和监听方法之前执行. 以 队列 + messageId(或配置的消息头) + 重试次数 作为标识,
+ * 先检查本地缓存, 再通过 redis {@code SET NX} 标记处理中. 已经处理过的消息直接确认, 不再调用监听方法;
+ * 其它消费者正在处理的消息重新入队, 不确认, 避免处理方退出时消息丢失.
+ * 重试次数不同的消息是 {@link RabbitMqRetryHelper} 的重试, 不视为重复.
+ * <p>
+ * 监听方法正常返回后标记为已处理, 抛出异常时删除标记, 重新投递的消息可以再次处理. 没有标识的消息不去重.
+ * 批量监听时过滤掉重复的消息, 只把剩余的消息交给监听方法.
+ * <p>
+ * 容器使用 {@link org.springframework.amqp.core.AcknowledgeMode#MANUAL} 时容器不会确认, 使用 {@link #manualAck()}:
+ * 跳过的重复消息通过 channel 逐条确认, 处理中的消息逐条 nack 并重新入队, 不再整批重新入队.
+ *
+ * @author barry chen
+ * @see DedupConfiguration
+ */
+@Slf4j
+public class MessageDeduplicator implements MethodInterceptor {
+
+    private static final String PROCESSING = "0";
+    private static final String DONE = "1";
+
+    private final RabbitMqPlusProperties.Dedup config;
+    private final Cache<String, Boolean> processed;
+    private final StringRedisTemplate redisTemplate;
+    private final boolean manualAck;
+
+    /**
+     * 只使用本地缓存
+     */
+    public MessageDeduplicator(RabbitMqPlusProperties.Dedup config) {
+        this(config, null);
+    }
+
+    public MessageDeduplicator(RabbitMqPlusProperties.Dedup config, StringRedisTemplate redisTemplate) {
+        this(config, CacheBuilder.newBuilder()
+                .maximumSize(config.getLocalCapacity())
+                .expireAfterWrite(config.getLocalTtl().toMillis(), TimeUnit.MILLISECONDS)
+                .build(), redisTemplate, false);
+    }
+
+    private MessageDeduplicator(RabbitMqPlusProperties.Dedup config, Cache<String, Boolean> processed,
+            StringRedisTemplate redisTemplate, boolean manualAck) {
+        this.config = config;
+        this.processed = processed;
+        this.redisTemplate = redisTemplate;
+        this.manualAck = manualAck;
+    }
+
+    /**
+     * 用于 MANUAL 确认模式的容器, 与当前实例共用本地缓存和 redis 标记
+     */
+    public MessageDeduplicator manualAck() {
+        return manualAck ? this : new MessageDeduplicator(config, processed, redisTemplate, true);
+    }
+
+    /**
+     * 拦截 {@code ContainerDelegate.invokeListener(Channel, Object)}, 第一个参数为消费消息的 channel,
+     * 第二个参数为 Message 或者批量监听时的 {@code List<Message>}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        Object data = arguments.length > 1 ? arguments[1] : null;
+        if (data instanceof Message) {
+            String key = dedupKey((Message) data);
+            if (key != null) {
+                State state = acquire(key);
+                if (state == State.DONE) {
+                    ack(arguments, (Message) data);
+                    return null;
+                }
+                if (state == State.PROCESSING) {
+                    if (manualAck) {
+                        requeue(arguments, (Message) data, key);
+                        return null;
+                    }
+                    throw processing(key);
+                }
+            }
+            return proceed(invocation, key == null ? new ArrayList<>() : List.of(key));
+        }
+        if (data instanceof List) {
+            List<Message> messages = (List<Message>) data;
+            List<Message> remaining = new ArrayList<>(messages.size());
+            List<String> keys = new ArrayList<>(messages.size());
+            try {
+                for (Message message : messages) {
+                    String key = dedupKey(message);
+                    State state = key == null ? State.ACQUIRED : acquire(key);
+                    if (state == State.PROCESSING && !manualAck) {
+                        //自动确认时批量消息只能整体确认或重新入队, 释放已经标记的消息后整批重新入队
+                        throw processing(key);
+                    }
+                    if (state == State.DONE) {
+                        ack(arguments, message);
+                    } else if (state == State.PROCESSING) {
+                        requeue(arguments, message, key);
+                    } else {
+                        remaining.add(message);
+                        if (key != null) {
+                            keys.add(key);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                keys.forEach(this::release);
+                throw e;
+            }
+            if (remaining.isEmpty()) {
+                return null;
+            }
+            if (remaining.size() < messages.size()) {
+                arguments[1] = remaining;
+            }
+            return proceed(invocation, keys);
+        }
+        return invocation.proceed();
+    }
+
+    private Object proceed(MethodInvocation invocation, List<String> keys) throws Throwable {
+        try {
+            Object result = invocation.proceed();
+            keys.forEach(this::markDone);
+            return result;
+        } catch (Throwable t) {
+            keys.forEach(this::release);
+            throw t;
+        }
+    }
+
+    /**
+     * 确认跳过的重复消息, 自动确认时由容器确认
+     */
+    private void ack(Object[] arguments, Message message) {
+        if (!manualAck) {
+            return;
+        }
+        try {
+            ((Channel) arguments[0]).basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        } catch (IOException e) {
+            throw new AmqpIOException(e);
+        }
+    }
+
+    private void requeue(Object[] arguments, Message message, String key) {
+        log.debug("message {} is being processed by another consumer, requeue", key);
+        try {
+            ((Channel) arguments[0]).basicNack(message.getMessageProperties().getDeliveryTag(), false, true);
+        } catch (IOException e) {
+            throw new AmqpIOException(e);
+        }
+    }
+
+    private String dedupKey(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        Object id = StringUtils.isBlank(config.getHeader()) ? properties.getMessageId() : properties.getHeader(config.getHeader());
+        if (id == null) {
+            return null;
+        }
+        Object retryCount = properties.getHeader(RabbitMqRetryHelper.X_RETRY_COUNT);
+        return properties.getConsumerQueue() + ":" + id + ":" + (retryCount == null ? 0 : retryCount);
+    }
+
+    /**
+     * 在 redis 中标记为处理中
+     *
+     * @return 已经处理过时返回 DONE, 其它消费者正在处理时返回 PROCESSING
+     */
+    private State acquire(String key) {
+        if (processed.getIfPresent(key) != null) {
+            log.debug("skip duplicate message {}", key);
+            return State.DONE;
+        }
+        if (redisTemplate == null) {
+            return State.ACQUIRED;
+        }
+        try {
+            Boolean absent = redisTemplate.opsForValue().setIfAbsent(config.getKeyPrefix() + key, PROCESSING,
+                    config.getProcessingTtl().toMillis(), TimeUnit.MILLISECONDS);
+            if (!Boolean.FALSE.equals(absent)) {
+                return State.ACQUIRED;
+            }
+            if (DONE.equals(redisTemplate.opsForValue().get(config.getKeyPrefix() + key))) {
+                log.debug("skip duplicate message {}", key);
+                return State.DONE;
+            }
+            return State.PROCESSING;
+        } catch (Exception e) {
+            //redis 不可用时只依赖本地缓存, 不影响消费
+            log.warn("check duplicate message {} in redis fail", key, e);
+            return State.ACQUIRED;
+        }
+    }
+
+    /**
+     * 处理中的消息不能确认: 处理方可能已经退出, 确认后消息丢失. 重新入队, 处理完成后再次收到时按 DONE 跳过,
+     * 处理方退出时在 processingTtl 后重新处理
+     */
+    private ImmediateRequeueAmqpException processing(String key) {
+        log.debug("message {} is being processed by another consumer, requeue", key);
+        return new ImmediateRequeueAmqpException("message " + key + " is being processed");
+    }
+
+    private void markDone(String key) {
+        processed.put(key, Boolean.TRUE);
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(config.getKeyPrefix() + key, DONE, config.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("mark message {} processed in redis fail", key, e);
+        }
+    }
+
+    private void release(String key) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.delete(config.getKeyPrefix() + key);
+        } catch (Exception e) {
+            log.warn("release message {} in redis fail", key, e);
+        }
+    }
+
+    private enum State {
+        /**
+         * 可以处理
+         */
+        ACQUIRED,
+        /**
+         * 已经处理过
+         */
+        DONE,
+        /**
+         * 其它消费者正在处理
+         */
+        PROCESSING
+    }
+}
@@ -2,12 +2,16 @@ package com.barry.spring.boot.starter.amqp.plus;
 
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
 import org.springframework.amqp.support.converter.AbstractMessageConverter;
 import org.springframework.amqp.support.converter.ClassMapper;
+import org.springframework.amqp.support.converter.DefaultClassMapper;
 import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.MessageConversionException;
@@ -20,11 +24,15 @@ import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.MimeType;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Abstract Jackson2 message converter.
@@ -68,7 +76,16 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
 
     private ProjectingMessageConverter projectingConverter;
 
-    private boolean standardCharset;
+    private boolean standardCharset = true;
+
+    /**
+     * __TypeId__/__ContentTypeId__/__KeyTypeId__ -> JavaType, 避免每条消息都加载类并检查信任的包
+     */
+    private final Map<String, JavaType> javaTypeCache = new ConcurrentHashMap<>();
+
+    private final Map<JavaType, ObjectReader> readerCache = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, ObjectWriter> writerCache = new ConcurrentHashMap<>();
 
     private boolean assumeSupportedContentType = true;
 
@@ -98,6 +115,7 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
 
     public void setClassMapper(ClassMapper classMapper) {
         this.classMapper = classMapper;
+        this.javaTypeCache.clear();
     }
 
     public String getDefaultCharset() {
@@ -113,9 +131,7 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
     public void setDefaultCharset(@Nullable String defaultCharset) {
         this.defaultCharset = (defaultCharset != null) ? Charset.forName(defaultCharset)
                 : DEFAULT_CHARSET;
-        if (this.defaultCharset.equals(StandardCharsets.UTF_8)) {
-            this.standardCharset = true;
-        }
+        this.standardCharset = this.defaultCharset.equals(StandardCharsets.UTF_8);
     }
 
     @Override
@@ -138,6 +154,7 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
         Assert.notNull(javaTypeMapper, "'javaTypeMapper' cannot be null");
         this.javaTypeMapper = javaTypeMapper;
         this.typeMapperSet = true;
+        this.javaTypeCache.clear();
     }
 
     /**
@@ -184,6 +201,7 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
         }
         if (this.javaTypeMapper instanceof DefaultJackson2JavaTypeMapper) {
             ((DefaultJackson2JavaTypeMapper) this.javaTypeMapper).setTypePrecedence(typePrecedence);
+            this.javaTypeCache.clear();
         } else {
             throw new IllegalStateException("Type precedence is available with the DefaultJackson2JavaTypeMapper");
         }
@@ -236,6 +254,7 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
      */
     @Override
     public Object fromMessage(Message message, @Nullable Object conversionHint) throws MessageConversionException {
+        long start = System.nanoTime();
         Object content = null;
         MessageProperties properties = message.getMessageProperties();
         if (properties != null) {
@@ -258,6 +277,7 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
         if (content == null) {
             content = message.getBody();
         }
+        RabbitMqPlusMetrics.converter("from", start);
         return content;
     }
 
@@ -275,16 +295,14 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
                         this.objectMapper.getTypeFactory().constructType(
                                 ((ParameterizedTypeReference<?>) conversionHint).getType()));
             } else if (getClassMapper() == null) {
-                JavaType targetJavaType = getJavaTypeMapper()
-                        .toJavaType(message.getMessageProperties());
+                JavaType targetJavaType = resolveJavaType(message.getMessageProperties());
                 content = convertBytesToObject(message.getBody(),
                         encoding, targetJavaType);
             } else {
                 try {
-                    Class<?> targetClass = getClassMapper().toClass(// NOSONAR never null
-                            message.getMessageProperties());
+                    JavaType targetJavaType = resolveClassMapperType(message.getMessageProperties());
                     content = convertBytesToObject(message.getBody(),
-                            encoding, targetClass);
+                            encoding, targetJavaType);
                 } catch (MessageConversionException ex) {
                     return new String(message.getBody());
                 }
@@ -297,14 +315,47 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
         return content;
     }
 
-    private Object convertBytesToObject(byte[] body, String encoding, JavaType targetJavaType) throws IOException {
-        String contentAsString = new String(body, encoding);
-        return this.objectMapper.readValue(contentAsString, targetJavaType);
+    /**
+     * 类型只由消息头决定时, 按消息头缓存解析结果; 使用自定义的 typeMapper 或者由监听方法参数推断类型时, 每次都交给 typeMapper 解析
+     */
+    private JavaType resolveJavaType(MessageProperties properties) {
+        if (this.typeMapperSet || (properties.getInferredArgumentType() != null
+                && getTypePrecedence() == Jackson2JavaTypeMapper.TypePrecedence.INFERRED)) {
+            return getJavaTypeMapper().toJavaType(properties);
+        }
+        Map<String, Object> headers = properties.getHeaders();
+        Object typeId = headers.get(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        if (!(typeId instanceof String)) {
+            return getJavaTypeMapper().toJavaType(properties);
+        }
+        String key = typeId + "|" + headers.get(AbstractJavaTypeMapper.DEFAULT_CONTENT_CLASSID_FIELD_NAME)
+                + "|" + headers.get(AbstractJavaTypeMapper.DEFAULT_KEY_CLASSID_FIELD_NAME);
+        return this.javaTypeCache.computeIfAbsent(key, k -> getJavaTypeMapper().toJavaType(properties));
     }
 
-    private Object convertBytesToObject(byte[] body, String encoding, Class<?> targetClass) throws IOException {
-        String contentAsString = new String(body, encoding);
-        return this.objectMapper.readValue(contentAsString, this.objectMapper.constructType(targetClass));
+    /**
+     * {@link DefaultClassMapper} 只按类型消息头决定类型, 按消息头的值缓存解析结果; 其它 ClassMapper 每次都重新解析
+     */
+    private JavaType resolveClassMapperType(MessageProperties properties) {
+        ClassMapper mapper = getClassMapper(); // NOSONAR never null
+        if (!(mapper instanceof DefaultClassMapper)) {
+            return this.objectMapper.constructType(mapper.toClass(properties));
+        }
+        Object typeId = properties.getHeaders().get(((DefaultClassMapper) mapper).getClassIdFieldName());
+        if (typeId != null && !(typeId instanceof String)) {
+            return this.objectMapper.constructType(mapper.toClass(properties));
+        }
+        return this.javaTypeCache.computeIfAbsent("class|" + typeId,
+                k -> this.objectMapper.constructType(mapper.toClass(properties)));
+    }
+
+    private Object convertBytesToObject(byte[] body, String encoding, JavaType targetJavaType) throws IOException {
+        ObjectReader reader = this.readerCache.computeIfAbsent(targetJavaType, this.objectMapper::readerFor);
+        //jackson 直接从字节解析 UTF-8, 其它编码通过 Reader 解码, 都不需要生成中间的 String
+        if (StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding)) {
+            return reader.readValue(body);
+        }
+        return reader.readValue(new InputStreamReader(new ByteArrayInputStream(body), encoding));
     }
 
     @Override
@@ -318,13 +369,15 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
     protected Message createMessage(Object objectToConvert, MessageProperties messageProperties,
             @Nullable Type genericType) throws MessageConversionException {
 
+        long start = System.nanoTime();
         byte[] bytes;
         try {
+            ObjectWriter writer = this.writerCache.computeIfAbsent(objectToConvert.getClass(), this.objectMapper::writerFor);
             if (this.standardCharset) {
-                bytes = this.objectMapper.writeValueAsBytes(objectToConvert);
+                //writeValueAsBytes 使用 jackson 线程内复用的缓冲区, 只在最后复制一次结果
+                bytes = writer.writeValueAsBytes(objectToConvert);
             } else {
-                String jsonString = this.objectMapper
-                        .writeValueAsString(objectToConvert);
+                String jsonString = writer.writeValueAsString(objectToConvert);
                 bytes = jsonString.getBytes(getDefaultCharset());
             }
         } catch (IOException e) {
@@ -346,6 +399,7 @@ public class MyJackson2JsonMessageConverter extends AbstractMessageConverter
             getClassMapper().fromClass(objectToConvert.getClass(), messageProperties); // NOSONAR never null
         }
 
+        RabbitMqPlusMetrics.converter("to", start);
         return new Message(bytes, messageProperties);
     }
 
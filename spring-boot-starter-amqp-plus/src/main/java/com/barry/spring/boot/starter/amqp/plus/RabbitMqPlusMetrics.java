@@ -0,0 +1,105 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * amqp-plus 的监控指标
+ * <p>
+ * 注册到 {@link Metrics#globalRegistry}, spring boot actuator 默认把自己的 registry 加入 globalRegistry, 指标通过已有的 /actuator/metrics,
+ * /actuator/prometheus 暴露. 没有 actuator 时 globalRegistry 为空, 记录指标没有开销.
+ * <ul>
+ *     <li>amqp.plus.retry: 重试的消息数, tag route_key, outcome=retry|exhausted</li>
+ *     <li>amqp.plus.retry.count: 每次重试时的重试次数分布, tag route_key</li>
+ *     <li>amqp.plus.delay.requested / amqp.plus.delay.actual: 请求的延迟和实际的延迟, tag source=queue|scheduled</li>
+ *     <li>amqp.plus.forward: retry-queue 转发到原队列的耗时</li>
+ *     <li>amqp.plus.fail.process: 失败消息处理的耗时, tag processor</li>
+ *     <li>amqp.plus.converter: 消息转换的耗时, tag operation=from|to</li>
+ *     <li>amqp.plus.queue.depth: 延迟, 重试, 失败队列的消息数, tag queue</li>
+ * </ul>
+ *
+ * @author barry chen
+ */
+@Slf4j
+public final class RabbitMqPlusMetrics {
+
+    public static final String RETRY = "amqp.plus.retry";
+    public static final String RETRY_COUNT = "amqp.plus.retry.count";
+    public static final String DELAY_REQUESTED = "amqp.plus.delay.requested";
+    public static final String DELAY_ACTUAL = "amqp.plus.delay.actual";
+    public static final String FORWARD = "amqp.plus.forward";
+    public static final String FAIL_PROCESS = "amqp.plus.fail.process";
+    public static final String CONVERTER = "amqp.plus.converter";
+    public static final String QUEUE_DEPTH = "amqp.plus.queue.depth";
+
+    /**
+     * 队列深度需要访问 broker, 每个队列最多每隔该时间查询一次
+     */
+    private static final long QUEUE_DEPTH_CACHE_SECONDS = 10;
+
+    private static final MeterRegistry REGISTRY = Metrics.globalRegistry;
+
+    private RabbitMqPlusMetrics() {
+    }
+
+    static void retry(String routeKey, int retryCount) {
+        Counter.builder(RETRY).tag("route_key", String.valueOf(routeKey)).tag("outcome", "retry").register(REGISTRY).increment();
+        DistributionSummary.builder(RETRY_COUNT).tag("route_key", String.valueOf(routeKey)).register(REGISTRY).record(retryCount);
+    }
+
+    static void retryExhausted(String routeKey) {
+        Counter.builder(RETRY).tag("route_key", String.valueOf(routeKey)).tag("outcome", "exhausted").register(REGISTRY).increment();
+    }
+
+    /**
+     * @param source          queue: 延迟队列, scheduled: {@link ScheduledMessageDispatcher}
+     * @param requestedMillis 请求的延迟
+     * @param actualMillis    从发送到转发的实际延迟
+     */
+    static void delay(String source, long requestedMillis, long actualMillis) {
+        Timer.builder(DELAY_REQUESTED).tag("source", source).publishPercentileHistogram().register(REGISTRY)
+                .record(requestedMillis, TimeUnit.MILLISECONDS);
+        Timer.builder(DELAY_ACTUAL).tag("source", source).publishPercentileHistogram().register(REGISTRY)
+                .record(Math.max(0, actualMillis), TimeUnit.MILLISECONDS);
+    }
+
+    static void forward(long startNanos) {
+        Timer.builder(FORWARD).register(REGISTRY).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    static void failProcess(Class<?> processor, long startNanos) {
+        Timer.builder(FAIL_PROCESS).tag("processor", processor.getSimpleName()).register(REGISTRY)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    static void converter(String operation, long startNanos) {
+        Timer.builder(CONVERTER).tag("operation", operation).register(REGISTRY).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 注册队列深度, 查询失败时为 NaN
+     */
+    static void queueDepth(AmqpAdmin amqpAdmin, String queue) {
+        Supplier<Double> depth = Suppliers.memoizeWithExpiration(() -> {
+            try {
+                QueueInformation information = amqpAdmin.getQueueInfo(queue);
+                return information == null ? Double.NaN : information.getMessageCount();
+            } catch (Exception e) {
+                log.debug("query depth of queue {} fail", queue, e);
+                return Double.NaN;
+            }
+        }, QUEUE_DEPTH_CACHE_SECONDS, TimeUnit.SECONDS);
+        Gauge.builder(QUEUE_DEPTH, depth, Supplier::get).tag("queue", queue).strongReference(true).register(REGISTRY);
+    }
+}
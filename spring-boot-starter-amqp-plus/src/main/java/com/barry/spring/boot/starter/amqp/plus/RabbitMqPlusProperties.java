@@ -0,0 +1,236 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.collect.Lists;
+import lombok.Data;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * amqp-plus 配置
+ *
+ * @author barry chen
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "spring.rabbitmq.plus")
+public class RabbitMqPlusProperties {
+
+    private Retry retry = new Retry();
+
+    private FailBuffer failBuffer = new FailBuffer();
+
+    private Redelivery redelivery = new Redelivery();
+
+    private BatchListener batchListener = new BatchListener();
+
+    private Publisher publisher = new Publisher();
+
+    private Scheduled scheduled = new Scheduled();
+
+    private Dedup dedup = new Dedup();
+
+    @Data
+    public static class Retry {
+        /**
+         * 分级延迟队列, 每一级一个固定 TTL 的队列, 避免不同延迟的消息互相阻塞
+         */
+        private List<Duration> delayTiers = Lists.newArrayList(Duration.ofSeconds(1), Duration.ofSeconds(5),
+                Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(30));
+        /**
+         * 指数退避: 第一次重试的延迟
+         */
+        private Duration initialInterval = Duration.ofSeconds(1);
+        /**
+         * 指数退避: 每次重试延迟的倍数
+         */
+        private double multiplier = 5.0;
+        /**
+         * 指数退避: 最大延迟
+         */
+        private Duration maxInterval = Duration.ofMinutes(30);
+    }
+
+    /**
+     * {@link BufferedDatabaseFailMessageProcessor} 的缓冲配置
+     */
+    @Data
+    public static class FailBuffer {
+        /**
+         * 内存队列容量
+         */
+        private int capacity = 10000;
+        /**
+         * 每批写入的最大条数
+         */
+        private int batchSize = 200;
+        /**
+         * 不满一批时, 最多等待的时间
+         */
+        private Duration flushInterval = Duration.ofMillis(500);
+        /**
+         * 队列满时的处理策略
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.SPILL;
+        /**
+         * 数据库不可用或队列满时, 失败消息写入的本地目录
+         */
+        private String spillDirectory = System.getProperty("java.io.tmpdir") + "/mq-fail-message";
+        /**
+         * 本地文件重新写入数据库的间隔
+         */
+        private Duration replayInterval = Duration.ofSeconds(30);
+    }
+
+    /**
+     * {@link FailMessageRedeliveryService} 的配置
+     */
+    @Data
+    public static class Redelivery {
+        /**
+         * 每秒最多重新投递的消息数
+         */
+        private double permitsPerSecond = 500;
+        /**
+         * 每页读取的行数, 也是等待确认和批量更新的粒度
+         */
+        private int pageSize = 500;
+        /**
+         * 等待 publisher confirm 的超时时间
+         */
+        private Duration confirmTimeout = Duration.ofSeconds(10);
+    }
+
+    /**
+     * 批量消费容器 {@link BatchListenerConfiguration#BATCH_LISTENER_CONTAINER_FACTORY} 的配置,
+     * 其它配置沿用 spring.rabbitmq.listener.simple
+     */
+    @Data
+    public static class BatchListener {
+        /**
+         * 每批最多的消息数
+         */
+        private int batchSize = 100;
+        /**
+         * 不满一批时, 最多等待的时间
+         */
+        private Duration receiveTimeout = Duration.ofMillis(200);
+        /**
+         * 每个消费者预取的消息数, 不小于 batchSize
+         */
+        private int prefetch = 250;
+        /**
+         * 确认模式, 为空时沿用 spring.rabbitmq.listener.simple.acknowledge-mode.
+         * MANUAL 时配合 {@link RabbitMqRetryHelper#processBatch(java.util.List, com.rabbitmq.client.Channel,
+         * java.util.function.Consumer, Integer, IFailMessageProcessor)} 只重新投递转移失败的消息
+         */
+        private AcknowledgeMode acknowledgeMode;
+    }
+
+    /**
+     * {@link AsyncRabbitPublisher} 的配置
+     */
+    @Data
+    public static class Publisher {
+        /**
+         * 最多未确认的消息数, 达到后发送线程等待
+         */
+        private int maxOutstanding = 10000;
+        /**
+         * 等待 publisher confirm 的超时时间
+         */
+        private Duration confirmTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * {@link ScheduledMessageDispatcher} 的配置
+     */
+    @Data
+    public static class Scheduled {
+        /**
+         * 延迟达到该值的消息存储到 mq_scheduled_message, 不进入延迟队列
+         */
+        private Duration threshold = Duration.ofHours(1);
+        /**
+         * 扫描 mq_scheduled_message 的间隔
+         */
+        private Duration pollInterval = Duration.ofSeconds(10);
+        /**
+         * 每次扫描领取未来多长时间内到期的消息放入时间轮, 需要大于 pollInterval
+         */
+        private Duration lookahead = Duration.ofSeconds(30);
+        /**
+         * 时间轮每一格的时间, 也是投递的精度
+         */
+        private Duration tickDuration = Duration.ofMillis(100);
+        /**
+         * 时间轮的格数
+         */
+        private int wheelSize = 512;
+        /**
+         * 每批领取, 投递, 删除的消息数
+         */
+        private int batchSize = 500;
+        /**
+         * 时间轮中最多等待投递的消息数, 达到后本次扫描不再领取, 剩余的消息留在数据库中等下一次扫描
+         */
+        private int maxPending = 50_000;
+        /**
+         * 领取后超过该时间仍未投递(如进程退出), 消息可以被重新领取
+         */
+        private Duration claimTimeout = Duration.ofMinutes(5);
+    }
+
+    /**
+     * {@link MessageDeduplicator} 的配置
+     */
+    @Data
+    public static class Dedup {
+        /**
+         * 是否为所有监听容器开启消息去重
+         */
+        private boolean enabled = false;
+        /**
+         * 作为去重标识的消息头, 为空时使用 messageId
+         */
+        private String header;
+        /**
+         * 本地缓存的消息数
+         */
+        private long localCapacity = 100_000;
+        /**
+         * 本地缓存的时间
+         */
+        private Duration localTtl = Duration.ofMinutes(10);
+        /**
+         * 处理中的标记在 redis 中的保留时间, 处理进程异常退出后, 超过该时间的重复消息可以重新处理
+         */
+        private Duration processingTtl = Duration.ofMinutes(5);
+        /**
+         * 处理完成的标记在 redis 中的保留时间
+         */
+        private Duration ttl = Duration.ofHours(24);
+        /**
+         * redis key 的前缀
+         */
+        private String keyPrefix = "MQ_DEDUP_";
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * 写入本地文件, 数据库恢复后重新写入
+         */
+        SPILL,
+        /**
+         * 丢弃并记录日志
+         */
+        DISCARD,
+        /**
+         * 由消费线程同步写入数据库
+         */
+        CALLER_RUNS
+    }
+}
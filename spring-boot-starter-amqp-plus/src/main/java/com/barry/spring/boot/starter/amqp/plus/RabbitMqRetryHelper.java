@@ -1,9 +1,15 @@
 package com.barry.spring.boot.starter.amqp.plus;
 
+import com.rabbitmq.client.Channel;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpIOException;
 import org.springframework.amqp.AmqpIllegalStateException;
+import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.ExchangeBuilder;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
@@ -11,14 +17,25 @@ import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * 延迟重试队列
@@ -36,6 +53,11 @@ public class RabbitMqRetryHelper {
     public static final String X_ORI_EXCHANGE = "x-ori-exchange";
     public static final String X_ORI_ROUTE_KEY = "x-ori-route-key";
     public static final String X_RETRY_COUNT = "x-retry-count";
+    /**
+     * 发送到延迟队列的时间和请求的延迟, 用于统计实际的延迟
+     */
+    public static final String X_DELAY_SENT_AT = "x-delay-sent-at";
+    public static final String X_DELAY_REQUESTED = "x-delay-requested";
     public static final String RETRY_EXCHANGE = "retry-exchange";
     public static final String RETRY_ROUTE_KEY = "retry";
     public static final String RETRY_QUEUE = "retry-queue";
@@ -51,9 +73,25 @@ public class RabbitMqRetryHelper {
     private static final Long FAIL_MAX_EXPIRATION_TIME = 14L * 24 * 3600 * 1000;
     private static final Long DELAY_MAX_EXPIRATION_TIME = 12L * 3600 * 1000;
     public final RabbitTemplate rabbitTemplate;
+    private final DelayTiers delayTiers;
+    private ScheduledMessageDispatcher scheduledMessageDispatcher;
 
     public RabbitMqRetryHelper(RabbitTemplate rabbitTemplate) {
+        this(rabbitTemplate, new RabbitMqPlusProperties());
+    }
+
+    @Autowired
+    public RabbitMqRetryHelper(RabbitTemplate rabbitTemplate, RabbitMqPlusProperties properties) {
         this.rabbitTemplate = rabbitTemplate;
+        this.delayTiers = new DelayTiers(properties.getRetry());
+    }
+
+    /**
+     * 配置后, 延迟达到 {@link ScheduledMessageDispatcher#getThreshold()} 的消息存储到数据库, 不进入延迟队列
+     */
+    @Autowired(required = false)
+    public void setScheduledMessageDispatcher(ScheduledMessageDispatcher scheduledMessageDispatcher) {
+        this.scheduledMessageDispatcher = scheduledMessageDispatcher;
     }
 
     /**
@@ -63,7 +101,7 @@ public class RabbitMqRetryHelper {
      * @param routeKey    原路由(队列)
      * @param message     消息
      * @param retryTimes  想要重试的次数,默认1次.如果传入0,则不重试
-     * @param delayPeriod 每次重试的间隔, 单位:毫秒
+     * @param delayPeriod 每次重试的间隔, 单位:毫秒, 不超过最大一级时向上取到最近的一级
      * @param toFail      达到重试上限后,是否进入fail队列
      */
     public void retry(String routeKey, Message message, Integer retryTimes, Integer delayPeriod, boolean toFail) {
@@ -82,7 +120,7 @@ public class RabbitMqRetryHelper {
      * @param routeKey    原路由(队列)
      * @param message     消息
      * @param retryTimes  想要重试的次数,默认1次.如果传入0,则不重试
-     * @param delayPeriod 每次重试的间隔, 单位:毫秒
+     * @param delayPeriod 每次重试的间隔, 单位:毫秒, 不超过最大一级时向上取到最近的一级
      * @param toFail      达到重试上限后,是否进入fail队列
      */
     public void retry(String exchange, String routeKey, Message message, Integer retryTimes, Integer delayPeriod, boolean toFail) {
@@ -99,11 +137,167 @@ public class RabbitMqRetryHelper {
 
     public void retry(String exchange, String routeKey, Message message, Integer retryTimes, Integer delayPeriod, boolean toFail, IFailMessageProcessor processor,
             Exception ex) {
+        Integer retryCount = prepareRetry(exchange, routeKey, message, retryTimes, toFail, processor, ex);
+        if (retryCount == null) {
+            return;
+        }
+        //设置消息的延迟时间,优先级高于延迟队列的覆盖延迟队列的默认时间
+        if (delayPeriod != null) {
+            sendWithDelay(message, delayPeriod, null);
+        } else {
+            rabbitTemplate.send(DELAY_EXCHANGE, DELAY_ROUTE_KEY, message);
+        }
+    }
+
+    /**
+     * 按指数退避发送消息进入分级延迟队列, 达到重试上限后交给processor处理, processor为null时进入fail队列.
+     * 第n次重试的延迟为 min(initialInterval * multiplier^(n-1), maxInterval), 向上取到最近的一级延迟队列,
+     * 配置见 {@link RabbitMqPlusProperties.Retry}
+     *
+     * @param exchange   原交换机(主题)
+     * @param routeKey   原路由(队列)
+     * @param message    消息
+     * @param retryTimes 想要重试的次数,默认1次.如果传入0,则不重试
+     * @param processor  达到重试上限后的处理
+     * @param ex         消费异常
+     */
+    public void retryWithBackoff(String exchange, String routeKey, Message message, Integer retryTimes, IFailMessageProcessor processor,
+            Exception ex) {
+        Integer retryCount = prepareRetry(exchange, routeKey, message, retryTimes, processor == null, processor, ex);
+        if (retryCount == null) {
+            return;
+        }
+        long tier = delayTiers.tierFor(delayTiers.backoff(retryCount));
+        markDelay(message, tier);
+        rabbitTemplate.send(DELAY_EXCHANGE, DelayTiers.routeKey(tier), message);
+    }
+
+    public void retryWithBackoff(String routeKey, Message message, Integer retryTimes, IFailMessageProcessor processor, Exception ex) {
+        retryWithBackoff(rabbitTemplate.getExchange(), routeKey, message, retryTimes, processor, ex);
+    }
+
+    /**
+     * 逐条处理批量消费的消息, 失败的消息按指数退避进入分级延迟队列, 达到重试上限后交给processor处理.
+     * 失败的消息已经转移, 方法正常返回, 整批消息都会被确认.
+     * <p>
+     * 失败的消息转移失败(如 broker 或数据库不可用)时继续处理其它消息, 最后抛出 {@link AmqpException},
+     * AUTO 确认模式下整批消息会重新投递. 需要只重新投递转移失败的消息时, 使用
+     * {@link #processBatch(List, Channel, Consumer, Integer, IFailMessageProcessor)}.
+     *
+     * @param messages   批量消息
+     * @param handler    单条消息的处理
+     * @param retryTimes 想要重试的次数,默认1次.如果传入0,则不重试
+     * @param processor  达到重试上限后的处理, 为null时进入fail队列
+     * @return 失败的消息数
+     * @see BatchListenerConfiguration
+     */
+    public int processBatch(List<Message> messages, Consumer<Message> handler, Integer retryTimes, IFailMessageProcessor processor) {
+        BatchOutcome outcome = handleBatch(messages, handler, retryTimes, processor);
+        if (outcome.transferError != null) {
+            throw new AmqpException(outcome.untransferred.size() + " failed message(s) could not be transferred", outcome.transferError);
+        }
+        return outcome.failed;
+    }
+
+    /**
+     * 手动确认模式下逐条处理批量消费的消息, 处理成功和已经转移到重试/失败队列的消息逐条确认,
+     * 转移失败的消息单独 nack 并重新入队, 其它消息不会重新投递.
+     * <p>
+     * 需要容器工厂使用 {@link org.springframework.amqp.core.AcknowledgeMode#MANUAL},
+     * 见 {@link RabbitMqPlusProperties.BatchListener#getAcknowledgeMode()}.
+     * <pre>
+     * {@code
+     * @RabbitListener(queues = "order-queue", containerFactory = BatchListenerConfiguration.BATCH_LISTENER_CONTAINER_FACTORY)
+     * public void onMessages(List<Message> messages, Channel channel) {
+     *     retryHelper.processBatch(messages, channel, message -> handle(message), 3, failMessageProcessor);
+     * }
+     * }
+     * </pre>
+     *
+     * @param messages   批量消息
+     * @param channel    消费消息的 channel
+     * @param handler    单条消息的处理
+     * @param retryTimes 想要重试的次数,默认1次.如果传入0,则不重试
+     * @param processor  达到重试上限后的处理, 为null时进入fail队列
+     * @return 失败的消息数
+     */
+    public int processBatch(List<Message> messages, Channel channel, Consumer<Message> handler, Integer retryTimes,
+            IFailMessageProcessor processor) {
+        BatchOutcome outcome = handleBatch(messages, handler, retryTimes, processor);
+        try {
+            if (outcome.untransferred.isEmpty()) {
+                if (!messages.isEmpty()) {
+                    channel.basicAck(messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag(), true);
+                }
+                return outcome.failed;
+            }
+            for (Message message : messages) {
+                long deliveryTag = message.getMessageProperties().getDeliveryTag();
+                if (outcome.untransferred.contains(message)) {
+                    channel.basicNack(deliveryTag, false, true);
+                } else {
+                    channel.basicAck(deliveryTag, false);
+                }
+            }
+        } catch (IOException e) {
+            throw new AmqpIOException(e);
+        }
+        return outcome.failed;
+    }
+
+    private BatchOutcome handleBatch(List<Message> messages, Consumer<Message> handler, Integer retryTimes, IFailMessageProcessor processor) {
+        BatchOutcome outcome = new BatchOutcome();
+        for (Message message : messages) {
+            try {
+                handler.accept(message);
+            } catch (Exception e) {
+                outcome.failed++;
+                MessageProperties properties = message.getMessageProperties();
+                String exchange = properties.getHeader(X_ORI_EXCHANGE);
+                String routeKey = properties.getHeader(X_ORI_ROUTE_KEY);
+                if (routeKey == null) {
+                    exchange = properties.getReceivedExchange();
+                    routeKey = properties.getReceivedRoutingKey();
+                }
+                try {
+                    retryWithBackoff(exchange, routeKey, message, retryTimes, processor, e);
+                } catch (RuntimeException transferError) {
+                    outcome.untransferred.add(message);
+                    if (outcome.transferError == null) {
+                        outcome.transferError = transferError;
+                    } else {
+                        outcome.transferError.addSuppressed(transferError);
+                    }
+                }
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * 批量消息的处理结果
+     */
+    private static class BatchOutcome {
+        private int failed;
+        /**
+         * 处理失败, 并且没有转移到重试/失败队列的消息
+         */
+        private final Set<Message> untransferred = Collections.newSetFromMap(new IdentityHashMap<>());
+        private RuntimeException transferError;
+    }
+
+    /**
+     * 设置原路由和重试次数, 达到重试上限时处理失败消息
+     *
+     * @return 本次重试的次数, 从1开始. 不需要重试时返回null
+     */
+    private Integer prepareRetry(String exchange, String routeKey, Message message, Integer retryTimes, boolean toFail,
+            IFailMessageProcessor processor, Exception ex) {
         if (retryTimes == null) {
             retryTimes = 1;
         }
         if (retryTimes <= 0) {
-            return;
+            return null;
         }
         Map<String, Object> headers = message.getMessageProperties().getHeaders();
         if (!StringUtils.isBlank(exchange)) {
@@ -111,28 +305,43 @@ public class RabbitMqRetryHelper {
         }
         message.getMessageProperties().setHeader(X_ORI_ROUTE_KEY, routeKey);
         //设置重试次数
-        if (retryTimes != null && retryTimes > 0) {
-            Integer retryCount;
-            if (headers.get(X_RETRY_COUNT) != null) {
-                retryCount = (Integer) headers.get(X_RETRY_COUNT);
-            } else {
-                retryCount = 0;
-            }
-            if (retryCount >= retryTimes) {
-                if (processor != null) {
-                    processor.process(message, ex);
-                } else if (toFail) {
-                    rabbitTemplate.send(FAIL_EXCHANGE, FAIL_ROUTE_KEY, message);
-                }
-                return;
+        Integer retryCount;
+        if (headers.get(X_RETRY_COUNT) != null) {
+            retryCount = (Integer) headers.get(X_RETRY_COUNT);
+        } else {
+            retryCount = 0;
+        }
+        if (retryCount >= retryTimes) {
+            RabbitMqPlusMetrics.retryExhausted(routeKey);
+            if (processor != null) {
+                processor.process(message, ex);
+            } else if (toFail) {
+                rabbitTemplate.send(FAIL_EXCHANGE, FAIL_ROUTE_KEY, message);
             }
-            message.getMessageProperties().setHeader(X_RETRY_COUNT, retryCount + 1);
+            return null;
         }
-        //设置消息的延迟时间,优先级高于延迟队列的覆盖延迟队列的默认时间
-        if (delayPeriod != null) {
-            message.getMessageProperties().setExpiration(delayPeriod.toString());
+        message.getMessageProperties().setHeader(X_RETRY_COUNT, retryCount + 1);
+        RabbitMqPlusMetrics.retry(routeKey, retryCount + 1);
+        return retryCount + 1;
+    }
+
+    /**
+     * 延迟不超过最大一级时, 向上取到最近的一级, 进入对应的分级延迟队列.
+     * 超过最大一级时进入 delay-queue 并设置消息的过期时间, 较长的延迟会阻塞后面较短的延迟
+     */
+    private void sendWithDelay(Message message, long delayPeriod, CorrelationData correlationData) {
+        markDelay(message, delayPeriod);
+        if (delayPeriod <= delayTiers.getMaxTier()) {
+            rabbitTemplate.send(DELAY_EXCHANGE, DelayTiers.routeKey(delayTiers.tierFor(delayPeriod)), message, correlationData);
+            return;
         }
-        rabbitTemplate.send(DELAY_EXCHANGE, DELAY_ROUTE_KEY, message);
+        message.getMessageProperties().setExpiration(Long.toString(delayPeriod));
+        rabbitTemplate.send(DELAY_EXCHANGE, DELAY_ROUTE_KEY, message, correlationData);
+    }
+
+    private static void markDelay(Message message, long delayPeriod) {
+        message.getMessageProperties().setHeader(X_DELAY_SENT_AT, System.currentTimeMillis());
+        message.getMessageProperties().setHeader(X_DELAY_REQUESTED, delayPeriod);
     }
 
     /**
@@ -140,7 +349,7 @@ public class RabbitMqRetryHelper {
      * 没有指定exchange,发送到默认exchange {@link RabbitTemplate#getExchange()}
      * @param routingKey  路由(队列)
      * @param object      消息
-     * @param delayPeriod 每次重试的间隔, 单位:毫秒
+     * @param delayPeriod 每次重试的间隔, 单位:毫秒, 不超过最大一级时向上取到最近的一级
      */
     public void convertAndSendWithDelay(String routingKey, Object object, Integer delayPeriod){
         convertAndSendWithDelay(rabbitTemplate.getExchange(), routingKey, object, delayPeriod);
@@ -152,14 +361,37 @@ public class RabbitMqRetryHelper {
      * @param exchange    交换机(主题)
      * @param routingKey  路由(队列)
      * @param object      消息
-     * @param delayPeriod 每次重试的间隔, 单位:毫秒
+     * @param delayPeriod 每次重试的间隔, 单位:毫秒, 不超过最大一级时向上取到最近的一级
      */
     public void convertAndSendWithDelay(String exchange, String routingKey, Object object, Integer delayPeriod){
+        convertAndSendWithDelay(exchange, routingKey, object, delayPeriod, null);
+    }
+
+    /**
+     * 转换Object为Message, 然后发送. 延迟一定时间后,才会被消费
+     *
+     * @param exchange        交换机(主题)
+     * @param routingKey      路由(队列)
+     * @param object          消息
+     * @param delayPeriod     每次重试的间隔, 单位:毫秒, 不超过最大一级时向上取到最近的一级
+     * @param correlationData publisher confirm 的关联数据, 可以为null
+     * @see AsyncRabbitPublisher#convertAndSendWithDelay(String, String, Object, Integer)
+     */
+    public void convertAndSendWithDelay(String exchange, String routingKey, Object object, Integer delayPeriod,
+            CorrelationData correlationData) {
         Message message = convertMessageIfNecessary(object);
         message.getMessageProperties().setHeader(X_ORI_EXCHANGE, exchange);
         message.getMessageProperties().setHeader(X_ORI_ROUTE_KEY, routingKey);
-        message.getMessageProperties().setExpiration(delayPeriod.toString());
-        rabbitTemplate.send(DELAY_EXCHANGE, DELAY_ROUTE_KEY, message);
+        if (scheduledMessageDispatcher != null && delayPeriod >= scheduledMessageDispatcher.getThreshold()) {
+            markDelay(message, delayPeriod);
+            scheduledMessageDispatcher.schedule(exchange, routingKey, message, System.currentTimeMillis() + delayPeriod);
+            //写入数据库成功即视为确认
+            if (correlationData != null) {
+                correlationData.getFuture().set(new CorrelationData.Confirm(true, null));
+            }
+            return;
+        }
+        sendWithDelay(message, delayPeriod, correlationData);
     }
 
     public Message convertMessageIfNecessary(final Object object) {
@@ -195,6 +427,37 @@ public class RabbitMqRetryHelper {
         return BindingBuilder.bind(queue).to(exchange).with(DELAY_ROUTE_KEY);
     }
 
+    /**
+     * 分级延迟队列, 每一级的消息过期后进入retryExchange
+     */
+    @Bean
+    public Declarables delayTierDeclarables(@Qualifier("delayExchange") TopicExchange exchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (Long tier : delayTiers.getTiers()) {
+            Map<String, Object> args = new ConcurrentHashMap<>(3);
+            args.put(X_DEAD_LETTER_EXCHANGE, RETRY_EXCHANGE);
+            args.put(X_DEAD_LETTER_ROUTING_KEY, RETRY_ROUTE_KEY);
+            args.put(X_MESSAGE_TTL, tier);
+            Queue queue = QueueBuilder.durable(DelayTiers.queueName(tier)).withArguments(args).build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(DelayTiers.routeKey(tier)));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * 延迟, 重试, 失败队列的深度
+     */
+    @Bean
+    public SmartInitializingSingleton queueDepthMetrics(ObjectProvider<AmqpAdmin> amqpAdmin) {
+        return () -> amqpAdmin.ifAvailable(admin -> {
+            RabbitMqPlusMetrics.queueDepth(admin, DELAY_QUEUE);
+            delayTiers.getTiers().forEach(tier -> RabbitMqPlusMetrics.queueDepth(admin, DelayTiers.queueName(tier)));
+            RabbitMqPlusMetrics.queueDepth(admin, RETRY_QUEUE);
+            RabbitMqPlusMetrics.queueDepth(admin, FAIL_QUEUE);
+        });
+    }
+
     @Bean
     public Queue retryQueue() {
         return new Queue(RETRY_QUEUE);
@@ -234,8 +497,22 @@ public class RabbitMqRetryHelper {
      */
     @RabbitListener(queues = "retry-queue")
     public void forwardMessage(Message message) {
+        long start = System.nanoTime();
         Map<String, Object> headers = message.getMessageProperties().getHeaders();
+        recordDelay("queue", headers);
         rabbitTemplate.send((String) headers.get(X_ORI_EXCHANGE), (String) headers.get(X_ORI_ROUTE_KEY), message);
+        RabbitMqPlusMetrics.forward(start);
+    }
+
+    /**
+     * 统计发送到延迟队列时请求的延迟和实际的延迟, 统计后移除, 避免下一次没有设置延迟时重复统计
+     */
+    static void recordDelay(String source, Map<String, Object> headers) {
+        Object sentAt = headers.remove(X_DELAY_SENT_AT);
+        Object requested = headers.remove(X_DELAY_REQUESTED);
+        if (sentAt instanceof Number && requested instanceof Number) {
+            RabbitMqPlusMetrics.delay(source, ((Number) requested).longValue(), System.currentTimeMillis() - ((Number) sentAt).longValue());
+        }
     }
 
 }
@@ -0,0 +1,44 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.Date;
+
+/**
+ * 失败消息重新投递的筛选条件, 为null的条件不筛选
+ *
+ * @author barry chen
+ */
+@Data
+@Accessors(chain = true)
+public class RedeliveryQuery {
+    /**
+     * 异常类型
+     */
+    private String exceptionType;
+    /**
+     * 原队列
+     */
+    private String oriQueue;
+    /**
+     * 原route key
+     */
+    private String oriRouteKey;
+    /**
+     * 失败时间起(包含)
+     */
+    private Date failTimeFrom;
+    /**
+     * 失败时间止(不包含)
+     */
+    private Date failTimeTo;
+    /**
+     * 是否包含已经重新投递过的消息
+     */
+    private boolean includeRedelivered;
+    /**
+     * 最多投递的消息数, 为null时不限制
+     */
+    private Integer maxMessages;
+}
@@ -0,0 +1,24 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import lombok.Data;
+
+/**
+ * 失败消息重新投递的结果
+ *
+ * @author barry chen
+ */
+@Data
+public class RedeliveryResult {
+    /**
+     * 读取的行数
+     */
+    private long scanned;
+    /**
+     * broker 确认并标记为已投递的行数
+     */
+    private long redelivered;
+    /**
+     * 投递失败或确认超时的行数, 未标记, 可以再次投递
+     */
+    private long failed;
+}
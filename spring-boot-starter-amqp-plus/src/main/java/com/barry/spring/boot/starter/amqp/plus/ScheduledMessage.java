@@ -0,0 +1,28 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.amqp.core.Message;
+
+/**
+ * mq_scheduled_message 中的一条消息
+ *
+ * @author barry chen
+ */
+@Data
+@AllArgsConstructor
+class ScheduledMessage {
+
+    private String id;
+
+    private String exchange;
+
+    private String routeKey;
+
+    private Message message;
+
+    /**
+     * 投递时间, 毫秒时间戳
+     */
+    private long deliverTime;
+}
@@ -0,0 +1,192 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.barry.common.core.util.UUIDUtils;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 长延迟消息的调度
+ * <p>
+ * 延迟达到 threshold 的消息存储到 mq_scheduled_message, 不占用 broker 的内存, 也不受延迟队列 12 小时的上限限制.
+ * 后台线程每隔 pollInterval 领取 lookahead 内到期的消息放入时间轮, 时间轮每隔 tickDuration 推进一次, 把到期的消息按批次发送到原 exchange/route key,
+ * 发送后删除. 时间轮中的消息达到 maxPending 后暂停领取, 积压的消息留在数据库中.
+ * <p>
+ * 多个实例通过 claim_owner/claim_until 领取消息, 同一条消息同一时间只被一个实例领取. 实例退出时释放已领取未发送的消息,
+ * 异常退出时领取超过 claimTimeout 后可以被重新领取, 消息至少投递一次.
+ *
+ * <pre>
+ * {@code
+ * CREATE TABLE `mq_scheduled_message` (
+ *   `id` varchar(32) NOT NULL,
+ *   `ori_exchange` varchar(256) DEFAULT NULL,
+ *   `ori_route_key` varchar(256) DEFAULT NULL,
+ *   `message_binary` mediumblob NOT NULL,
+ *   `deliver_time` bigint NOT NULL,
+ *   `claim_owner` varchar(32) DEFAULT NULL,
+ *   `claim_until` bigint NOT NULL DEFAULT 0,
+ *   PRIMARY KEY (`id`),
+ *   KEY `idx_deliver_time` (`deliver_time`, `claim_until`)
+ * );
+ * }
+ * </pre>
+ *
+ * @author barry chen
+ * @see RabbitMqRetryHelper#convertAndSendWithDelay(String, String, Object, Integer)
+ */
+@Slf4j
+public class ScheduledMessageDispatcher implements DisposableBean {
+
+    public static final String DEFAULT_TABLE_NAME = "mq_scheduled_message";
+    private static final String INSERT_SQL = "INSERT INTO `mq_scheduled_message` (`id`, `ori_exchange`, `ori_route_key`, `message_binary`, `deliver_time`, `claim_until`) " +
+            "VALUES (?, ?, ?, ?, ?, 0)";
+    private static final String CLAIM_SQL = "UPDATE `mq_scheduled_message` SET `claim_owner` = ?, `claim_until` = ? " +
+            "WHERE `deliver_time` <= ? AND `claim_until` < ? ORDER BY `deliver_time` LIMIT ?";
+    private static final String SELECT_CLAIMED_SQL = "SELECT `id`, `ori_exchange`, `ori_route_key`, `message_binary`, `deliver_time` FROM `mq_scheduled_message` " +
+            "WHERE `claim_owner` = ? AND `claim_until` = ?";
+    private static final String DELETE_SQL = "DELETE FROM `mq_scheduled_message` WHERE `id` = ?";
+    private static final String RELEASE_SQL = "UPDATE `mq_scheduled_message` SET `claim_owner` = NULL, `claim_until` = 0 WHERE `claim_owner` = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitMqPlusProperties.Scheduled config;
+    private final String owner = UUIDUtils.uuid();
+    private final ScheduledMessageWheel wheel;
+    private final ScheduledExecutorService pollExecutor;
+    private final ScheduledExecutorService tickExecutor;
+    /**
+     * 上一次领取的截止时间, 保证 claim_until 每次都不同, 可以作为本次领取的标识
+     */
+    private long lastClaimUntil;
+
+    public ScheduledMessageDispatcher(DataSource dataSource, RabbitTemplate rabbitTemplate) {
+        this(dataSource, rabbitTemplate, new RabbitMqPlusProperties.Scheduled());
+    }
+
+    public ScheduledMessageDispatcher(DataSource dataSource, RabbitTemplate rabbitTemplate, RabbitMqPlusProperties.Scheduled config) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.rabbitTemplate = rabbitTemplate;
+        this.config = config;
+        long tickMillis = config.getTickDuration().toMillis();
+        this.wheel = new ScheduledMessageWheel(tickMillis, config.getWheelSize(), System.currentTimeMillis());
+        this.pollExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("scheduled-message-poll").setDaemon(true).build());
+        this.tickExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("scheduled-message-tick").setDaemon(true).build());
+        long pollMillis = config.getPollInterval().toMillis();
+        this.pollExecutor.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+        this.tickExecutor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 延迟达到该值(毫秒)的消息由本类调度
+     */
+    public long getThreshold() {
+        return config.getThreshold().toMillis();
+    }
+
+    /**
+     * 存储消息, 到期后发送到 exchange/route key
+     *
+     * @param exchange    交换机(主题)
+     * @param routeKey    路由(队列)
+     * @param message     消息
+     * @param deliverTime 投递时间, 毫秒时间戳
+     */
+    public void schedule(String exchange, String routeKey, Message message, long deliverTime) {
+        jdbcTemplate.update(INSERT_SQL, UUIDUtils.uuid(), exchange, routeKey, SerializationUtils.serialize(message), deliverTime);
+    }
+
+    /**
+     * 时间轮中等待投递的消息数
+     */
+    public int getPendingSize() {
+        return wheel.size();
+    }
+
+    private void poll() {
+        try {
+            long deliverBefore = System.currentTimeMillis() + config.getLookahead().toMillis();
+            //时间轮中的消息达到 maxPending 后不再领取, 避免积压时一次扫描把大量消息领取到内存
+            int limit;
+            while ((limit = Math.min(config.getBatchSize(), config.getMaxPending() - wheel.size())) > 0) {
+                List<ScheduledMessage> claimed = claim(deliverBefore, limit);
+                claimed.forEach(wheel::add);
+                if (claimed.size() < limit) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("poll scheduled message error", e);
+        }
+    }
+
+    private List<ScheduledMessage> claim(long deliverBefore, int limit) {
+        long now = System.currentTimeMillis();
+        long claimUntil = Math.max(deliverBefore + config.getClaimTimeout().toMillis(), lastClaimUntil + 1);
+        lastClaimUntil = claimUntil;
+        int updated = jdbcTemplate.update(CLAIM_SQL, owner, claimUntil, deliverBefore, now, limit);
+        if (updated == 0) {
+            return new ArrayList<>();
+        }
+        return jdbcTemplate.query(SELECT_CLAIMED_SQL, (rs, rowNum) -> new ScheduledMessage(rs.getString("id"),
+                rs.getString("ori_exchange"), rs.getString("ori_route_key"),
+                SerializationUtils.deserialize(rs.getBytes("message_binary")), rs.getLong("deliver_time")), owner, claimUntil);
+    }
+
+    private void tick() {
+        try {
+            List<ScheduledMessage> due = wheel.advance(System.currentTimeMillis());
+            for (List<ScheduledMessage> batch : Lists.partition(due, config.getBatchSize())) {
+                dispatch(batch);
+            }
+        } catch (Exception e) {
+            log.error("dispatch scheduled message error", e);
+        }
+    }
+
+    private void dispatch(List<ScheduledMessage> batch) {
+        List<ScheduledMessage> sent = new ArrayList<>(batch.size());
+        try {
+            for (ScheduledMessage message : batch) {
+                RabbitMqRetryHelper.recordDelay("scheduled", message.getMessage().getMessageProperties().getHeaders());
+                rabbitTemplate.send(message.getExchange(), message.getRouteKey(), message.getMessage());
+                sent.add(message);
+            }
+        } catch (Exception e) {
+            //未发送的消息在领取超时后被重新领取
+            log.error("send scheduled message fail, {} message(s) will be reclaimed after {}", batch.size() - sent.size(),
+                    config.getClaimTimeout(), e);
+        }
+        if (!sent.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, sent.stream().map(it -> new Object[]{it.getId()}).collect(Collectors.toList()));
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        pollExecutor.shutdownNow();
+        tickExecutor.shutdown();
+        tickExecutor.awaitTermination(config.getTickDuration().toMillis() * 10, TimeUnit.MILLISECONDS);
+        pollExecutor.awaitTermination(config.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            int released = jdbcTemplate.update(RELEASE_SQL, owner);
+            log.info("release {} claimed scheduled message(s)", released);
+        } catch (Exception e) {
+            log.warn("release claimed scheduled message fail, they will be reclaimed after {}", config.getClaimTimeout(), e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 哈希时间轮
+ * <p>
+ * 投递时间按 tickMillis 划分为格, 第 n 格的消息放入 n % wheelSize 号桶. 每次推进只检查经过的桶, 与桶中的消息数无关.
+ * 同一个桶中还有后面几圈的消息, 按记录的格号判断是否到期. 消息最多延后一格投递.
+ *
+ * @author barry chen
+ */
+class ScheduledMessageWheel {
+
+    private final long tickMillis;
+    private final List<Entry>[] buckets;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    ScheduledMessageWheel(long tickMillis, int wheelSize, long now) {
+        this.tickMillis = tickMillis;
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * 放入时间轮, 已经到期的消息放入下一次推进的格
+     */
+    synchronized void add(ScheduledMessage message) {
+        long tick = Math.max(currentTick, message.getDeliverTime() / tickMillis);
+        buckets[(int) (tick % buckets.length)].add(new Entry(tick, message));
+        size++;
+    }
+
+    /**
+     * 推进到 now 所在的格, 返回已经经过的格中的消息
+     */
+    synchronized List<ScheduledMessage> advance(long now) {
+        long targetTick = now / tickMillis;
+        List<ScheduledMessage> due = new ArrayList<>();
+        //一次推进超过一圈时, 每个桶只需要检查一次
+        long from = Math.max(currentTick, targetTick - buckets.length);
+        for (long tick = from; tick < targetTick; tick++) {
+            Iterator<Entry> iterator = buckets[(int) (tick % buckets.length)].iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.tick < targetTick) {
+                    due.add(entry.message);
+                    iterator.remove();
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+        size -= due.size();
+        return due;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private static class Entry {
+        private final long tick;
+        private final ScheduledMessage message;
+
+        private Entry(long tick, ScheduledMessage message) {
+            this.tick = tick;
+            this.message = message;
+        }
+    }
+}
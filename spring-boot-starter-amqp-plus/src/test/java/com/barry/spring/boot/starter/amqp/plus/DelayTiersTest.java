@@ -0,0 +1,81 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.barry.common.core.exception.BusinessException;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+
+/**
+ * @author barry chen
+ */
+public class DelayTiersTest {
+
+    private final DelayTiers delayTiers = new DelayTiers(new RabbitMqPlusProperties.Retry());
+
+    @Test
+    public void tierForTest() {
+        // 正好是某一级
+        Assert.assertEquals(1000L, delayTiers.tierFor(1000));
+        Assert.assertEquals(300_000L, delayTiers.tierFor(300_000));
+        // 不小于延迟的最小一级
+        Assert.assertEquals(1000L, delayTiers.tierFor(1));
+        Assert.assertEquals(5000L, delayTiers.tierFor(1001));
+        Assert.assertEquals(30_000L, delayTiers.tierFor(5001));
+        // 超过最大一级时取最大一级
+        Assert.assertEquals(1_800_000L, delayTiers.tierFor(1_800_001));
+        Assert.assertEquals(1_800_000L, delayTiers.tierFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void isTierTest() {
+        Assert.assertTrue(delayTiers.isTier(5000));
+        Assert.assertFalse(delayTiers.isTier(4999));
+        Assert.assertFalse(delayTiers.isTier(0));
+    }
+
+    @Test
+    public void maxTierTest() {
+        Assert.assertEquals(1_800_000L, delayTiers.getMaxTier());
+    }
+
+    @Test
+    public void backoffTest() {
+        Assert.assertEquals(1000L, delayTiers.backoff(0));
+        Assert.assertEquals(1000L, delayTiers.backoff(1));
+        Assert.assertEquals(5000L, delayTiers.backoff(2));
+        Assert.assertEquals(25_000L, delayTiers.backoff(3));
+        Assert.assertEquals(1_800_000L, delayTiers.backoff(6));
+        Assert.assertEquals(1_800_000L, delayTiers.backoff(100));
+        // 退避延迟落到对应的一级
+        Assert.assertEquals(30_000L, delayTiers.tierFor(delayTiers.backoff(3)));
+    }
+
+    @Test
+    public void customTiersTest() {
+        RabbitMqPlusProperties.Retry retry = new RabbitMqPlusProperties.Retry();
+        // 非正数忽略, 重复去重, 乱序排序
+        retry.setDelayTiers(Lists.newArrayList(Duration.ofSeconds(10), Duration.ZERO, Duration.ofMillis(1500),
+                Duration.ofSeconds(10), Duration.ofHours(1)));
+        DelayTiers tiers = new DelayTiers(retry);
+        Assert.assertEquals(Lists.newArrayList(1500L, 10_000L, 3_600_000L), tiers.getTiers());
+        Assert.assertEquals(1500L, tiers.tierFor(0));
+        Assert.assertEquals(3_600_000L, tiers.tierFor(7_200_000));
+    }
+
+    @Test(expected = BusinessException.class)
+    public void emptyTiersTest() {
+        RabbitMqPlusProperties.Retry retry = new RabbitMqPlusProperties.Retry();
+        retry.setDelayTiers(Lists.newArrayList());
+        new DelayTiers(retry);
+    }
+
+    @Test
+    public void nameTest() {
+        Assert.assertEquals("delay-queue.5s", DelayTiers.queueName(5000));
+        Assert.assertEquals("delay.5m", DelayTiers.routeKey(300_000));
+        Assert.assertEquals("2h", DelayTiers.name(7_200_000));
+        Assert.assertEquals("1500ms", DelayTiers.name(1500));
+    }
+}
@@ -0,0 +1,204 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author barry chen
+ */
+public class FailMessageEnvelopeTest {
+
+    private static Message message(String body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding("UTF-8");
+        properties.setMessageId("m-1");
+        properties.setCorrelationId("c-1");
+        properties.setAppId("app");
+        properties.setType("order");
+        properties.setReplyTo("reply");
+        properties.setPriority(5);
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        properties.setTimestamp(new Date(1_600_000_000_000L));
+        properties.setHeader(RabbitMqRetryHelper.X_RETRY_COUNT, 3);
+        properties.setHeader(RabbitMqRetryHelper.X_ORI_EXCHANGE, "order-exchange");
+        properties.setHeader("x-death", Lists.newArrayList("q1", "q2"));
+        properties.setHeader("thread", new Object() {
+            @Override
+            public String toString() {
+                return "not serializable";
+            }
+        });
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @Test
+    public void roundTripTest() {
+        Message message = message("{\"id\":1,\"name\":\"中文\"}");
+        byte[] data = FailMessageEnvelope.encode(message);
+        Assert.assertTrue(FailMessageEnvelope.isEnvelope(data));
+
+        Message decoded = FailMessageEnvelope.decode(data);
+        Assert.assertArrayEquals(message.getBody(), decoded.getBody());
+        MessageProperties expected = message.getMessageProperties();
+        MessageProperties actual = decoded.getMessageProperties();
+        Assert.assertEquals(expected.getContentType(), actual.getContentType());
+        Assert.assertEquals(expected.getContentEncoding(), actual.getContentEncoding());
+        Assert.assertEquals(expected.getMessageId(), actual.getMessageId());
+        Assert.assertEquals(expected.getCorrelationId(), actual.getCorrelationId());
+        Assert.assertEquals(expected.getAppId(), actual.getAppId());
+        Assert.assertEquals(expected.getType(), actual.getType());
+        Assert.assertEquals(expected.getReplyTo(), actual.getReplyTo());
+        Assert.assertEquals(expected.getPriority(), actual.getPriority());
+        Assert.assertEquals(expected.getDeliveryMode(), actual.getDeliveryMode());
+        Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        Assert.assertEquals(Integer.valueOf(3), actual.getHeader(RabbitMqRetryHelper.X_RETRY_COUNT));
+        Assert.assertEquals("order-exchange", actual.getHeader(RabbitMqRetryHelper.X_ORI_EXCHANGE));
+        Assert.assertEquals(Lists.newArrayList("q1", "q2"), actual.getHeader("x-death"));
+        // 无法序列化的 header 保存为字符串
+        Assert.assertEquals("not serializable", actual.getHeader("thread"));
+    }
+
+    @Test
+    public void emptyRoundTripTest() {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(null);
+        properties.setPriority(null);
+        properties.setDeliveryMode(null);
+        Message decoded = FailMessageEnvelope.decode(FailMessageEnvelope.encode(new Message(new byte[0], properties)));
+        Assert.assertEquals(0, decoded.getBody().length);
+        MessageProperties actual = decoded.getMessageProperties();
+        Assert.assertNull(actual.getContentType());
+        Assert.assertNull(actual.getMessageId());
+        Assert.assertNull(actual.getPriority());
+        Assert.assertNull(actual.getDeliveryMode());
+        Assert.assertNull(actual.getTimestamp());
+        Assert.assertTrue(actual.getHeaders().isEmpty());
+    }
+
+    @Test
+    public void compressTest() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            body.append("{\"orderId\":").append(i).append(",\"status\":\"PAID\"}");
+        }
+        Message message = message(body.toString());
+        byte[] data = FailMessageEnvelope.encode(message);
+        Assert.assertTrue(data.length < message.getBody().length / 4);
+        Assert.assertArrayEquals(message.getBody(), FailMessageEnvelope.decode(data).getBody());
+    }
+
+    @Test
+    public void isEnvelopeTest() {
+        Assert.assertFalse(FailMessageEnvelope.isEnvelope(null));
+        Assert.assertFalse(FailMessageEnvelope.isEnvelope(new byte[]{'F', 'M', 1}));
+        Assert.assertFalse(FailMessageEnvelope.isEnvelope("{\"id\":1}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeNotEnvelopeTest() {
+        FailMessageEnvelope.decode("{\"id\":1}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static IllegalStateException fail(String message) {
+        return new IllegalStateException(message);
+    }
+
+    @Test
+    public void fingerprintTest() {
+        List<IllegalStateException> sameSite = Lists.newArrayList();
+        for (int i = 0; i < 2; i++) {
+            sameSite.add(fail("order " + i));
+        }
+        // 同一处抛出的异常指纹相同, 与异常信息无关
+        Assert.assertEquals(FailMessageEnvelope.fingerprint(sameSite.get(0)), FailMessageEnvelope.fingerprint(sameSite.get(1)));
+        Assert.assertNotEquals(FailMessageEnvelope.fingerprint(sameSite.get(0)), FailMessageEnvelope.fingerprint(fail("order 0")));
+        Assert.assertEquals(40, FailMessageEnvelope.fingerprint(sameSite.get(0)).length());
+    }
+
+    @Test
+    public void summaryTest() {
+        IllegalStateException ex = fail("order 1");
+        String summary = FailMessageEnvelope.summary(ex);
+        Assert.assertEquals(ex + System.lineSeparator() + "\tat " + ex.getStackTrace()[0], summary);
+
+        ex.setStackTrace(new StackTraceElement[0]);
+        Assert.assertEquals("java.lang.IllegalStateException: order 1", FailMessageEnvelope.summary(ex));
+    }
+
+    @Test
+    public void compactProcessTest() {
+        CollectingProcessor processor = new CollectingProcessor();
+        processor.setCompact(true);
+        for (int i = 0; i < 3; i++) {
+            processor.process(message("{\"id\":" + i + "}"), fail("order " + i));
+        }
+        Assert.assertEquals(3, processor.failMessages.size());
+        FailMessage first = processor.failMessages.get(0);
+        Assert.assertEquals("{\"id\":0}", new String(FailMessageEnvelope.decode(first.getMessageEnvelope()).getBody(), StandardCharsets.UTF_8));
+        Assert.assertNull(first.getMessageBody());
+        Assert.assertNull(first.getMessageBinary());
+        Assert.assertTrue(first.getExceptionDetail().startsWith("java.lang.IllegalStateException: order 0" + System.lineSeparator() + "\tat "));
+        Assert.assertTrue(first.getExceptionTrace().contains("compactProcessTest"));
+        // process 时重置了重试次数
+        Assert.assertEquals(Integer.valueOf(0), first.getRetryCount());
+        // 相同指纹只在第一次生成完整的堆栈
+        Assert.assertEquals(first.getExceptionFingerprint(), processor.failMessages.get(2).getExceptionFingerprint());
+        Assert.assertNull(processor.failMessages.get(1).getExceptionTrace());
+        Assert.assertNull(processor.failMessages.get(2).getExceptionTrace());
+    }
+
+    @Test
+    public void compactProcessFailTest() {
+        CollectingProcessor processor = new CollectingProcessor();
+        processor.setCompact(true);
+        processor.failing = true;
+        try {
+            processor.process(message("{}"), fail("order"));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("db down", e.getMessage());
+        }
+        // 保存失败后重新生成完整的堆栈
+        processor.failing = false;
+        processor.process(message("{}"), fail("order"));
+        Assert.assertNotNull(processor.failMessages.get(1).getExceptionTrace());
+    }
+
+    @Test
+    public void fullProcessTest() {
+        CollectingProcessor processor = new CollectingProcessor();
+        Message message = message("{\"id\":1}");
+        // 完整格式使用 java 序列化保存原消息
+        message.getMessageProperties().getHeaders().remove("thread");
+        processor.process(message, fail("order"));
+        FailMessage failMessage = processor.failMessages.get(0);
+        Assert.assertEquals("{\"id\":1}", failMessage.getMessageBody());
+        Assert.assertNull(failMessage.getMessageEnvelope());
+        Assert.assertNull(failMessage.getExceptionFingerprint());
+        Assert.assertNull(failMessage.getExceptionTrace());
+        Assert.assertTrue(failMessage.getExceptionDetail().contains("fullProcessTest"));
+    }
+
+    private static class CollectingProcessor extends AbstractFailMessageProcessor {
+
+        private final List<FailMessage> failMessages = Lists.newArrayList();
+        private boolean failing;
+
+        @Override
+        public void doProcess(FailMessage failMessage, Exception ex) {
+            failMessages.add(failMessage);
+            if (failing) {
+                throw new IllegalStateException("db down");
+            }
+        }
+    }
+}
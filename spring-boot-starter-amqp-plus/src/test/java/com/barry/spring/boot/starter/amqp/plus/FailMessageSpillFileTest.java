@@ -0,0 +1,112 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author barry chen
+ */
+public class FailMessageSpillFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<FailMessage> messages(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(i -> new FailMessage().setId(String.valueOf(i)).setMessageBody("body-" + i).setRetryCount(i))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> ids(List<FailMessage> failMessages) {
+        return failMessages.stream().map(FailMessage::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void appendAndReplayTest() throws IOException {
+        FailMessageSpillFile spillFile = new FailMessageSpillFile(folder.getRoot().getPath());
+        Assert.assertFalse(spillFile.hasPending());
+        spillFile.append(messages(0, 3));
+        spillFile.append(messages(3, 5));
+        Assert.assertTrue(spillFile.hasPending());
+
+        List<List<String>> batches = Lists.newArrayList();
+        spillFile.replay(2, batch -> batches.add(ids(batch)));
+        Assert.assertEquals(Lists.newArrayList(Lists.newArrayList("0", "1"), Lists.newArrayList("2", "3"),
+                Lists.newArrayList("4")), batches);
+        Assert.assertFalse(spillFile.hasPending());
+        Assert.assertArrayEquals(new String[0], folder.getRoot().list());
+
+        // 没有待重放的记录
+        spillFile.replay(2, batch -> Assert.fail());
+    }
+
+    @Test
+    public void resumeAfterInsertFailTest() throws IOException {
+        FailMessageSpillFile spillFile = new FailMessageSpillFile(folder.getRoot().getPath());
+        spillFile.append(messages(0, 5));
+
+        List<String> inserted = Lists.newArrayList();
+        try {
+            spillFile.replay(2, batch -> {
+                if (inserted.size() >= 2) {
+                    throw new IllegalStateException("db down");
+                }
+                inserted.addAll(ids(batch));
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(Lists.newArrayList("0", "1"), inserted);
+        }
+        // 重放期间新追加的记录写入新的溢出文件
+        spillFile.append(messages(5, 6));
+
+        spillFile.replay(2, batch -> inserted.addAll(ids(batch)));
+        Assert.assertEquals(Lists.newArrayList("0", "1", "2", "3", "4"), inserted);
+        Assert.assertTrue(spillFile.hasPending());
+        spillFile.replay(2, batch -> inserted.addAll(ids(batch)));
+        Assert.assertEquals(Lists.newArrayList("0", "1", "2", "3", "4", "5"), inserted);
+        Assert.assertFalse(spillFile.hasPending());
+    }
+
+    @Test
+    public void truncatedLastRecordTest() throws IOException {
+        FailMessageSpillFile spillFile = new FailMessageSpillFile(folder.getRoot().getPath());
+        spillFile.append(messages(0, 3));
+        File file = new File(folder.getRoot(), "fail-message.spill");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // 最后一条记录只写入了一部分
+            raf.setLength(raf.length() - 10);
+        }
+
+        List<String> inserted = Lists.newArrayList();
+        spillFile.replay(10, batch -> inserted.addAll(ids(batch)));
+        Assert.assertEquals(Lists.newArrayList("0", "1"), inserted);
+        Assert.assertFalse(spillFile.hasPending());
+    }
+
+    @Test
+    public void truncatedLengthTest() throws IOException {
+        FailMessageSpillFile spillFile = new FailMessageSpillFile(folder.getRoot().getPath());
+        spillFile.append(messages(0, 2));
+        File file = new File(folder.getRoot(), "fail-message.spill");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // 最后只写入了长度的前两个字节
+            raf.seek(raf.length());
+            raf.write(new byte[]{0, 0});
+        }
+
+        List<String> inserted = Lists.newArrayList();
+        spillFile.replay(10, batch -> inserted.addAll(ids(batch)));
+        Assert.assertEquals(Lists.newArrayList("0", "1"), inserted);
+    }
+}
@@ -0,0 +1,227 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.rabbitmq.client.Channel;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @author barry chen
+ */
+public class MessageDeduplicatorTest {
+
+    private final List<String> acks = Lists.newArrayList();
+    private final List<String> handled = Lists.newArrayList();
+
+    private final RabbitMqRetryHelper retryHelper = new RabbitMqRetryHelper(new RabbitTemplate() {
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        }
+    });
+
+    private final Channel channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Channel.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "basicAck":
+                        acks.add("ack:" + args[0] + (Boolean.TRUE.equals(args[1]) ? "+" : ""));
+                        return null;
+                    case "basicNack":
+                        acks.add("nack:" + args[0] + (Boolean.TRUE.equals(args[2]) ? "r" : ""));
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    private final MessageDeduplicator deduplicator = new MessageDeduplicator(new RabbitMqPlusProperties.Dedup());
+
+    private static Message message(String id, long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(id);
+        properties.setDeliveryTag(deliveryTag);
+        properties.setConsumerQueue("order-queue");
+        return new Message(id.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    private void handle(Message message) {
+        handled.add(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * MANUAL 确认的批量监听方法
+     */
+    @SuppressWarnings("unchecked")
+    private void invokeManualBatch(MethodInterceptor advice, List<Message> messages) throws Throwable {
+        invoke(advice, messages, data -> retryHelper.processBatch((List<Message>) data, channel, this::handle, 3, null));
+    }
+
+    private void invoke(MethodInterceptor advice, Object data, Consumer<Object> listener) throws Throwable {
+        Object[] arguments = {channel, data};
+        advice.invoke(new MethodInvocation() {
+            @Override
+            public Method getMethod() {
+                return null;
+            }
+
+            @Override
+            public Object[] getArguments() {
+                return arguments;
+            }
+
+            @Override
+            public Object proceed() {
+                listener.accept(arguments[1]);
+                return null;
+            }
+
+            @Override
+            public Object getThis() {
+                return null;
+            }
+
+            @Override
+            public AccessibleObject getStaticPart() {
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void manualBatchTest() throws Throwable {
+        MessageDeduplicator advice = deduplicator.manualAck();
+        invokeManualBatch(advice, Lists.newArrayList(message("m1", 1), message("m2", 2)));
+        Assert.assertEquals(Lists.newArrayList("m1", "m2"), handled);
+        Assert.assertEquals(Lists.newArrayList("ack:2+"), acks);
+
+        handled.clear();
+        acks.clear();
+        invokeManualBatch(advice, Lists.newArrayList(message("m1", 3), message("m3", 4), message("m2", 5)));
+        // 重复的消息由去重逐条确认, 其它消息由监听方法确认
+        Assert.assertEquals(Lists.newArrayList("m3"), handled);
+        Assert.assertEquals(Lists.newArrayList("ack:3", "ack:5", "ack:4+"), acks);
+    }
+
+    @Test
+    public void manualBatchAllDuplicateTest() throws Throwable {
+        MessageDeduplicator advice = deduplicator.manualAck();
+        invokeManualBatch(advice, Lists.newArrayList(message("m1", 1), message("m2", 2)));
+        acks.clear();
+        invokeManualBatch(advice, Lists.newArrayList(message("m2", 3), message("m1", 4)));
+        Assert.assertEquals(Lists.newArrayList("m1", "m2"), handled);
+        Assert.assertEquals(Lists.newArrayList("ack:3", "ack:4"), acks);
+    }
+
+    @Test
+    public void manualSingleTest() throws Throwable {
+        MessageDeduplicator advice = deduplicator.manualAck();
+        invoke(advice, message("m1", 1), data -> handle((Message) data));
+        invoke(advice, message("m1", 2), data -> handle((Message) data));
+        Assert.assertEquals(Lists.newArrayList("m1"), handled);
+        Assert.assertEquals(Lists.newArrayList("ack:2"), acks);
+    }
+
+    @Test
+    public void autoAckTest() throws Throwable {
+        invoke(deduplicator, Lists.newArrayList(message("m1", 1)), data -> handled.add("batch"));
+        invoke(deduplicator, Lists.newArrayList(message("m1", 2)), data -> handled.add("batch"));
+        // 自动确认时由容器确认
+        Assert.assertEquals(Lists.newArrayList("batch"), handled);
+        Assert.assertTrue(acks.isEmpty());
+    }
+
+    /**
+     * 只有 SET NX 和 GET 的 redis
+     */
+    private static StringRedisTemplate redisTemplate(Map<String, String> store) {
+        ValueOperations<?, ?> operations = (ValueOperations<?, ?>) Proxy.newProxyInstance(MessageDeduplicatorTest.class.getClassLoader(),
+                new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setIfAbsent":
+                            return store.putIfAbsent((String) args[0], (String) args[1]) == null;
+                        case "set":
+                            store.put((String) args[0], (String) args[1]);
+                            return null;
+                        case "get":
+                            return store.get(args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return new StringRedisTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public ValueOperations<String, String> opsForValue() {
+                return (ValueOperations<String, String>) operations;
+            }
+
+            @Override
+            public Boolean delete(String key) {
+                return store.remove(key) != null;
+            }
+        };
+    }
+
+    @Test
+    public void manualProcessingTest() throws Throwable {
+        Map<String, String> store = Maps.newHashMap(Collections.singletonMap("MQ_DEDUP_order-queue:m2:0", "0"));
+        MessageDeduplicator advice = new MessageDeduplicator(new RabbitMqPlusProperties.Dedup(), redisTemplate(store)).manualAck();
+        invokeManualBatch(advice, Lists.newArrayList(message("m1", 1), message("m2", 2), message("m3", 3)));
+        // 其它消费者处理中的消息单独重新入队
+        Assert.assertEquals(Lists.newArrayList("m1", "m3"), handled);
+        Assert.assertEquals(Lists.newArrayList("nack:2r", "ack:3+"), acks);
+        Assert.assertEquals("1", store.get("MQ_DEDUP_order-queue:m1:0"));
+        Assert.assertEquals("0", store.get("MQ_DEDUP_order-queue:m2:0"));
+    }
+
+    @Test
+    public void autoProcessingTest() throws Throwable {
+        Map<String, String> store = Maps.newHashMap(Collections.singletonMap("MQ_DEDUP_order-queue:m2:0", "0"));
+        MessageDeduplicator advice = new MessageDeduplicator(new RabbitMqPlusProperties.Dedup(), redisTemplate(store));
+        try {
+            invoke(advice, Lists.newArrayList(message("m1", 1), message("m2", 2)), data -> handled.add("batch"));
+            Assert.fail();
+        } catch (ImmediateRequeueAmqpException e) {
+            // 整批重新入队, 释放已经标记的消息
+            Assert.assertFalse(store.containsKey("MQ_DEDUP_order-queue:m1:0"));
+        }
+        Assert.assertTrue(handled.isEmpty());
+        Assert.assertTrue(acks.isEmpty());
+    }
+
+    @Test
+    public void containerFactoryTest() throws Throwable {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("deduplicator", deduplicator);
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        DedupConfiguration.dedupListenerContainerFactoryPostProcessor(beanFactory.getBeanProvider(MessageDeduplicator.class))
+                .postProcessAfterInitialization(factory, "batchRabbitListenerContainerFactory");
+        Assert.assertEquals(1, factory.getAdviceChain().length);
+        MethodInterceptor advice = (MethodInterceptor) factory.getAdviceChain()[0];
+        invokeManualBatch(advice, Lists.newArrayList(message("m1", 1)));
+        invokeManualBatch(advice, Lists.newArrayList(message("m1", 2)));
+        Assert.assertEquals(Lists.newArrayList("ack:1+", "ack:2"), acks);
+    }
+}
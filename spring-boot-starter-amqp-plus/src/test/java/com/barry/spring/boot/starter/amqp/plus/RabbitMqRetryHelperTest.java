@@ -0,0 +1,147 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.collect.Lists;
+import com.rabbitmq.client.Channel;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author barry chen
+ */
+public class RabbitMqRetryHelperTest {
+
+    private final List<String> sent = Lists.newArrayList();
+    private final List<String> acks = Lists.newArrayList();
+
+    /**
+     * body 为 "down" 的消息发送失败
+     */
+    private final RabbitTemplate rabbitTemplate = new RabbitTemplate() {
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (body.startsWith("down")) {
+                throw new AmqpConnectException(new IllegalStateException("broker down"));
+            }
+            sent.add(body + "->" + routingKey);
+        }
+    };
+
+    private final RabbitMqRetryHelper retryHelper = new RabbitMqRetryHelper(rabbitTemplate);
+
+    private final Channel channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Channel.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "basicAck":
+                        acks.add("ack:" + args[0] + (Boolean.TRUE.equals(args[1]) ? "+" : ""));
+                        return null;
+                    case "basicNack":
+                        acks.add("nack:" + args[0]);
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    private static List<Message> messages(String... bodies) {
+        return IntStream.range(0, bodies.length).mapToObj(i -> {
+            MessageProperties properties = new MessageProperties();
+            properties.setDeliveryTag(i + 1);
+            properties.setReceivedExchange("order-exchange");
+            properties.setReceivedRoutingKey("order");
+            return new Message(bodies[i].getBytes(StandardCharsets.UTF_8), properties);
+        }).collect(Collectors.toList());
+    }
+
+    private static void handle(Message message) {
+        if (!new String(message.getBody(), StandardCharsets.UTF_8).equals("ok")) {
+            throw new IllegalStateException("handle fail");
+        }
+    }
+
+    @Test
+    public void processBatchTest() {
+        List<Message> messages = messages("ok", "bad", "ok");
+        Assert.assertEquals(1, retryHelper.processBatch(messages, RabbitMqRetryHelperTest::handle, 3, null));
+        // 失败的消息进入 1s 延迟队列
+        Assert.assertEquals(Lists.newArrayList("bad->delay.1s"), sent);
+        Assert.assertEquals(Integer.valueOf(1), messages.get(1).getMessageProperties().getHeader(RabbitMqRetryHelper.X_RETRY_COUNT));
+        Assert.assertEquals("order", messages.get(1).getMessageProperties().getHeader(RabbitMqRetryHelper.X_ORI_ROUTE_KEY));
+    }
+
+    @Test
+    public void processBatchTransferFailTest() {
+        List<String> handled = Lists.newArrayList();
+        try {
+            retryHelper.processBatch(messages("down", "ok", "bad"), message -> {
+                handled.add(new String(message.getBody(), StandardCharsets.UTF_8));
+                handle(message);
+            }, 3, null);
+            Assert.fail();
+        } catch (AmqpException e) {
+            Assert.assertTrue(e.getCause() instanceof AmqpConnectException);
+        }
+        // 转移失败后继续处理其它消息
+        Assert.assertEquals(Lists.newArrayList("down", "ok", "bad"), handled);
+        Assert.assertEquals(Lists.newArrayList("bad->delay.1s"), sent);
+    }
+
+    @Test
+    public void processBatchManualAckTest() {
+        Assert.assertEquals(1, retryHelper.processBatch(messages("ok", "bad", "ok"), channel, RabbitMqRetryHelperTest::handle, 3, null));
+        // 没有转移失败的消息时一次确认整批
+        Assert.assertEquals(Lists.newArrayList("ack:3+"), acks);
+    }
+
+    @Test
+    public void processBatchManualNackTest() {
+        Assert.assertEquals(3, retryHelper.processBatch(messages("ok", "down", "bad", "ok", "down"), channel,
+                RabbitMqRetryHelperTest::handle, 3, null));
+        // 只有转移失败的消息重新投递
+        Assert.assertEquals(Lists.newArrayList("ack:1", "nack:2", "ack:3", "ack:4", "nack:5"), acks);
+        Assert.assertEquals(Lists.newArrayList("bad->delay.1s"), sent);
+    }
+
+    @Test
+    public void processBatchProcessorFailTest() {
+        List<Message> messages = messages("ok", "bad");
+        // 已达到重试上限, 交给 processor 处理时失败
+        messages.get(1).getMessageProperties().setHeader(RabbitMqRetryHelper.X_RETRY_COUNT, 3);
+        IFailMessageProcessor processor = (message, ex) -> {
+            throw new IllegalStateException("db down");
+        };
+        Assert.assertEquals(1, retryHelper.processBatch(messages, channel, RabbitMqRetryHelperTest::handle, 3, processor));
+        Assert.assertEquals(Lists.newArrayList("ack:1", "nack:2"), acks);
+    }
+
+    @Test
+    public void delayRoundUpTest() {
+        retryHelper.convertAndSendWithDelay("order-exchange", "order", "m1", 1500);
+        retryHelper.convertAndSendWithDelay("order-exchange", "order", "m2", 5000);
+        retryHelper.retry("order-exchange", "order", messages("m3").get(0), 3, 20_000, true);
+        // 不是某一级的延迟向上取到最近的一级
+        Assert.assertEquals(Lists.newArrayList("m1->delay.5s", "m2->delay.5s", "m3->delay.30s"), sent);
+    }
+
+    @Test
+    public void delayAboveMaxTierTest() {
+        Message message = messages("m1").get(0);
+        retryHelper.convertAndSendWithDelay("order-exchange", "order", message, 3_600_000);
+        // 超过最大一级时进入 delay-queue 并设置过期时间
+        Assert.assertEquals(Lists.newArrayList("m1->delay"), sent);
+        Assert.assertEquals("3600000", message.getMessageProperties().getExpiration());
+        Assert.assertEquals(3_600_000L, (long) message.getMessageProperties().getHeader(RabbitMqRetryHelper.X_DELAY_REQUESTED));
+    }
+}
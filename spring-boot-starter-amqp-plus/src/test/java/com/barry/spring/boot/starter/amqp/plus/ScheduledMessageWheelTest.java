@@ -0,0 +1,88 @@
+package com.barry.spring.boot.starter.amqp.plus;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * tickMillis = 100, wheelSize = 8, 一圈 800ms, 从 10_000 开始
+ *
+ * @author barry chen
+ */
+public class ScheduledMessageWheelTest {
+
+    private static final long START = 10_000L;
+
+    private final ScheduledMessageWheel wheel = new ScheduledMessageWheel(100, 8, START);
+
+    private static ScheduledMessage message(String id, long deliverTime) {
+        return new ScheduledMessage(id, "exchange", "route", null, deliverTime);
+    }
+
+    private static List<String> ids(List<ScheduledMessage> messages) {
+        return messages.stream().map(ScheduledMessage::getId).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void tickBoundaryTest() {
+        wheel.add(message("a", START + 150));
+        // 所在格 [10_100, 10_200) 结束前不投递
+        Assert.assertTrue(wheel.advance(START + 150).isEmpty());
+        Assert.assertTrue(wheel.advance(START + 199).isEmpty());
+        // 推进到下一格时投递, 最多延后一格
+        Assert.assertEquals(Lists.newArrayList("a"), ids(wheel.advance(START + 200)));
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertTrue(wheel.advance(START + 300).isEmpty());
+    }
+
+    @Test
+    public void overdueTest() {
+        wheel.advance(START + 500);
+        // 已经到期的消息在下一次推进到新的格时投递
+        wheel.add(message("late", START));
+        wheel.add(message("now", START + 550));
+        Assert.assertTrue(wheel.advance(START + 599).isEmpty());
+        Assert.assertEquals(Lists.newArrayList("late", "now"), ids(wheel.advance(START + 600)));
+    }
+
+    @Test
+    public void roundsTest() {
+        // 同一个桶中相差一圈和两圈的消息
+        wheel.add(message("r0", START + 300));
+        wheel.add(message("r1", START + 300 + 800));
+        wheel.add(message("r2", START + 300 + 1600));
+        Assert.assertEquals(3, wheel.size());
+
+        Assert.assertEquals(Lists.newArrayList("r0"), ids(wheel.advance(START + 400)));
+        Assert.assertTrue(wheel.advance(START + 1100).isEmpty());
+        Assert.assertEquals(Lists.newArrayList("r1"), ids(wheel.advance(START + 1200)));
+        Assert.assertTrue(wheel.advance(START + 1900).isEmpty());
+        Assert.assertEquals(Lists.newArrayList("r2"), ids(wheel.advance(START + 2000)));
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void advanceOverRoundsTest() {
+        wheel.add(message("a", START + 100));
+        wheel.add(message("b", START + 700));
+        wheel.add(message("c", START + 900));
+        wheel.add(message("d", START + 2500));
+        wheel.add(message("e", START + 5000));
+        // 一次推进超过两圈, 每个桶只检查一次, 未到期的后几圈消息保留
+        Assert.assertEquals(Lists.newArrayList("a", "b", "c", "d"), ids(wheel.advance(START + 2600)));
+        Assert.assertEquals(1, wheel.size());
+        Assert.assertEquals(Lists.newArrayList("e"), ids(wheel.advance(START + 5100)));
+    }
+
+    @Test
+    public void clockBackwardTest() {
+        wheel.advance(START + 1000);
+        wheel.add(message("a", START + 1050));
+        // 时钟回拨时不回退, 也不投递
+        Assert.assertTrue(wheel.advance(START + 500).isEmpty());
+        Assert.assertEquals(Lists.newArrayList("a"), ids(wheel.advance(START + 1100)));
+    }
+}
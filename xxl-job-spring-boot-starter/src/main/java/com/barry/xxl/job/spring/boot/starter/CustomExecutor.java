@@ -1,5 +1,8 @@
 package com.barry.xxl.job.spring.boot.starter;
 
+import com.barry.common.core.util.ContextPropagation;
+import com.barry.xxl.job.spring.boot.starter.bean.XxlJobConfigProperties;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.xxl.job.core.executor.impl.XxlJobSpringExecutor;
 import com.xxl.job.core.glue.GlueFactory;
 import com.xxl.job.core.handler.annotation.XxlJob;
@@ -8,13 +11,22 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.MethodIntrospector;
 import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class CustomExecutor extends XxlJobSpringExecutor {
     private static final Logger logger = LoggerFactory.getLogger(CustomExecutor.class);
 
+    private XxlJobConfigProperties.Sharding sharding = new XxlJobConfigProperties.Sharding();
+    private ExecutorService shardingExecutor;
+
     private void initJobHandlerMethodRepository(ApplicationContext applicationContext) {
 
         if (applicationContext == null) {
@@ -91,6 +103,92 @@ public class CustomExecutor extends XxlJobSpringExecutor {
 
     }
 
+    private void initShardingJobHandlerRepository(ApplicationContext applicationContext) {
+        if (applicationContext == null) {
+            return;
+        }
+        String[] beanDefinitionNames = applicationContext.getBeanNamesForType(Object.class, false, true);
+        for (String beanDefinitionName : beanDefinitionNames) {
+            Object bean = applicationContext.getBean(beanDefinitionName);
+
+            Map<Method, ShardingXxlJob> annotatedMethods = null;
+            try {
+                annotatedMethods = MethodIntrospector.selectMethods(bean.getClass(),
+                        (MethodIntrospector.MetadataLookup<ShardingXxlJob>) method -> AnnotatedElementUtils.findMergedAnnotation(method, ShardingXxlJob.class));
+            } catch (Throwable ex) {
+                logger.error("xxl-job sharding-jobhandler resolve error for bean[" + beanDefinitionName + "].", ex);
+            }
+            if (annotatedMethods == null || annotatedMethods.isEmpty()) {
+                continue;
+            }
+
+            for (Map.Entry<Method, ShardingXxlJob> entry : annotatedMethods.entrySet()) {
+                Method method = entry.getKey();
+                ShardingXxlJob shardingXxlJob = entry.getValue();
+
+                String name = shardingXxlJob.value();
+                if (name.trim().length() == 0) {
+                    throw new RuntimeException("xxl-job sharding-jobhandler name invalid, for[" + bean.getClass() + "#" + method.getName() + "] .");
+                }
+                if (loadJobHandler(name) != null) {
+                    throw new RuntimeException("xxl-job jobhandler[" + name + "] naming conflicts.");
+                }
+                if (method.getParameterTypes().length != 1) {
+                    throw new RuntimeException("xxl-job sharding-jobhandler param-classtype invalid, for[" + bean.getClass() + "#" + method.getName() + "] , " +
+                            "The correct method format like \" public void execute(Partition partition) \" .");
+                }
+                Method partitionMethod = findPartitionMethod(bean.getClass(), shardingXxlJob.partition());
+                if (partitionMethod == null) {
+                    throw new RuntimeException("xxl-job sharding-jobhandler partition method invalid, for[" + bean.getClass() + "#" + method.getName() + "] , " +
+                            "The correct method format like \" public Collection<Partition> " + shardingXxlJob.partition() + "(Param param) \" .");
+                }
+                method.setAccessible(true);
+                partitionMethod.setAccessible(true);
+
+                int parallelism = shardingXxlJob.parallelism() > 0 ? shardingXxlJob.parallelism() : sharding.getPoolSize();
+                registJobHandler(name, new ShardingJobHandler(bean, partitionMethod, method, shardingExecutor(), parallelism));
+            }
+        }
+    }
+
+    /**
+     * 返回 Collection, 参数为空或者一个的同名方法
+     */
+    private Method findPartitionMethod(Class<?> beanClass, String name) {
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(beanClass)) {
+            if (method.getName().equals(name) && method.getParameterCount() <= 1
+                    && Collection.class.isAssignableFrom(method.getReturnType())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private synchronized ExecutorService shardingExecutor() {
+        if (shardingExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(sharding.getPoolSize(), sharding.getPoolSize(),
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(sharding.getQueueCapacity()),
+                    new ThreadFactoryBuilder().setNameFormat("xxl-job-sharding-%d").setDaemon(true).build(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            //任务参数中的 holder 等上下文传递到分区的执行线程
+            shardingExecutor = ContextPropagation.wrap(executor);
+        }
+        return shardingExecutor;
+    }
+
+    public void setSharding(XxlJobConfigProperties.Sharding sharding) {
+        this.sharding = sharding;
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (shardingExecutor != null) {
+            shardingExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public void afterSingletonsInstantiated() {
 
@@ -99,6 +197,7 @@ public class CustomExecutor extends XxlJobSpringExecutor {
 
         // init JobHandler Repository (for method)
         initJobHandlerMethodRepository(getApplicationContext());
+        initShardingJobHandlerRepository(getApplicationContext());
 
         // refresh GlueFactory
         GlueFactory.refreshInstance(1);
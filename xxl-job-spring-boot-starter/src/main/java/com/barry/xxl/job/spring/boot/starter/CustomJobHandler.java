@@ -7,11 +7,17 @@ import com.xxl.job.core.handler.impl.MethodJobHandler;
 import com.xxl.job.core.log.XxlJobLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
 
 import java.lang.reflect.Method;
 
 public class CustomJobHandler extends MethodJobHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(MethodJobHandler.class);
+    /**
+     * auto-transmitter 存在时从任务参数恢复 holder
+     */
+    static final boolean TRANSMITTER_PRESENT = ClassUtils.isPresent("com.barry.auto.transmitter.core.HolderParams",
+            CustomJobHandler.class.getClassLoader());
     private final Object target;
     private final Method method;
 
@@ -30,12 +36,14 @@ public class CustomJobHandler extends MethodJobHandler {
      * Create at January 24, 2019 at 11:58:15 GMT+8
      */
     protected Object resolveParam(String arg) {
+        return resolveParam(arg, method.getParameterTypes()[0]);
+    }
+
+    static Object resolveParam(String arg, Class<?> paramType) {
         if (StringUtils.isBlank(arg)) {
             return null;
         }
 
-        Class<?> paramType = method.getParameterTypes()[0];
-
         if (paramType == String.class) {
             return arg;
         }
@@ -43,7 +51,7 @@ public class CustomJobHandler extends MethodJobHandler {
         if (paramType == Void.class) {
             return null;
         }
-        return JsonUtils.fromJson(arg, method.getParameterTypes()[0]);
+        return JsonUtils.fromJson(arg, paramType);
     }
 
     @Override
@@ -52,7 +60,11 @@ public class CustomJobHandler extends MethodJobHandler {
 
         try {
             XxlJobLogger.log("#### job start >>>>>>>");
-            method.invoke(target, new Object[]{resolveParam(param)});
+            if (TRANSMITTER_PRESENT) {
+                TransmitterJobParams.call(param, p -> method.invoke(target, new Object[]{resolveParam(p)}));
+            } else {
+                method.invoke(target, new Object[]{resolveParam(param)});
+            }
             XxlJobLogger.log("#### job end  <<<<<<<<");
         } catch (Exception ex) {
             result = new ReturnT<>();
@@ -0,0 +1,193 @@
+package com.barry.xxl.job.spring.boot.starter;
+
+import com.xxl.job.core.biz.model.ReturnT;
+import com.xxl.job.core.handler.IJobHandler;
+import com.xxl.job.core.log.XxlJobFileAppender;
+import com.xxl.job.core.log.XxlJobLogger;
+import com.xxl.job.core.util.ShardingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * {@link ShardingXxlJob} 的执行
+ * <p>
+ * 在 xxl-job 的任务线程中拆分分区, 按分片选出本执行器的分区, 提交到共享的线程池, 同时执行的分区不超过 parallelism.
+ * 任务线程等待分区完成, 记录进度和失败, 任务被终止时取消未完成的分区.
+ * <p>
+ * xxl-job 的日志文件和分片参数保存在 InheritableThreadLocal 中, 线程池的线程只在创建时继承, 会保留之前任务的值.
+ * 提交时捕获任务线程的日志文件和分片参数, 在执行分区时设置, 执行完毕后还原.
+ *
+ * @author barry chen
+ */
+public class ShardingJobHandler extends IJobHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardingJobHandler.class);
+
+    /**
+     * 结果中最多保留的失败信息数
+     */
+    private static final int MAX_ERROR_MESSAGES = 5;
+    /**
+     * 进度日志的间隔, 每完成 1/10 的分区记录一次
+     */
+    private static final int PROGRESS_STEPS = 10;
+
+    private final Object target;
+    private final Method partitionMethod;
+    private final Method method;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    public ShardingJobHandler(Object target, Method partitionMethod, Method method, ExecutorService executor, int parallelism) {
+        this.target = target;
+        this.partitionMethod = partitionMethod;
+        this.method = method;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public ReturnT<String> execute(String param) throws Exception {
+        if (CustomJobHandler.TRANSMITTER_PRESENT) {
+            return TransmitterJobParams.call(param, this::doExecute);
+        }
+        return doExecute(param);
+    }
+
+    private ReturnT<String> doExecute(String param) throws Exception {
+        ShardingUtil.ShardingVO sharding = ShardingUtil.getShardingVo();
+        int index = sharding == null ? 0 : sharding.getIndex();
+        int total = sharding == null ? 1 : Math.max(1, sharding.getTotal());
+
+        List<Object> partitions = partition(param);
+        List<Object> assigned = new ArrayList<>(partitions.size() / total + 1);
+        for (int i = index; i < partitions.size(); i += total) {
+            assigned.add(partitions.get(i));
+        }
+        XxlJobLogger.log("#### sharding job start, shard {}/{}, {} of {} partition(s) >>>>>>>", index, total, assigned.size(), partitions.size());
+
+        JobContext context = new JobContext(XxlJobFileAppender.contextHolder.get(), sharding);
+        CompletionService<Object> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Object>> futures = new ArrayList<>(assigned.size());
+        List<String> errors = new ArrayList<>(MAX_ERROR_MESSAGES);
+        Iterator<Object> iterator = assigned.iterator();
+        int completed = 0;
+        int failed = 0;
+        int progressStep = Math.max(1, assigned.size() / PROGRESS_STEPS);
+        try {
+            while (futures.size() < parallelism && iterator.hasNext()) {
+                futures.add(submit(completionService, context, iterator.next()));
+            }
+            while (completed < futures.size()) {
+                Future<Object> future = completionService.take();
+                completed++;
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    Throwable cause = unwrap(e.getCause());
+                    LOGGER.error("#### sharding job partition 执行失败", cause);
+                    XxlJobLogger.log(cause);
+                    if (errors.size() < MAX_ERROR_MESSAGES) {
+                        errors.add(String.valueOf(cause.getMessage()));
+                    }
+                }
+                if (iterator.hasNext()) {
+                    futures.add(submit(completionService, context, iterator.next()));
+                }
+                if (completed % progressStep == 0 || completed == assigned.size()) {
+                    XxlJobLogger.log("#### sharding job progress {}/{}, failed {}", completed, assigned.size(), failed);
+                }
+            }
+        } catch (InterruptedException e) {
+            //任务被终止
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+
+        String summary = "shard " + index + "/" + total + ": " + completed + " partition(s), " + failed + " failed";
+        XxlJobLogger.log("#### sharding job end, {} <<<<<<<<", summary);
+        if (failed == 0) {
+            return new ReturnT<>(ReturnT.SUCCESS_CODE, summary);
+        }
+        return new ReturnT<>(ReturnT.FAIL_CODE, summary + ", " + errors);
+    }
+
+    private List<Object> partition(String param) throws Exception {
+        Object result;
+        try {
+            result = partitionMethod.getParameterCount() == 0 ? partitionMethod.invoke(target)
+                    : partitionMethod.invoke(target, CustomJobHandler.resolveParam(param, partitionMethod.getParameterTypes()[0]));
+        } catch (InvocationTargetException e) {
+            throw unwrapException(e);
+        }
+        return result == null ? new ArrayList<>() : new ArrayList<>((Collection<?>) result);
+    }
+
+    private Future<Object> submit(CompletionService<Object> completionService, JobContext context, Object partition) {
+        return completionService.submit(() -> {
+            JobContext previous = JobContext.replace(context);
+            try {
+                return method.invoke(target, partition);
+            } catch (InvocationTargetException e) {
+                throw unwrapException(e);
+            } finally {
+                JobContext.replace(previous);
+            }
+        });
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof InvocationTargetException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    private static Exception unwrapException(InvocationTargetException e) {
+        Throwable cause = unwrap(e);
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    /**
+     * 任务线程的 xxl-job 上下文
+     */
+    private static class JobContext {
+        private final String logFileName;
+        private final ShardingUtil.ShardingVO sharding;
+
+        JobContext(String logFileName, ShardingUtil.ShardingVO sharding) {
+            this.logFileName = logFileName;
+            this.sharding = sharding;
+        }
+
+        /**
+         * 设置当前线程的上下文
+         *
+         * @return 当前线程原有的上下文
+         */
+        static JobContext replace(JobContext context) {
+            JobContext previous = new JobContext(XxlJobFileAppender.contextHolder.get(), ShardingUtil.getShardingVo());
+            if (context.logFileName == null) {
+                XxlJobFileAppender.contextHolder.remove();
+            } else {
+                XxlJobFileAppender.contextHolder.set(context.logFileName);
+            }
+            ShardingUtil.setShardingVo(context.sharding);
+            return previous;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[" + target.getClass() + "#" + method.getName() + "]";
+    }
+}
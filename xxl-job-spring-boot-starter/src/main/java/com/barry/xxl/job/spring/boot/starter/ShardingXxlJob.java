@@ -0,0 +1,50 @@
+package com.barry.xxl.job.spring.boot.starter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 分片任务
+ * <p>
+ * {@link #partition()} 指定的方法把任务拆分为多个分区, 第 i 个分区由 {@code i % 分片总数 == 分片序号} 的执行器处理,
+ * 分片序号和总数来自 xxl-job 的分片广播. 每个执行器在本地线程池中并行处理分到的分区, 被注解的方法处理单个分区.
+ * 全部分区处理完成后汇总为一个结果, 有分区失败时任务失败.
+ * <pre>
+ * {@code
+ * public List<Long> partitionOrders(OrderJobParam param) {
+ *     return orderService.listShopIds(param);
+ * }
+ *
+ * @ShardingXxlJob(value = "syncOrderJob", partition = "partitionOrders", parallelism = 4)
+ * public void syncOrders(Long shopId) {
+ *     orderService.sync(shopId);
+ * }
+ * }
+ * </pre>
+ *
+ * @author barry chen
+ * @see ShardingJobHandler
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ShardingXxlJob {
+
+    /**
+     * jobhandler 名称
+     */
+    String value();
+
+    /**
+     * 同一个 bean 中拆分分区的方法名, 返回 {@code Collection}, 参数为空或者一个任务参数(与 {@link com.xxl.job.core.handler.annotation.XxlJob} 相同, 支持对象参数)
+     */
+    String partition();
+
+    /**
+     * 每个执行器同时处理的分区数, 小于等于0时使用线程池大小
+     */
+    int parallelism() default 0;
+}
@@ -0,0 +1,38 @@
+package com.barry.xxl.job.spring.boot.starter;
+
+import com.barry.auto.transmitter.core.HolderContext;
+import com.barry.auto.transmitter.core.HolderParams;
+import com.barry.auto.transmitter.core.model.Holders;
+
+/**
+ * 从任务参数末尾恢复 auto-transmitter 的 holder, 参数由触发方通过 {@link HolderParams#attach(String)} 生成.
+ * <p>
+ * 只在 auto-transmitter 存在时使用本类, 见 {@link CustomJobHandler}.
+ *
+ * @author barry chen
+ */
+final class TransmitterJobParams {
+
+    private TransmitterJobParams() {
+    }
+
+    /**
+     * 去掉参数末尾的 holder 后调用任务, 调用期间当前线程持有参数中的 holder
+     *
+     * @param param 任务参数
+     * @param job   以原参数调用任务
+     */
+    static <T> T call(String param, ParamCallable<T> job) throws Exception {
+        Holders previous = HolderContext.replaceLocalHolders(HolderParams.read(param));
+        try {
+            return job.call(HolderParams.strip(param));
+        } finally {
+            HolderContext.restoreLocalHolders(previous);
+        }
+    }
+
+    @FunctionalInterface
+    interface ParamCallable<T> {
+        T call(String param) throws Exception;
+    }
+}
@@ -46,6 +46,7 @@ public class XxlJobAutoConfiguration {
         executor.setLogPath(config.getExecutor().getLogPath());
         executor.setLogRetentionDays(config.getExecutor().getLogRetentionDays());
         executor.setApplicationContext(context);
+        executor.setSharding(config.getSharding());
         XxlJobFileAppender.initLogPath(config.getExecutor().getLogPath());
         return executor;
     }
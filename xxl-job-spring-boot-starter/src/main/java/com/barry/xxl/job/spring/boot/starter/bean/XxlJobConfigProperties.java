@@ -15,6 +15,7 @@ public class XxlJobConfigProperties {
 
     private Admin    admin;
     private Executor executor;
+    private Sharding sharding = new Sharding();
 
     /**
      * Admin
@@ -36,4 +37,19 @@ public class XxlJobConfigProperties {
         private String logPath;
         private int logRetentionDays;
     }
+
+    /**
+     * 分片任务的本地线程池, 所有分片任务共享
+     */
+    @Data
+    public static class Sharding {
+        /**
+         * 线程数
+         */
+        private int poolSize = Runtime.getRuntime().availableProcessors();
+        /**
+         * 等待队列的长度, 队列满时由任务线程执行
+         */
+        private int queueCapacity = 1024;
+    }
 }
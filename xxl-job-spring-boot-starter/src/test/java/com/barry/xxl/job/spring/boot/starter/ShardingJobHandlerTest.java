@@ -0,0 +1,113 @@
+package com.barry.xxl.job.spring.boot.starter;
+
+import com.google.common.collect.Lists;
+import com.xxl.job.core.biz.model.ReturnT;
+import com.xxl.job.core.log.XxlJobFileAppender;
+import com.xxl.job.core.log.XxlJobLogger;
+import com.xxl.job.core.util.ShardingUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author barry chen
+ */
+public class ShardingJobHandlerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+    private final OrderJob job = new OrderJob();
+
+    public static class OrderJob {
+        private final List<String> handled = Collections.synchronizedList(Lists.newArrayList());
+
+        public List<Integer> partitionOrders() {
+            return IntStream.range(0, 10).boxed().collect(Collectors.toList());
+        }
+
+        public void syncOrders(Integer shopId) {
+            ShardingUtil.ShardingVO sharding = ShardingUtil.getShardingVo();
+            handled.add(shopId + "@" + sharding.getIndex() + "/" + sharding.getTotal() + ":" + new File(XxlJobFileAppender.contextHolder.get()).getName());
+            XxlJobLogger.log("sync shop {}", shopId);
+            if (shopId % 4 == 0) {
+                throw new IllegalStateException("shop " + shopId + " fail");
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // 线程池的线程在其它任务中创建, 继承了其它任务的上下文
+        File staleLog = folder.newFile("stale.log");
+        Thread creator = new Thread(() -> {
+            XxlJobFileAppender.contextHolder.set(staleLog.getPath());
+            ShardingUtil.setShardingVo(new ShardingUtil.ShardingVO(0, 9));
+            executor = Executors.newFixedThreadPool(2);
+            IntStream.range(0, 2).forEach(i -> executor.submit(() -> {
+            }));
+        });
+        creator.start();
+        creator.join();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        XxlJobFileAppender.contextHolder.remove();
+        ShardingUtil.setShardingVo(null);
+    }
+
+    private ReturnT<String> execute(int index, int total, File logFile) throws Exception {
+        Method partitionMethod = OrderJob.class.getMethod("partitionOrders");
+        Method method = OrderJob.class.getMethod("syncOrders", Integer.class);
+        XxlJobFileAppender.contextHolder.set(logFile.getPath());
+        ShardingUtil.setShardingVo(new ShardingUtil.ShardingVO(index, total));
+        return new ShardingJobHandler(job, partitionMethod, method, executor, 2).execute(null);
+    }
+
+    @Test
+    public void executeTest() throws Exception {
+        File logFile = folder.newFile("job.log");
+        ReturnT<String> result = execute(1, 4, logFile);
+        // 分到 1, 5, 9 三个分区, 使用任务线程的分片参数和日志文件
+        Assert.assertEquals(ReturnT.SUCCESS_CODE, result.getCode());
+        Assert.assertEquals("shard 1/4: 3 partition(s), 0 failed", result.getMsg());
+        Assert.assertEquals(Lists.newArrayList("1@1/4:job.log", "5@1/4:job.log", "9@1/4:job.log"),
+                job.handled.stream().sorted().collect(Collectors.toList()));
+        String log = new String(Files.readAllBytes(logFile.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(log.contains("sync shop 5"));
+        Assert.assertEquals(0, folder.getRoot().toPath().resolve("stale.log").toFile().length());
+
+        // 执行完毕后还原线程池线程原有的上下文
+        Assert.assertEquals("stale.log:0/9", executor.submit(() -> new File(XxlJobFileAppender.contextHolder.get()).getName()
+                + ":" + ShardingUtil.getShardingVo().getIndex() + "/" + ShardingUtil.getShardingVo().getTotal()).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failTest() throws Exception {
+        ReturnT<String> result = execute(0, 2, folder.newFile("job.log"));
+        // 分到 0, 2, 4, 6, 8, 其中 0, 4, 8 失败
+        Assert.assertEquals(ReturnT.FAIL_CODE, result.getCode());
+        Assert.assertTrue(result.getMsg(), result.getMsg().startsWith("shard 0/2: 5 partition(s), 3 failed, ["));
+        Assert.assertTrue(result.getMsg(), result.getMsg().contains("shop 4 fail"));
+        Assert.assertEquals(5, job.handled.size());
+        Assert.assertTrue(job.handled.stream().allMatch(s -> s.endsWith("@0/2:job.log")));
+    }
+}